@@ -0,0 +1,237 @@
+package org.kmfahey.jchessgame;
+
+/**
+ * Holds a position as bitboards: one 64-bit long per piece type per color,
+ * one per color for all that color's pieces, and one for every occupied
+ * square. Bit n of a bitboard stands for the square xIdx * 8 + yIdx = n, the
+ * same square numbering that MoveEncoding and PositionState use. Alongside
+ * the bitboards, the piece int on each square is kept in a 64-element array,
+ * so the piece on a square (including a knight's chirality, which the
+ * bitboards don't record) can be read without testing twelve bitboards.
+ *
+ * A BitboardPosition is set up from a boardArray with setPosition(), and
+ * kept in step with it by PositionState, which passes every move it makes
+ * and unmakes to makeMove() and unmakeMove(). The move generation and attack
+ * detection methods that run on it are in Bitboards.
+ *
+ * @see Bitboards
+ * @see PositionState#setBitboardPosition
+ */
+public class BitboardPosition {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+    private static final int RIGHT = BoardArrays.RIGHT;
+    private static final int LEFT = BoardArrays.LEFT;
+
+    /* Maps every piece int, and every color combined with a piece type flag,
+       to the index of its bitboard in pieceBitboards: the index of its type
+       in PIECE_TYPES, plus 6 for black. Both chiralities of knight share a
+       bitboard. */
+    private static final int[] PIECE_TYPES = new int[] {KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN};
+    private static final int[] PIECE_BITBOARD_INDEXES = new int[BLACK << 1];
+
+    static {
+        for (int typeIdx = 0; typeIdx < PIECE_TYPES.length; typeIdx++) {
+            PIECE_BITBOARD_INDEXES[WHITE | PIECE_TYPES[typeIdx]] = typeIdx;
+            PIECE_BITBOARD_INDEXES[BLACK | PIECE_TYPES[typeIdx]] = typeIdx + 6;
+        }
+        for (int color : new int[] {WHITE, BLACK}) {
+            PIECE_BITBOARD_INDEXES[color | KNIGHT | LEFT] = PIECE_BITBOARD_INDEXES[color | KNIGHT];
+            PIECE_BITBOARD_INDEXES[color | KNIGHT | RIGHT] = PIECE_BITBOARD_INDEXES[color | KNIGHT];
+        }
+    }
+
+    /* The twelve piece bitboards, indexed as in PIECE_BITBOARD_INDEXES; the
+       two color bitboards, indexed by PositionState.colorIndex(); and the
+       bitboard of all occupied squares. */
+    private final long[] pieceBitboards = new long[12];
+    private final long[] colorBitboards = new long[2];
+    private long occupancy;
+
+    /* The piece int on each square, or 0 if it's empty. */
+    private final int[] pieceInts = new int[64];
+
+    /**
+     * Sets the position from a boardArray, which isn't retained.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     */
+    public void setPosition(final int[][] boardArray) {
+        for (int bitboardIdx = 0; bitboardIdx < pieceBitboards.length; bitboardIdx++) {
+            pieceBitboards[bitboardIdx] = 0L;
+        }
+        colorBitboards[0] = 0L;
+        colorBitboards[1] = 0L;
+        occupancy = 0L;
+
+        for (int square = 0; square < 64; square++) {
+            int pieceInt = boardArray[square >>> 3][square & 7];
+            pieceInts[square] = pieceInt;
+            if (pieceInt != 0) {
+                togglePiece(pieceInt, square);
+            }
+        }
+    }
+
+    /**
+     * Accessor for the bitboard of one color's pieces of one type.
+     *
+     * @param color     One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @param pieceType One of the piece type flags, such as BoardArrays.ROOK.
+     * @return          The bitboard.
+     */
+    public long getPieces(final int color, final int pieceType) {
+        return pieceBitboards[PIECE_BITBOARD_INDEXES[color | pieceType]];
+    }
+
+    /**
+     * Accessor for the bitboard of all of one color's pieces.
+     *
+     * @param color One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @return      The bitboard.
+     */
+    public long getColorOccupancy(final int color) {
+        return colorBitboards[PositionState.colorIndex(color)];
+    }
+
+    /**
+     * Accessor for the bitboard of every occupied square.
+     *
+     * @return The bitboard.
+     */
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Accessor for the piece on a square.
+     *
+     * @param square The square, as xIdx * 8 + yIdx.
+     * @return       The piece int, or 0 if the square is empty.
+     */
+    public int getPieceInt(final int square) {
+        return pieceInts[square];
+    }
+
+    /**
+     * Makes a move, which isn't checked for legality. Castling is made the
+     * way PositionState.makeMove() makes it.
+     *
+     * @param move The packed move to make.
+     */
+    public void makeMove(final int move) {
+        int fromSquare = MoveEncoding.fromSquare(move);
+        int toSquare = MoveEncoding.toSquare(move);
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int capturedPieceInt = MoveEncoding.capturedPieceInt(move);
+
+        if (MoveEncoding.isCastling(move)) {
+            int kingToSquare = castlingKingToSquare(fromSquare, toSquare);
+            int rookToSquare = castlingRookToSquare(toSquare);
+            movePiece(movedPieceInt, fromSquare, kingToSquare);
+            movePiece(capturedPieceInt, toSquare, rookToSquare);
+            return;
+        }
+
+        if (capturedPieceInt != 0) {
+            togglePiece(capturedPieceInt, toSquare);
+        }
+        if (MoveEncoding.isPromotion(move)) {
+            int promotedToPieceInt = MoveEncoding.promotedToPieceInt(move);
+            togglePiece(movedPieceInt, fromSquare);
+            togglePiece(promotedToPieceInt, toSquare);
+            pieceInts[fromSquare] = 0;
+            pieceInts[toSquare] = promotedToPieceInt;
+        } else {
+            movePiece(movedPieceInt, fromSquare, toSquare);
+        }
+    }
+
+    /**
+     * Takes back a move made by makeMove(). It must be the last move made
+     * that hasn't been taken back.
+     *
+     * @param move The packed move to take back.
+     */
+    public void unmakeMove(final int move) {
+        int fromSquare = MoveEncoding.fromSquare(move);
+        int toSquare = MoveEncoding.toSquare(move);
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int capturedPieceInt = MoveEncoding.capturedPieceInt(move);
+
+        if (MoveEncoding.isCastling(move)) {
+            int kingToSquare = castlingKingToSquare(fromSquare, toSquare);
+            int rookToSquare = castlingRookToSquare(toSquare);
+            movePiece(capturedPieceInt, rookToSquare, toSquare);
+            movePiece(movedPieceInt, kingToSquare, fromSquare);
+            return;
+        }
+
+        if (MoveEncoding.isPromotion(move)) {
+            togglePiece(MoveEncoding.promotedToPieceInt(move), toSquare);
+            togglePiece(movedPieceInt, fromSquare);
+            pieceInts[fromSquare] = movedPieceInt;
+            pieceInts[toSquare] = 0;
+        } else {
+            movePiece(movedPieceInt, toSquare, fromSquare);
+        }
+        if (capturedPieceInt != 0) {
+            togglePiece(capturedPieceInt, toSquare);
+            pieceInts[toSquare] = capturedPieceInt;
+        }
+    }
+
+    /**
+     * Returns the square the king moves to in a castling move, which is
+     * encoded as the king moving to its rook's square.
+     *
+     * @param fromSquare The king's square.
+     * @param toSquare   The rook's square.
+     * @return           The king's destination square.
+     */
+    public static int castlingKingToSquare(final int fromSquare, final int toSquare) {
+        return (toSquare >>> 3 == 7 ? 6 * 8 : 2 * 8) + (fromSquare & 7);
+    }
+
+    /**
+     * Returns the square the rook moves to in a castling move.
+     *
+     * @param toSquare The rook's square.
+     * @return         The rook's destination square.
+     */
+    public static int castlingRookToSquare(final int toSquare) {
+        return (toSquare >>> 3 == 7 ? 5 * 8 : 3 * 8) + (toSquare & 7);
+    }
+
+    /*
+     * Moves a piece from one square to another on the bitboards and in the
+     * piece ints. The square moved to must be empty.
+     */
+    private void movePiece(final int pieceInt, final int fromSquare, final int toSquare) {
+        long moveBits = (1L << fromSquare) | (1L << toSquare);
+        pieceBitboards[PIECE_BITBOARD_INDEXES[pieceInt]] ^= moveBits;
+        colorBitboards[PositionState.colorIndex(pieceInt)] ^= moveBits;
+        occupancy ^= moveBits;
+        pieceInts[fromSquare] = 0;
+        pieceInts[toSquare] = pieceInt;
+    }
+
+    /*
+     * Adds a piece to a square of the bitboards if it's absent, or removes it
+     * if it's present. The piece ints aren't changed.
+     */
+    private void togglePiece(final int pieceInt, final int square) {
+        long squareBit = 1L << square;
+        pieceBitboards[PIECE_BITBOARD_INDEXES[pieceInt]] ^= squareBit;
+        colorBitboards[PositionState.colorIndex(pieceInt)] ^= squareBit;
+        occupancy ^= squareBit;
+    }
+}
@@ -0,0 +1,1004 @@
+package org.kmfahey.jchessgame;
+
+import java.util.Random;
+
+/**
+ * Contains the attack tables and the move generation and check detection
+ * methods for positions held as bitboards by a BitboardPosition. It's the
+ * bitboard counterpart of the move generation methods in BoardArrays, and
+ * generatePossibleMoves() generates the same moves: moves that don't leave
+ * the moving side's king in check, plus castling moves that still need their
+ * castling rights checked by checkMoveLegality(). generateLegalMoves() also
+ * checks the castling rights, so every move it generates is legal.
+ *
+ * Neither generator tests its moves one at a time for leaving the king in
+ * check. The pieces checking the king and the pieces pinned to it are found
+ * once per position: while the king is in check, other pieces may only
+ * capture the checking piece or block its line, and a pinned piece may only
+ * move along the line between the king and the piece pinning it.
+ *
+ * The attacks of knights, kings and pawns from each square are looked up in
+ * precomputed tables. The attacks of rooks and bishops, which depend on which
+ * squares along their rays are occupied, are looked up with magic bitboards:
+ * the occupied squares that can block a slider on a given square are masked
+ * out of the occupancy, multiplied by a "magic" number found for that square
+ * so that every distinct set of blockers maps to a distinct index in its top
+ * bits, and the index picks the precomputed attack set. The magic numbers
+ * were found beforehand by a random search (multiplying candidates with few
+ * bits set until one produced no collisions), since searching for them when
+ * the class is loaded takes over a second; the attack sets are filled in
+ * when it's loaded, which also confirms every magic is collision-free.
+ *
+ * Squares are numbered xIdx * 8 + yIdx, as in BitboardPosition, so a step
+ * along the x axis is 8 bits and a step along the y axis is 1 bit.
+ *
+ * @see BitboardPosition
+ * @see BoardArrays#generatePossibleMoves
+ */
+public final class Bitboards {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+    private static final int RIGHT = BoardArrays.RIGHT;
+    private static final int LEFT = BoardArrays.LEFT;
+
+    /** Index into pawnAttacks() for a pawn that advances toward higher y
+        indexes, as the color playing from the top of the board does. */
+    public static final int ADVANCING_DOWN = 0;
+
+    /** Index into pawnAttacks() for a pawn that advances toward lower y
+        indexes, as the color playing from the bottom of the board does. */
+    public static final int ADVANCING_UP = 1;
+
+    /** Flags for generateLegalMoves() selecting which moves it generates:
+        captures and promotions, the rest (including castling), or both. */
+    public static final int CAPTURE_MOVES = 0b01;
+    public static final int QUIET_MOVES = 0b10;
+    public static final int ALL_MOVES = CAPTURE_MOVES | QUIET_MOVES;
+
+    /* The squares of the y = 0 and y = 7 ranks, where pawns promote. */
+    private static final long PROMOTION_SQUARES = 0x8181818181818181L;
+
+    /* The piece types in the order staticExchangeScore() recaptures with
+       them, least valuable first. */
+    private static final int[] EXCHANGE_ORDER = {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+
+    /* The x and y steps of the moves of each kind of piece. */
+    private static final int[][] KNIGHT_STEPS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1},
+                                                 {-1, 2}};
+    private static final int[][] KING_STEPS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1},
+                                               {1, -1}};
+    private static final int[][] ROOK_STEPS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+    private static final int[][] BISHOP_STEPS = {{1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+
+    /* The attack tables for the pieces that don't slide, indexed by square,
+       and for pawns also by ADVANCING_DOWN or ADVANCING_UP. */
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    /* Indexed by two squares: the squares strictly between them if they
+       share a rank, file or diagonal, and the whole line through both of
+       them, edge to edge. Both are 0 for squares that don't share a line. */
+    private static final long[][] BETWEEN_SQUARES = new long[64][64];
+    private static final long[][] LINE_SQUARES = new long[64][64];
+
+    /* The magic bitboard tables for rooks and bishops, indexed by square: the
+       mask of squares that can block the slider, the magic multiplier, the
+       shift that leaves the index in the low bits, and the attack sets. */
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+        0x0080108000204001L, 0x4C40081000200042L, 0x8A00220010084080L, 0x0280080080100004L,
+        0x4080020800800401L, 0x0100082700140086L, 0x0600540810810200L, 0xC280048000403500L,
+        0x0040800040002090L, 0x0001400050002000L, 0x3009002004410010L, 0x4401000820100100L,
+        0x01A0800802040080L, 0x0690800200800401L, 0xA200800200800100L, 0x4090800040800100L,
+        0x0040008000408020L, 0x0000414010002004L, 0x0120008010002086L, 0x0026210008100300L,
+        0x2218010011000408L, 0x8000808004000201L, 0x1101408100800200L, 0x0003020000A04401L,
+        0x09A8208080104001L, 0x0800200040100040L, 0x0880220200104080L, 0x4002004200200811L,
+        0x0001000500080010L, 0x0000020080040080L, 0x0600080400100182L, 0x1000208200010044L,
+        0x0020400420801080L, 0x0000804000802001L, 0x1000220082004012L, 0x5400801000800802L,
+        0x0134008004800800L, 0x0404000480800200L, 0x8000800200800100L, 0x000003C19A000104L,
+        0x4005208040158002L, 0x00501040E000C000L, 0x0000104082020020L, 0x4204A20208420010L,
+        0x0098002040040400L, 0x0000040002008080L, 0x8020900208040001L, 0x008D000060810002L,
+        0x0800802A06410A00L, 0x0110400820088080L, 0x0000200010008080L, 0x5000100080080080L,
+        0x0000800400080080L, 0x0104008004020080L, 0x0180010228508400L, 0x000820805C010A00L,
+        0x2200B50980004021L, 0x0081001080400021L, 0x0100120020430882L, 0x0420210004100009L,
+        0x2A4A00300520480EL, 0x8002001004814802L, 0x004400A9300A0804L, 0x2412050428804C02L
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_ATTACKS = new long[64][];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+        0x0141080204012AA0L, 0x0084040400720000L, 0x80104C1080250162L, 0x4004404080084050L,
+        0x0924042200200040L, 0x0241040242002080L, 0x1040820110C02040L, 0x0000110101104000L,
+        0x0220102098810046L, 0x8200024222020600L, 0x1030222800408840L, 0x0422882280202938L,
+        0x0000042420301200L, 0x1380A42208400040L, 0x4200010101202000L, 0x1500C30042026000L,
+        0x0804002020942120L, 0x0002201002020410L, 0x8810012109002100L, 0x1204001802102008L,
+        0x100A100405200210L, 0x0409000182600A00L, 0x0444840228040240L, 0x80010000288A1040L,
+        0x0204224490200100L, 0x0822080110810820L, 0x4000410210040280L, 0x04C1090008004100L,
+        0x0C02488004002010L, 0x0F21020005081120L, 0x00209200088A1080L, 0x80220202424100C0L,
+        0x3201201080A10400L, 0x8002010442101044L, 0x0014024800341022L, 0x0042004041640100L,
+        0x0C00408020020200L, 0x0118110808C50080L, 0x0010008300089C00L, 0x0801020424008410L,
+        0x0408042504022001L, 0x0001010110102030L, 0x0000220022081002L, 0x2500002124000800L,
+        0x000882200A000900L, 0x0160009003101080L, 0x0082245122110400L, 0x1081014400820101L,
+        0x0016820882400000L, 0x0806440228420000L, 0x0040042108220443L, 0x0040428542120500L,
+        0x02040B0405040000L, 0x40000842080A1200L, 0x0204100222440080L, 0x10680861004A0400L,
+        0x80010400A4040240L, 0x080002020A022200L, 0x0114000201008880L, 0x4000918200208810L,
+        0x0000020410020880L, 0x088000A0A0028080L, 0x7000220821010400L, 0x0440020081050304L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+    /* Used to choose the chirality of a knight a pawn is promoted to, as
+       BoardArrays does. */
+    private static final Random RNG = new Random();
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            KNIGHT_ATTACKS[square] = stepAttacks(square, KNIGHT_STEPS);
+            KING_ATTACKS[square] = stepAttacks(square, KING_STEPS);
+            PAWN_ATTACKS[ADVANCING_DOWN][square] = stepAttacks(square, new int[][] {{-1, 1}, {1, 1}});
+            PAWN_ATTACKS[ADVANCING_UP][square] = stepAttacks(square, new int[][] {{-1, -1}, {1, -1}});
+            fillLineTables(square);
+        }
+
+        for (int square = 0; square < 64; square++) {
+            ROOK_MASKS[square] = slidingMask(square, ROOK_STEPS);
+            ROOK_SHIFTS[square] = 64 - Long.bitCount(ROOK_MASKS[square]);
+            ROOK_ATTACKS[square] = fillMagicTable(square, ROOK_STEPS, ROOK_MASKS[square], ROOK_MAGICS[square],
+                                                  ROOK_SHIFTS[square]);
+            BISHOP_MASKS[square] = slidingMask(square, BISHOP_STEPS);
+            BISHOP_SHIFTS[square] = 64 - Long.bitCount(BISHOP_MASKS[square]);
+            BISHOP_ATTACKS[square] = fillMagicTable(square, BISHOP_STEPS, BISHOP_MASKS[square],
+                                                    BISHOP_MAGICS[square], BISHOP_SHIFTS[square]);
+        }
+    }
+
+    private Bitboards() { }
+
+    /**
+     * Returns the squares a knight on the given square attacks.
+     *
+     * @param square The knight's square.
+     * @return       A bitboard of the attacked squares.
+     */
+    public static long knightAttacks(final int square) {
+        return KNIGHT_ATTACKS[square];
+    }
+
+    /**
+     * Returns the squares a king on the given square attacks.
+     *
+     * @param square The king's square.
+     * @return       A bitboard of the attacked squares.
+     */
+    public static long kingAttacks(final int square) {
+        return KING_ATTACKS[square];
+    }
+
+    /**
+     * Returns the squares a pawn on the given square attacks.
+     *
+     * @param direction Either ADVANCING_DOWN or ADVANCING_UP.
+     * @param square    The pawn's square.
+     * @return          A bitboard of the attacked squares.
+     */
+    public static long pawnAttacks(final int direction, final int square) {
+        return PAWN_ATTACKS[direction][square];
+    }
+
+    /**
+     * Returns the squares a rook on the given square attacks, given the
+     * occupied squares. The attacks include the first occupied square along
+     * each ray, whatever occupies it.
+     *
+     * @param square    The rook's square.
+     * @param occupancy A bitboard of the occupied squares.
+     * @return          A bitboard of the attacked squares.
+     */
+    public static long rookAttacks(final int square, final long occupancy) {
+        return ROOK_ATTACKS[square][(int) (((occupancy & ROOK_MASKS[square]) * ROOK_MAGICS[square])
+                                           >>> ROOK_SHIFTS[square])];
+    }
+
+    /**
+     * Returns the squares a bishop on the given square attacks, given the
+     * occupied squares. The attacks include the first occupied square along
+     * each ray, whatever occupies it.
+     *
+     * @param square    The bishop's square.
+     * @param occupancy A bitboard of the occupied squares.
+     * @return          A bitboard of the attacked squares.
+     */
+    public static long bishopAttacks(final int square, final long occupancy) {
+        return BISHOP_ATTACKS[square][(int) (((occupancy & BISHOP_MASKS[square]) * BISHOP_MAGICS[square])
+                                             >>> BISHOP_SHIFTS[square])];
+    }
+
+    /**
+     * Returns the direction that pawns of the given color advance in.
+     *
+     * @param color      One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @param colorOnTop The color playing from the top of the board.
+     * @return           Either ADVANCING_DOWN or ADVANCING_UP.
+     */
+    public static int pawnDirection(final int color, final int colorOnTop) {
+        return color == colorOnTop ? ADVANCING_DOWN : ADVANCING_UP;
+    }
+
+    /**
+     * Tests whether a square is attacked by any piece of the given color, as
+     * the board would be with the given occupancy. Pieces can be left out of
+     * consideration with the attackersMask argument; it's used to leave out
+     * a piece that a move under test would capture.
+     *
+     * Like BoardArrays.wouldKingBeInCheck(), this counts a square next to
+     * the attacking side's king as attacked.
+     *
+     * @param bitboardPosition The position.
+     * @param square           The square to test.
+     * @param attackerColor    The color whose attacks are tested for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param occupancy        A bitboard of the squares to treat as
+     *                         occupied, which can differ from the position's.
+     * @param attackersMask    A bitboard of the squares whose pieces may
+     *                         attack; pieces outside it are ignored.
+     * @return                 True if the square is attacked, false otherwise.
+     */
+    public static boolean isSquareAttacked(final BitboardPosition bitboardPosition, final int square,
+                                           final int attackerColor, final int colorOnTop, final long occupancy,
+                                           final long attackersMask) {
+        return (attackersOf(bitboardPosition, square, attackerColor, colorOnTop, occupancy) & attackersMask) != 0L;
+    }
+
+    /**
+     * Finds every piece of the given color that attacks a square, as the
+     * board would be with the given occupancy.
+     *
+     * @param bitboardPosition The position.
+     * @param square           The square attacked.
+     * @param attackerColor    The color whose attacks are looked for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param occupancy        A bitboard of the squares to treat as
+     *                         occupied, which can differ from the position's.
+     * @return                 A bitboard of the attacking pieces' squares.
+     */
+    public static long attackersOf(final BitboardPosition bitboardPosition, final int square,
+                                   final int attackerColor, final int colorOnTop, final long occupancy) {
+        long queens = bitboardPosition.getPieces(attackerColor, QUEEN);
+
+        /* The attacking pawns are the ones that a pawn of the defending
+           color standing on the square would attack. */
+        int defenderDirection = attackerColor == colorOnTop ? ADVANCING_UP : ADVANCING_DOWN;
+
+        return (PAWN_ATTACKS[defenderDirection][square] & bitboardPosition.getPieces(attackerColor, PAWN))
+               | (KNIGHT_ATTACKS[square] & bitboardPosition.getPieces(attackerColor, KNIGHT))
+               | (KING_ATTACKS[square] & bitboardPosition.getPieces(attackerColor, KING))
+               | (rookAttacks(square, occupancy) & (bitboardPosition.getPieces(attackerColor, ROOK) | queens))
+               | (bishopAttacks(square, occupancy) & (bitboardPosition.getPieces(attackerColor, BISHOP) | queens));
+    }
+
+    /**
+     * Tests whether the king of the specified color is in check.
+     *
+     * @param bitboardPosition The position.
+     * @param colorsTurnItIs   The color of the king to test.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @return                 True if the king is in check, false otherwise.
+     */
+    public static boolean isKingInCheck(final BitboardPosition bitboardPosition, final int colorsTurnItIs,
+                                        final int colorOnTop) {
+        int kingSquare = Long.numberOfTrailingZeros(bitboardPosition.getPieces(colorsTurnItIs, KING));
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        return isSquareAttacked(bitboardPosition, kingSquare, otherColor, colorOnTop,
+                                bitboardPosition.getOccupancy(), -1L);
+    }
+
+    /**
+     * Generates the moves of every piece of the specified color, and saves
+     * them to the movesArray argument as packed moves. It generates the same
+     * moves as BoardArrays.generatePossibleMoves() does on the equivalent
+     * boardArray, though not in the same order.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The working int[] array to fill packed moves
+     *                         into. It's assumed to be long enough to hold
+     *                         every move.
+     * @param colorsTurnItIs   The color to generate moves for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @return                 The number of moves saved to movesArray.
+     * @see MoveEncoding
+     */
+    public static int generatePossibleMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                            final int colorsTurnItIs, final int colorOnTop) {
+        return generateMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop, false, 0, ALL_MOVES, -1L);
+    }
+
+    /**
+     * Generates the legal moves of the specified color, and saves them to
+     * the movesArray argument as packed moves. They're the moves
+     * generatePossibleMoves() generates, less the castling moves that
+     * checkMoveLegality() would reject, so none of them needs checking.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The working int[] array to fill packed moves
+     *                         into. It's assumed to be long enough to hold
+     *                         every move.
+     * @param colorsTurnItIs   The color to generate moves for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param castlingRights   The castling rights flags in effect.
+     * @return                 The number of moves saved to movesArray.
+     * @see MoveEncoding
+     */
+    public static int generateLegalMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                         final int colorsTurnItIs, final int colorOnTop, final int castlingRights) {
+        return generateMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop, true, castlingRights,
+                             ALL_MOVES, -1L);
+    }
+
+    /**
+     * Generates one kind of the legal moves of the specified color: either
+     * the captures and promotions, or the quiet moves, or all of them, as
+     * selected by moveKinds. Generating the two kinds separately generates
+     * the same moves as generating all of them at once.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The working int[] array to fill packed moves
+     *                         into. It's assumed to be long enough to hold
+     *                         every move.
+     * @param colorsTurnItIs   The color to generate moves for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param castlingRights   The castling rights flags in effect.
+     * @param moveKinds        CAPTURE_MOVES, QUIET_MOVES or ALL_MOVES.
+     * @return                 The number of moves saved to movesArray.
+     * @see MoveEncoding
+     */
+    public static int generateLegalMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                         final int colorsTurnItIs, final int colorOnTop, final int castlingRights,
+                                         final int moveKinds) {
+        return generateMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop, true, castlingRights,
+                             moveKinds, -1L);
+    }
+
+    /**
+     * Generates the legal moves of the piece on one square, which must be of
+     * the specified color, or none if it isn't. It's used to test whether a
+     * move remembered from another position can be made in this one, without
+     * generating every piece's moves.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The working int[] array to fill packed moves
+     *                         into. It's assumed to be long enough to hold
+     *                         every move of one piece.
+     * @param colorsTurnItIs   The color to generate moves for.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param castlingRights   The castling rights flags in effect.
+     * @param fromSquare       The square of the piece to move.
+     * @return                 The number of moves saved to movesArray.
+     * @see MoveEncoding
+     */
+    public static int generateLegalMovesFrom(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                             final int colorsTurnItIs, final int colorOnTop,
+                                             final int castlingRights, final int fromSquare) {
+        return generateMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop, true, castlingRights,
+                             ALL_MOVES, 1L << fromSquare);
+    }
+
+    /*
+     * Implements generatePossibleMoves() and generateLegalMoves(). The
+     * castling rights are only checked if checkCastling is true. Only the
+     * kinds of moves selected by moveKinds are generated, and only for the
+     * pieces on the squares in fromSquares.
+     */
+    private static int generateMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                     final int colorsTurnItIs, final int colorOnTop, final boolean checkCastling,
+                                     final int castlingRights, final int moveKinds, final long fromSquares) {
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        long occupancy = bitboardPosition.getOccupancy();
+        long kingBitboard = bitboardPosition.getPieces(colorsTurnItIs, KING);
+        int kingSquare = Long.numberOfTrailingZeros(kingBitboard);
+        long checkers = attackersOf(bitboardPosition, kingSquare, otherColor, colorOnTop, occupancy);
+        int moveIdx = 0;
+
+        /* A piece can move to an empty square or capture an opposing piece
+           other than the king. */
+        long targets = ~bitboardPosition.getColorOccupancy(colorsTurnItIs)
+                       & ~bitboardPosition.getPieces(otherColor, KING);
+
+        /* A pawn's move is a capture or promotion if it lands on an opposing
+           piece or the last rank, and any other piece's if it lands on an
+           opposing piece. */
+        long pawnTargets = targets;
+        if (moveKinds == CAPTURE_MOVES) {
+            targets &= occupancy;
+            pawnTargets &= occupancy | PROMOTION_SQUARES;
+        } else if (moveKinds == QUIET_MOVES) {
+            targets &= ~occupancy;
+            pawnTargets &= ~occupancy & ~PROMOTION_SQUARES;
+        }
+
+        /* In double check only the king can move. In single check, the other
+           pieces can only capture the checking piece or step between it and
+           the king. */
+        if (Long.bitCount(checkers) < 2) {
+            long checkMask = checkers == 0L ? -1L
+                                            : BETWEEN_SQUARES[kingSquare][Long.numberOfTrailingZeros(checkers)]
+                                              | checkers;
+            long pinnedPieces = pinnedPieces(bitboardPosition, kingSquare, colorsTurnItIs, otherColor);
+
+            long pieces = bitboardPosition.getColorOccupancy(colorsTurnItIs) & ~kingBitboard & fromSquares;
+            while (pieces != 0L) {
+                int fromSquare = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1L;
+                int pieceInt = bitboardPosition.getPieceInt(fromSquare);
+
+                /* A pinned piece can only move along the line through it and
+                   the king. */
+                long legalSquares = (pinnedPieces & (1L << fromSquare)) != 0L
+                                    ? checkMask & LINE_SQUARES[kingSquare][fromSquare] : checkMask;
+
+                if ((pieceInt & PAWN) != 0) {
+                    moveIdx = generatePawnMoves(bitboardPosition, movesArray, moveIdx, fromSquare, pieceInt,
+                                                colorOnTop, pawnTargets & legalSquares);
+                    continue;
+                }
+
+                long moveTargets = switch (pieceInt ^ colorsTurnItIs) {
+                    case KNIGHT | LEFT, KNIGHT | RIGHT -> KNIGHT_ATTACKS[fromSquare];
+                    case BISHOP -> bishopAttacks(fromSquare, occupancy);
+                    case ROOK -> rookAttacks(fromSquare, occupancy);
+                    case QUEEN -> rookAttacks(fromSquare, occupancy) | bishopAttacks(fromSquare, occupancy);
+                    default -> throw new IllegalArgumentException(
+                            "The integer value found in the bitboard position at the square " + fromSquare
+                            + " doesn't parse as a piece int value.");
+                } & targets & legalSquares;
+
+                while (moveTargets != 0L) {
+                    int toSquare = Long.numberOfTrailingZeros(moveTargets);
+                    moveTargets &= moveTargets - 1L;
+                    movesArray[moveIdx++] = MoveEncoding.encode(pieceInt, fromSquare >>> 3, fromSquare & 7,
+                                                                toSquare >>> 3, toSquare & 7,
+                                                                bitboardPosition.getPieceInt(toSquare), 0);
+                }
+            }
+        }
+
+        if ((kingBitboard & fromSquares) == 0L) {
+            return moveIdx;
+        }
+        return generateKingMoves(bitboardPosition, movesArray, moveIdx, kingSquare, colorsTurnItIs, colorOnTop,
+                                 targets, (moveKinds & QUIET_MOVES) != 0, checkCastling, castlingRights,
+                                 checkers != 0L);
+    }
+
+    /**
+     * Computes the static exchange evaluation of a capture: the material the
+     * side making it wins, in centipawns, if both sides then go on
+     * recapturing on the captured square with their least valuable piece for
+     * as long as it profits them. It's the same score as
+     * BoardArrays.staticExchangeScore() computes. The attackers are found
+     * again after each recapture, with the pieces already exchanged taken off
+     * the occupancy, so a slider behind a piece that recaptured joins the
+     * exchange in its turn (an x-ray).
+     *
+     * @param bitboardPosition The position.
+     * @param move             The packed capture, as encoded by MoveEncoding.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param gainsArray       A working int[] array for the exchange's running
+     *                         gains. It's assumed to have at least 32
+     *                         elements.
+     * @return                 The material won by the capture if it's
+     *                         positive, or lost by it if it's negative.
+     * @see BoardArrays#staticExchangeScore
+     */
+    public static int staticExchangeScore(final BitboardPosition bitboardPosition, final int move,
+                                          final int colorOnTop, final int[] gainsArray) {
+        int toSquare = MoveEncoding.toSquare(move);
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int capturingColor = (movedPieceInt & WHITE) != 0 ? BLACK : WHITE;
+        int pieceOnSquareValue = BoardArrays.exchangeValue(movedPieceInt);
+        long occupancy = bitboardPosition.getOccupancy() & ~(1L << MoveEncoding.fromSquare(move));
+        int exchangeDepth = 0;
+
+        gainsArray[0] = BoardArrays.exchangeValue(MoveEncoding.capturedPieceInt(move));
+        if (MoveEncoding.isPromotion(move)) {
+            pieceOnSquareValue = BoardArrays.exchangeValue(MoveEncoding.promotedToPieceInt(move));
+            gainsArray[0] += pieceOnSquareValue - BoardArrays.exchangeValue(PAWN);
+        }
+
+        while (true) {
+            /* The piece bitboards aren't updated as the exchange goes on, so
+               the attackers are masked by the occupancy to leave out the
+               pieces already exchanged. */
+            long attackers = attackersOf(bitboardPosition, toSquare, capturingColor, colorOnTop, occupancy)
+                             & occupancy;
+            if (attackers == 0L) {
+                break;
+            }
+            long leastValuableAttackers = 0L;
+            for (int pieceType : EXCHANGE_ORDER) {
+                leastValuableAttackers = attackers & bitboardPosition.getPieces(capturingColor, pieceType);
+                if (leastValuableAttackers != 0L) {
+                    break;
+                }
+            }
+            int attackerSquare = Long.numberOfTrailingZeros(leastValuableAttackers);
+
+            exchangeDepth++;
+            gainsArray[exchangeDepth] = pieceOnSquareValue - gainsArray[exchangeDepth - 1];
+            if (Math.max(-gainsArray[exchangeDepth - 1], gainsArray[exchangeDepth]) < 0) {
+                break;
+            }
+            pieceOnSquareValue = BoardArrays.exchangeValue(bitboardPosition.getPieceInt(attackerSquare));
+            occupancy &= ~(1L << attackerSquare);
+            capturingColor = capturingColor == WHITE ? BLACK : WHITE;
+        }
+
+        while (exchangeDepth > 0) {
+            gainsArray[exchangeDepth - 1] = -Math.max(-gainsArray[exchangeDepth - 1], gainsArray[exchangeDepth]);
+            exchangeDepth--;
+        }
+
+        return gainsArray[0];
+    }
+
+    /**
+     * Counts the mobility of the pieces of the specified color: the number of
+     * squares each piece could move to, summed over its pieces. It counts
+     * the same squares as BoardArrays.countMobility(), the squares of
+     * pseudo-legal moves, from the attack tables and without generating any
+     * moves.
+     *
+     * @param bitboardPosition The position.
+     * @param colorsTurnItIs   The color of the pieces.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @return                 The number of squares counted.
+     * @see BoardArrays#countMobility
+     */
+    public static int countMobility(final BitboardPosition bitboardPosition, final int colorsTurnItIs,
+                                    final int colorOnTop) {
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        int direction = pawnDirection(colorsTurnItIs, colorOnTop);
+        int yStep = direction == ADVANCING_DOWN ? 1 : -1;
+        int startingYIdx = direction == ADVANCING_DOWN ? 1 : 6;
+        long occupancy = bitboardPosition.getOccupancy();
+        long targets = ~bitboardPosition.getColorOccupancy(colorsTurnItIs)
+                       & ~bitboardPosition.getPieces(otherColor, KING);
+        long captureTargets = bitboardPosition.getColorOccupancy(otherColor) & targets;
+        int mobility = 0;
+
+        long pieces = bitboardPosition.getColorOccupancy(colorsTurnItIs);
+        while (pieces != 0L) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1L;
+            int pieceInt = bitboardPosition.getPieceInt(square);
+
+            if ((pieceInt & PAWN) != 0) {
+                int yIdx = square & 7;
+                int aheadYIdx = yIdx + yStep;
+                if (aheadYIdx < 0 || aheadYIdx > 7) {
+                    continue;
+                }
+                mobility += Long.bitCount(PAWN_ATTACKS[direction][square] & captureTargets);
+                if ((occupancy & (1L << (square + yStep))) == 0L) {
+                    mobility++;
+                    if (yIdx == startingYIdx && (occupancy & (1L << (square + 2 * yStep))) == 0L) {
+                        mobility++;
+                    }
+                }
+                continue;
+            }
+
+            long attacks = switch (pieceInt ^ colorsTurnItIs) {
+                case KNIGHT | LEFT, KNIGHT | RIGHT -> KNIGHT_ATTACKS[square];
+                case BISHOP -> bishopAttacks(square, occupancy);
+                case ROOK -> rookAttacks(square, occupancy);
+                case QUEEN -> rookAttacks(square, occupancy) | bishopAttacks(square, occupancy);
+                case KING -> KING_ATTACKS[square];
+                default -> throw new IllegalArgumentException(
+                        "The integer value found in the bitboard position at the square " + square
+                        + " doesn't parse as a piece int value.");
+            };
+            mobility += Long.bitCount(attacks & targets);
+        }
+
+        return mobility;
+    }
+
+    /*
+     * Finds the pieces of the given color that are pinned to its king: the
+     * pieces that are the only piece between the king and an opposing rook,
+     * bishop or queen that could otherwise attack it along that line. The
+     * opposing sliders are found by looking out from the king with only the
+     * opposing pieces treated as blockers.
+     */
+    private static long pinnedPieces(final BitboardPosition bitboardPosition, final int kingSquare,
+                                     final int colorsTurnItIs, final int otherColor) {
+        long occupancy = bitboardPosition.getOccupancy();
+        long ownPieces = bitboardPosition.getColorOccupancy(colorsTurnItIs);
+        long otherPieces = bitboardPosition.getColorOccupancy(otherColor);
+        long queens = bitboardPosition.getPieces(otherColor, QUEEN);
+        long pinners = (rookAttacks(kingSquare, otherPieces) & (bitboardPosition.getPieces(otherColor, ROOK) | queens))
+                       | (bishopAttacks(kingSquare, otherPieces)
+                          & (bitboardPosition.getPieces(otherColor, BISHOP) | queens));
+        long pinnedPieces = 0L;
+
+        while (pinners != 0L) {
+            int pinnerSquare = Long.numberOfTrailingZeros(pinners);
+            pinners &= pinners - 1L;
+            long blockers = BETWEEN_SQUARES[kingSquare][pinnerSquare] & occupancy;
+            if (Long.bitCount(blockers) == 1 && (blockers & ownPieces) != 0L) {
+                pinnedPieces |= blockers;
+            }
+        }
+
+        return pinnedPieces;
+    }
+
+    /*
+     * Generates the moves of one pawn: a step forward to an empty square, a
+     * capture on either forward diagonal, and a two-square step from its
+     * starting rank if both squares ahead are empty. A pawn reaching the last
+     * rank generates one move per piece in BoardArrays.PAWN_PROMOTION_PIECES.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The int[] array to save moves to.
+     * @param moveIdxArg       The index of the first empty element in
+     *                         movesArray.
+     * @param fromSquare       The pawn's square.
+     * @param pawnPieceInt     The pawn's piece int.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param legalTargets     The squares the pawn may move to: squares of
+     *                         the kinds of moves being generated that don't
+     *                         leave its king in check.
+     * @return                 The new index of the first empty element in
+     *                         movesArray.
+     */
+    private static int generatePawnMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                         final int moveIdxArg, final int fromSquare, final int pawnPieceInt,
+                                         final int colorOnTop, final long legalTargets) {
+        int colorsTurnItIs = pawnPieceInt & (WHITE | BLACK);
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        int direction = pawnDirection(colorsTurnItIs, colorOnTop);
+        int yIdx = fromSquare & 7;
+        int yStep = direction == ADVANCING_DOWN ? 1 : -1;
+        int lastYIdx = direction == ADVANCING_DOWN ? 7 : 0;
+        int startingYIdx = direction == ADVANCING_DOWN ? 1 : 6;
+        long occupancy = bitboardPosition.getOccupancy();
+        int moveIdx = moveIdxArg;
+
+        /* A pawn on the last rank has no moves. (It would have been promoted
+           when it got there, but a board loaded from a file might have one.) */
+        if (yIdx == lastYIdx) {
+            return moveIdx;
+        }
+
+        long moveTargets = PAWN_ATTACKS[direction][fromSquare] & bitboardPosition.getColorOccupancy(otherColor)
+                           & ~bitboardPosition.getPieces(otherColor, KING);
+        int forwardSquare = fromSquare + yStep;
+        if ((occupancy & (1L << forwardSquare)) == 0L) {
+            moveTargets |= 1L << forwardSquare;
+            if (yIdx == startingYIdx && (occupancy & (1L << (forwardSquare + yStep))) == 0L) {
+                moveTargets |= 1L << (forwardSquare + yStep);
+            }
+        }
+        moveTargets &= legalTargets;
+
+        while (moveTargets != 0L) {
+            int toSquare = Long.numberOfTrailingZeros(moveTargets);
+            moveTargets &= moveTargets - 1L;
+
+            int capturedPieceInt = bitboardPosition.getPieceInt(toSquare);
+            if ((toSquare & 7) != lastYIdx) {
+                movesArray[moveIdx++] = MoveEncoding.encode(pawnPieceInt, fromSquare >>> 3, yIdx, toSquare >>> 3,
+                                                            toSquare & 7, capturedPieceInt, 0);
+                continue;
+            }
+            for (int newPieceBase : BoardArrays.PAWN_PROMOTION_PIECES) {
+                int newPieceInt = newPieceBase | colorsTurnItIs;
+                if (newPieceBase == KNIGHT) {
+                    newPieceInt |= RNG.nextInt(2) == 1 ? LEFT : RIGHT;
+                }
+                movesArray[moveIdx++] = MoveEncoding.encode(pawnPieceInt, fromSquare >>> 3, yIdx, toSquare >>> 3,
+                                                            toSquare & 7, capturedPieceInt, newPieceInt);
+            }
+        }
+
+        return moveIdx;
+    }
+
+    /*
+     * Generates the king's moves: a step to any adjacent square that isn't
+     * attacked, and castling with either rook under the same conditions
+     * BoardArrays.generateKingsMoves() uses (the king and the rook on their
+     * starting squares, the squares between them empty, and the squares the
+     * king crosses unattacked), if includeCastling is true. If checkCastling
+     * is true, castling also needs its castling right and the king not to be
+     * in check, as checkMoveLegality() requires.
+     *
+     * @param bitboardPosition The position.
+     * @param movesArray       The int[] array to save moves to.
+     * @param moveIdxArg       The index of the first empty element in
+     *                         movesArray.
+     * @param kingSquare       The king's square.
+     * @param colorsTurnItIs   The king's color.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @param targets          The squares a piece of this color may move to.
+     * @param includeCastling  Whether to generate castling moves.
+     * @param checkCastling    Whether to check castling rights and check.
+     * @param castlingRights   The castling rights flags in effect.
+     * @param isInCheck        Whether the king is in check.
+     * @return                 The new index of the first empty element in
+     *                         movesArray.
+     */
+    private static int generateKingMoves(final BitboardPosition bitboardPosition, final int[] movesArray,
+                                         final int moveIdxArg, final int kingSquare, final int colorsTurnItIs,
+                                         final int colorOnTop, final long targets, final boolean includeCastling,
+                                         final boolean checkCastling, final int castlingRights,
+                                         final boolean isInCheck) {
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        int kingPieceInt = colorsTurnItIs | KING;
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
+        int moveIdx = moveIdxArg;
+
+        /* The king's own square is left out of the occupancy, so a slider
+           attacking the king along a line still attacks the square behind
+           it. */
+        long occupancy = bitboardPosition.getOccupancy() & ~(1L << kingSquare);
+
+        long moveTargets = KING_ATTACKS[kingSquare] & targets;
+        while (moveTargets != 0L) {
+            int toSquare = Long.numberOfTrailingZeros(moveTargets);
+            moveTargets &= moveTargets - 1L;
+            if (isSquareAttacked(bitboardPosition, toSquare, otherColor, colorOnTop, occupancy, -1L)) {
+                continue;
+            }
+            movesArray[moveIdx++] = MoveEncoding.encode(kingPieceInt, kingXIdx, kingYIdx, toSquare >>> 3,
+                                                        toSquare & 7, bitboardPosition.getPieceInt(toSquare), 0);
+        }
+
+        if (includeCastling && kingXIdx == 4 && (kingYIdx == 0 || kingYIdx == 7) && !(checkCastling && isInCheck)) {
+            int rookPieceInt = colorsTurnItIs | ROOK;
+            int kingsideRight = colorsTurnItIs == WHITE ? BoardArrays.WHITE_KINGSIDE_CASTLING
+                                                        : BoardArrays.BLACK_KINGSIDE_CASTLING;
+            int queensideRight = colorsTurnItIs == WHITE ? BoardArrays.WHITE_QUEENSIDE_CASTLING
+                                                         : BoardArrays.BLACK_QUEENSIDE_CASTLING;
+            if ((!checkCastling || (castlingRights & queensideRight) != 0)
+                && bitboardPosition.getPieceInt(kingYIdx) == rookPieceInt
+                && isRowEmpty(occupancy, 1, 3, kingYIdx)
+                && !isRowAttacked(bitboardPosition, 2, 3, kingYIdx, otherColor, colorOnTop, occupancy)) {
+                movesArray[moveIdx++] = MoveEncoding.encode(kingPieceInt, kingXIdx, kingYIdx, 0, kingYIdx,
+                                                            rookPieceInt, 0);
+            }
+            if ((!checkCastling || (castlingRights & kingsideRight) != 0)
+                && bitboardPosition.getPieceInt(7 * 8 + kingYIdx) == rookPieceInt
+                && isRowEmpty(occupancy, 5, 6, kingYIdx)
+                && !isRowAttacked(bitboardPosition, 5, 6, kingYIdx, otherColor, colorOnTop, occupancy)) {
+                movesArray[moveIdx++] = MoveEncoding.encode(kingPieceInt, kingXIdx, kingYIdx, 7, kingYIdx,
+                                                            rookPieceInt, 0);
+            }
+        }
+
+        return moveIdx;
+    }
+
+    /**
+     * Tests whether a packed move may be made, like
+     * BoardArrays.checkMoveLegality(), returning one of the same status
+     * codes. Castling moves have their castling rights checked, along with
+     * the squares the king passes through; other moves are checked for
+     * leaving the moving side's king in check.
+     *
+     * @param bitboardPosition The position.
+     * @param move             The packed move to check.
+     * @param castlingRights   The castling rights flags in effect.
+     * @param colorOnTop       The color playing from the top of the board.
+     * @return                 One of BoardArrays.MOVE_IS_LEGAL,
+     *                         BoardArrays.MOVE_LEAVES_KING_IN_CHECK or
+     *                         BoardArrays.MOVE_CASTLING_NOT_POSSIBLE.
+     */
+    public static int checkMoveLegality(final BitboardPosition bitboardPosition, final int move,
+                                        final int castlingRights, final int colorOnTop) {
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int colorsTurnItIs = movedPieceInt & (WHITE | BLACK);
+        int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        int fromSquare = MoveEncoding.fromSquare(move);
+        int toSquare = MoveEncoding.toSquare(move);
+        int kingSquare = Long.numberOfTrailingZeros(bitboardPosition.getPieces(colorsTurnItIs, KING));
+
+        if (MoveEncoding.isCastling(move)) {
+            boolean isKingside = toSquare >>> 3 == 7;
+            int yIdx = fromSquare & 7;
+            /* As in BoardArrays, the king's square is left out of the
+               occupancy, so it doesn't shield the squares it moves across. */
+            int rightsFlag = colorsTurnItIs == WHITE
+                             ? (isKingside ? BoardArrays.WHITE_KINGSIDE_CASTLING
+                                           : BoardArrays.WHITE_QUEENSIDE_CASTLING)
+                             : (isKingside ? BoardArrays.BLACK_KINGSIDE_CASTLING
+                                           : BoardArrays.BLACK_QUEENSIDE_CASTLING);
+            long occupancy = bitboardPosition.getOccupancy() & ~(1L << fromSquare);
+            if ((castlingRights & rightsFlag) == 0
+                || !(isKingside ? isRowEmpty(occupancy, 5, 6, yIdx) : isRowEmpty(occupancy, 1, 3, yIdx))
+                || (isKingside ? isRowAttacked(bitboardPosition, 4, 6, yIdx, otherColor, colorOnTop, occupancy)
+                               : isRowAttacked(bitboardPosition, 2, 4, yIdx, otherColor, colorOnTop, occupancy))) {
+                return BoardArrays.MOVE_CASTLING_NOT_POSSIBLE;
+            }
+            return BoardArrays.MOVE_IS_LEGAL;
+        }
+
+        boolean leavesKingInCheck;
+        if ((movedPieceInt & KING) != 0) {
+            leavesKingInCheck = isSquareAttacked(bitboardPosition, toSquare, otherColor, colorOnTop,
+                                                 bitboardPosition.getOccupancy() & ~(1L << fromSquare), -1L);
+        } else {
+            leavesKingInCheck = wouldExposeKing(bitboardPosition, fromSquare, toSquare, kingSquare, otherColor,
+                                                colorOnTop);
+        }
+
+        return leavesKingInCheck ? BoardArrays.MOVE_LEAVES_KING_IN_CHECK : BoardArrays.MOVE_IS_LEGAL;
+    }
+
+    /*
+     * Tests whether moving the piece on fromSquare (which isn't the king) to
+     * toSquare would leave its king attacked. Any piece on toSquare is
+     * captured, so it's left out of the attackers.
+     */
+    private static boolean wouldExposeKing(final BitboardPosition bitboardPosition, final int fromSquare,
+                                           final int toSquare, final int kingSquare, final int otherColor,
+                                           final int colorOnTop) {
+        long toBit = 1L << toSquare;
+        long occupancy = (bitboardPosition.getOccupancy() & ~(1L << fromSquare)) | toBit;
+        return isSquareAttacked(bitboardPosition, kingSquare, otherColor, colorOnTop, occupancy, ~toBit);
+    }
+
+    /*
+     * Tests whether the squares from (lowXIdx, yIdx) to (highXIdx, yIdx)
+     * inclusive are all empty.
+     */
+    private static boolean isRowEmpty(final long occupancy, final int lowXIdx, final int highXIdx,
+                                      final int yIdx) {
+        for (int xIdx = lowXIdx; xIdx <= highXIdx; xIdx++) {
+            if ((occupancy & (1L << (xIdx * 8 + yIdx))) != 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Tests whether any of the squares from (lowXIdx, yIdx) to (highXIdx,
+     * yIdx) inclusive is attacked by the given color.
+     */
+    private static boolean isRowAttacked(final BitboardPosition bitboardPosition, final int lowXIdx,
+                                         final int highXIdx, final int yIdx, final int attackerColor,
+                                         final int colorOnTop, final long occupancy) {
+        for (int xIdx = lowXIdx; xIdx <= highXIdx; xIdx++) {
+            if (isSquareAttacked(bitboardPosition, xIdx * 8 + yIdx, attackerColor, colorOnTop, occupancy, -1L)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Fills the BETWEEN_SQUARES and LINE_SQUARES entries for the lines
+     * running out from the given square in each of the eight directions.
+     */
+    private static void fillLineTables(final int square) {
+        for (int[] step : KING_STEPS) {
+            long line = (1L << square) | rayFrom(square, step[0], step[1]) | rayFrom(square, -step[0], -step[1]);
+            long between = 0L;
+            int xIdx = (square >>> 3) + step[0];
+            int yIdx = (square & 7) + step[1];
+            while (xIdx >= 0 && xIdx <= 7 && yIdx >= 0 && yIdx <= 7) {
+                int lineSquare = xIdx * 8 + yIdx;
+                BETWEEN_SQUARES[square][lineSquare] = between;
+                LINE_SQUARES[square][lineSquare] = line;
+                between |= 1L << lineSquare;
+                xIdx += step[0];
+                yIdx += step[1];
+            }
+        }
+    }
+
+    /*
+     * Computes the squares from the given square (not including it) to the
+     * edge of the board, in one direction.
+     */
+    private static long rayFrom(final int square, final int xStep, final int yStep) {
+        return slidingAttacks(square, new int[][] {{xStep, yStep}}, 0L);
+    }
+
+    /*
+     * Computes the attack set of a piece that takes single steps, from the
+     * given steps.
+     */
+    private static long stepAttacks(final int square, final int[][] steps) {
+        long attacks = 0L;
+        for (int[] step : steps) {
+            int xIdx = (square >>> 3) + step[0];
+            int yIdx = (square & 7) + step[1];
+            if (xIdx >= 0 && xIdx <= 7 && yIdx >= 0 && yIdx <= 7) {
+                attacks |= 1L << (xIdx * 8 + yIdx);
+            }
+        }
+        return attacks;
+    }
+
+    /*
+     * Computes the attack set of a sliding piece by walking its rays, given
+     * the occupied squares. It's only used to fill the magic tables.
+     */
+    private static long slidingAttacks(final int square, final int[][] steps, final long occupancy) {
+        long attacks = 0L;
+        for (int[] step : steps) {
+            int xIdx = (square >>> 3) + step[0];
+            int yIdx = (square & 7) + step[1];
+            while (xIdx >= 0 && xIdx <= 7 && yIdx >= 0 && yIdx <= 7) {
+                long squareBit = 1L << (xIdx * 8 + yIdx);
+                attacks |= squareBit;
+                if ((occupancy & squareBit) != 0L) {
+                    break;
+                }
+                xIdx += step[0];
+                yIdx += step[1];
+            }
+        }
+        return attacks;
+    }
+
+    /*
+     * Computes the mask of the squares that can block a sliding piece: every
+     * square along its rays except the last one on each, since a piece on
+     * the edge of the board doesn't block anything behind it.
+     */
+    private static long slidingMask(final int square, final int[][] steps) {
+        long mask = 0L;
+        for (int[] step : steps) {
+            int xIdx = (square >>> 3) + step[0];
+            int yIdx = (square & 7) + step[1];
+            while (xIdx + step[0] >= 0 && xIdx + step[0] <= 7 && yIdx + step[1] >= 0 && yIdx + step[1] <= 7) {
+                mask |= 1L << (xIdx * 8 + yIdx);
+                xIdx += step[0];
+                yIdx += step[1];
+            }
+        }
+        return mask;
+    }
+
+    /*
+     * Fills the attack table of a sliding piece on the given square. Every
+     * subset of the mask is a possible set of blockers, enumerated by the
+     * carry-rippler trick, and its attack set is stored at the index the
+     * magic maps it to. Two subsets can share an index only if they have the
+     * same attack set.
+     */
+    private static long[] fillMagicTable(final int square, final int[][] steps, final long mask, final long magic,
+                                         final int shift) throws IllegalStateException {
+        long[] attackTable = new long[1 << Long.bitCount(mask)];
+        boolean[] isFilled = new boolean[attackTable.length];
+
+        long subset = 0L;
+        do {
+            int tableIdx = (int) ((subset * magic) >>> shift);
+            long attacks = slidingAttacks(square, steps, subset);
+            if (isFilled[tableIdx] && attackTable[tableIdx] != attacks) {
+                throw new IllegalStateException("The magic number for square " + square + " maps two sets of "
+                                                + "blockers with different attacks to the same index.");
+            }
+            attackTable[tableIdx] = attacks;
+            isFilled[tableIdx] = true;
+            subset = (subset - mask) & mask;
+        } while (subset != 0L);
+
+        return attackTable;
+    }
+}
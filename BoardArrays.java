@@ -88,11 +88,61 @@ public final class BoardArrays {
     /** Contains the pieces that a pawn can be promoted to. */
     public static final int[] PAWN_PROMOTION_PIECES = new int[] {ROOK, KNIGHT, BISHOP, QUEEN};
 
+    /* These int flags are Or'd together to represent which castling moves are
+       still available in a position. A flag is cleared once the king or the
+       rook involved has moved (or the rook has been captured). */
+
+    /** Castling rights flag, White may still castle kingside. */
+    public static final int WHITE_KINGSIDE_CASTLING =   0b0001;
+
+    /** Castling rights flag, White may still castle queenside. */
+    public static final int WHITE_QUEENSIDE_CASTLING =  0b0010;
+
+    /** Castling rights flag, Black may still castle kingside. */
+    public static final int BLACK_KINGSIDE_CASTLING =   0b0100;
+
+    /** Castling rights flag, Black may still castle queenside. */
+    public static final int BLACK_QUEENSIDE_CASTLING =  0b1000;
+
+    /** All four castling rights flags Or'd together. */
+    public static final int ALL_CASTLING_RIGHTS =       0b1111;
+
+    /* These int flags are returned by checkMoveLegality() to describe whether
+       a move may be made, so the search can reject an illegal move without
+       the cost of constructing and catching an exception. */
+
+    /** Move legality flag, the move may be made. */
+    public static final int MOVE_IS_LEGAL =                 0;
+
+    /** Move legality flag, the move would leave the moving side's king in
+        check. */
+    public static final int MOVE_LEAVES_KING_IN_CHECK =     1;
+
+    /** Move legality flag, the move is castling but the castling rights have
+        been lost, the intervening squares are occupied, or the king is in
+        check or would pass through or land on a threatened square. */
+    public static final int MOVE_CASTLING_NOT_POSSIBLE =    2;
+
     /** A Random object, used for a few cases where a coin toss is needed.
         @see #shuffleMovesArray
         @see #generatePawnsMoves */
     private static final Random RNG = new Random();
 
+    /* The x and y steps of the knight's and the king's moves, and the
+       directions the rook and the bishop slide in, used by countMobility().
+       The queen slides in both sets of directions. */
+    private static final int[][] KNIGHT_STEPS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1},
+                                                 {-1, 2}};
+    private static final int[][] KING_STEPS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1},
+                                               {1, -1}};
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+
+    /* The value of the king in a static exchange, in centipawns. It's more
+       than all the other pieces together, so an exchange in which the king
+       would be captured is never played out. */
+    private static final int KING_EXCHANGE_VALUE = 10000;
+
     private BoardArrays() { }
 
     /**
@@ -166,19 +216,123 @@ public final class BoardArrays {
      *                   was found at.
      */
     public static int[] findKing(final int[][] boardArray, final int kingColor) {
-        int xIdx;
-        int yIdx;
-        for (xIdx = 0; xIdx < 8; xIdx++) {
-            for (yIdx = 0; yIdx < 8; yIdx++) {
+        int kingSquare = findKingSquare(boardArray, kingColor);
+
+        /* If the king wasn't found, null is returned as an error value. */
+        if (kingSquare == -1) {
+            return null;
+        }
+
+        return new int[] {kingSquare / 8, kingSquare % 8};
+    }
+
+    /**
+     * Finds the king of the specified color in the boardArray, like findKing(),
+     * but returns its coordinates packed into one int so that no array needs
+     * to be allocated. This is the version used by the move generation and
+     * check detection methods, which are called at every node of a search.
+     *
+     * @param boardArray An int[8][8] array that is the chessboard
+     *                   representation used explicitly by methods in this
+     *                   static class, and internally by the Chessboard object.
+     * @param kingColor  The color of the king to search for.
+     * @return           The king's square, as xIdx * 8 + yIdx, or -1 if the
+     *                   king wasn't found.
+     */
+    public static int findKingSquare(final int[][] boardArray, final int kingColor) {
+        for (int xIdx = 0; xIdx < 8; xIdx++) {
+            for (int yIdx = 0; yIdx < 8; yIdx++) {
                 if (boardArray[xIdx][yIdx] == (kingColor | KING)) {
-                    return new int[] {xIdx, yIdx};
+                    return xIdx * 8 + yIdx;
                 }
             }
         }
 
-        /* The loops completed without matching the King, so null is returned as
-           an error value. */
-        return null;
+        return -1;
+    }
+
+    /**
+     * Copies a boardArray, so that a search can make and unmake moves on the
+     * copy without disturbing the original.
+     *
+     * @param boardArray An int[8][8] array that is the chessboard
+     *                   representation used explicitly by methods in this
+     *                   static class, and internally by the Chessboard object.
+     * @return           A new int[8][8] array with the same contents.
+     */
+    public static int[][] copyBoardArray(final int[][] boardArray) {
+        int[][] boardArrayCopy = new int[8][];
+        for (int xIdx = 0; xIdx < 8; xIdx++) {
+            boardArrayCopy[xIdx] = boardArray[xIdx].clone();
+        }
+        return boardArrayCopy;
+    }
+
+    /**
+     * Computes the castling rights that remain after a move from one square
+     * to another. Any move that leaves or lands on a king's or a rook's
+     * starting square clears the castling rights that depend on that piece
+     * never having moved (or, for a rook, never having been captured).
+     *
+     * @param castlingRights The castling rights flags in effect before the
+     *                       move.
+     * @param fromXIdx       The x index of the square the piece moved from.
+     * @param fromYIdx       The y index of the square the piece moved from.
+     * @param toXIdx         The x index of the square the piece moved to.
+     * @param toYIdx         The y index of the square the piece moved to.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @return               The castling rights flags in effect after the move.
+     */
+    public static int castlingRightsAfterMove(final int castlingRights, final int fromXIdx, final int fromYIdx,
+                                              final int toXIdx, final int toYIdx, final int colorOnTop) {
+        int retval = castlingRights;
+
+        /* If no castling is possible anyway, there's nothing to clear. */
+        if (retval == 0) {
+            return 0;
+        }
+
+        retval &= ~castlingRightsClearedBySquare(fromXIdx, fromYIdx, colorOnTop);
+        retval &= ~castlingRightsClearedBySquare(toXIdx, toYIdx, colorOnTop);
+
+        return retval;
+    }
+
+    /*
+     * A utility method used by castlingRightsAfterMove(). It returns the
+     * castling rights flags that depend on the piece which starts the game on
+     * the given square, or 0 if the square isn't a king's or a rook's starting
+     * square.
+     */
+    private static int castlingRightsClearedBySquare(final int xIdx, final int yIdx, final int colorOnTop) {
+        int topRights;
+        int bottomRights;
+
+        if (colorOnTop == WHITE) {
+            topRights = WHITE_KINGSIDE_CASTLING | WHITE_QUEENSIDE_CASTLING;
+            bottomRights = BLACK_KINGSIDE_CASTLING | BLACK_QUEENSIDE_CASTLING;
+        } else {
+            topRights = BLACK_KINGSIDE_CASTLING | BLACK_QUEENSIDE_CASTLING;
+            bottomRights = WHITE_KINGSIDE_CASTLING | WHITE_QUEENSIDE_CASTLING;
+        }
+
+        int sideRights;
+        if (yIdx == 0) {
+            sideRights = topRights;
+        } else if (yIdx == 7) {
+            sideRights = bottomRights;
+        } else {
+            return 0;
+        }
+
+        /* The kingside flags are the lower bit of each color's pair and the
+           queenside flags the higher bit. */
+        return switch (xIdx) {
+            case 4 -> sideRights;
+            case 7 -> sideRights & (WHITE_KINGSIDE_CASTLING | BLACK_KINGSIDE_CASTLING);
+            case 0 -> sideRights & (WHITE_QUEENSIDE_CASTLING | BLACK_QUEENSIDE_CASTLING);
+            default -> 0;
+        };
     }
 
     /**
@@ -200,6 +354,24 @@ public final class BoardArrays {
         }
     }
 
+    /**
+     * Shuffles the first usedLength packed moves in the given array, using the
+     * Fisher-Yates in-place shuffling algorithm.
+     *
+     * @param movesArray The int[] array of packed moves to shuffle a
+     *                   subsequence of.
+     * @param usedLength The length of the subsequence of the moves array to
+     *                   shuffle, counting from the beginning of the array.
+     */
+    public static void shuffleMovesArray(final int[] movesArray, final int usedLength) {
+        for (int startingIndex = usedLength - 1; startingIndex > 0; startingIndex--) {
+            int randomIndex = RNG.nextInt(startingIndex + 1);
+            int swapValue = movesArray[randomIndex];
+            movesArray[randomIndex] = movesArray[startingIndex];
+            movesArray[startingIndex] = swapValue;
+        }
+    }
+
     /**
      * Tests whether the king of the specified color is in checkmate. It does
      * this by executing a method that populates an array with all possible
@@ -224,15 +396,36 @@ public final class BoardArrays {
      * @see #generateKingsMoves
      */
     public static boolean isKingInCheckmate(final int[][] boardArray, final int colorsTurnItIs, final int colorOnTop) {
-        int[][] movesArray = new int[128][7];
+        return isKingInCheckmate(boardArray, new int[128], colorsTurnItIs, colorOnTop);
+    }
+
+    /**
+     * Tests whether the king of the specified color is in checkmate, like the
+     * other isKingInCheckmate(), but generates moves into a caller-supplied
+     * movesArray so that a caller that tests repeatedly can reuse one array.
+     *
+     * @param boardArray      An int[8][8] array that is the chessboard
+     *                        representation used explicitly by methods in this
+     *                        static class, and internally by the Chessboard object.
+     * @param movesArray      An int[128] array to use as scratch.
+     * @param colorsTurnItIs  The color of the piece.
+     * @param colorOnTop      The color playing from the top of the board.
+     * @return                True if the specified king is in checkmate,
+     *                        false otherwise.
+     */
+    public static boolean isKingInCheckmate(final int[][] boardArray, final int[] movesArray,
+                                            final int colorsTurnItIs, final int colorOnTop) {
         return generatePossibleMoves(boardArray, movesArray, colorsTurnItIs, colorOnTop) == 0;
     }
 
     /**
      * Generates possible moves for every piece in the boardArray argument of
-     * the specified color. It saves them to its movesArray argument. It returns
-     * the index of the first empty array in movesArray after it has filled zero
-     * or more arrays with moves.
+     * the specified color. It saves them to its movesArray argument as int[7]
+     * move arrays. It returns the index of the first empty array in movesArray
+     * after it has filled zero or more arrays with moves.
+     *
+     * This is a convenience wrapper around the version of this method that
+     * fills an int[] array of packed moves, which is the one the search uses.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
@@ -244,7 +437,36 @@ public final class BoardArrays {
      *                        array in the int[][7] movesArray.
      * @throws IllegalArgumentException If an integer in the boardArray argument
      *                                  doesn't parse as a valid composite of
+     *                                  integer piece flags, or if movesArray
+     *                                  isn't empty.
+     * @see MoveEncoding#decode
+     */
+    public static int generatePossibleMoves(final int[][] boardArray, final int[][] movesArray,
+                                            final int colorsTurnItIs, final int colorOnTop
+                                            ) throws IllegalArgumentException {
+        int[] packedMovesArray = new int[movesArray.length];
+        int usedLength = generatePossibleMoves(boardArray, packedMovesArray, colorsTurnItIs, colorOnTop);
+        return unpackMovesArray(packedMovesArray, movesArray, 0, usedLength);
+    }
+
+    /**
+     * Generates possible moves for every piece in the boardArray argument of
+     * the specified color. It saves them to its movesArray argument as packed
+     * moves. It returns the index of the first empty element in movesArray
+     * after it has filled zero or more elements with moves.
+     *
+     * @param boardArray      An int[8][8] array that is the chessboard
+     *                        representation used explicitly by methods in this
+     *                        static class, and internally by the Chessboard object.
+     * @param movesArray      The working int[] array to fill packed moves into.
+     * @param colorsTurnItIs  The color of the piece.
+     * @param colorOnTop      The color playing from the top of the board.
+     * @return                The new value for the index of the first empty
+     *                        element in the int[] movesArray.
+     * @throws IllegalArgumentException If an integer in the boardArray argument
+     *                                  doesn't parse as a valid composite of
      *                                  integer piece flags.
+     * @see MoveEncoding
      * @see #generatePawnsMoves
      * @see #generateRooksMoves
      * @see #generateBishopsMoves
@@ -252,10 +474,11 @@ public final class BoardArrays {
      * @see #generateQueensMoves
      * @see #generateKingsMoves
      */
-    public static int generatePossibleMoves(final int[][] boardArray, final int[][] movesArray,
+    public static int generatePossibleMoves(final int[][] boardArray, final int[] movesArray,
                                             final int colorsTurnItIs, final int colorOnTop
                                             ) throws IllegalArgumentException {
         int colorOpposing = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
+        int kingSquare = findKingSquare(boardArray, colorsTurnItIs);
         int moveIdx = 0;
 
         for (int xIdx = 0; xIdx < 8; xIdx++) {
@@ -264,27 +487,390 @@ public final class BoardArrays {
                 if (pieceInt == 0 || (pieceInt & colorOpposing) != 0) {
                     continue;
                 }
-                moveIdx = generatePieceMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
+                moveIdx = generatePieceMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                             kingSquare);
             }
         }
 
         return moveIdx;
     }
 
+    /**
+     * Generates possible moves for the pieces of the specified color, like
+     * the other generatePossibleMoves() that fills packed moves, but visits
+     * only the squares in the supplied piece list instead of scanning the
+     * whole board, and takes the king's square from the caller. This is the
+     * version the search uses, with the piece lists that PositionState keeps.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param movesArray     The working int[] array to fill packed moves into.
+     * @param colorsTurnItIs The color of the pieces.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @param pieceSquares   The squares occupied by that color's pieces, as
+     *                       xIdx * 8 + yIdx.
+     * @param piecesCount    The number of squares in use in pieceSquares.
+     * @param kingSquare     The square of that color's king.
+     * @return               The new value for the index of the first empty
+     *                       element in the int[] movesArray.
+     * @throws IllegalArgumentException If an integer in the boardArray argument
+     *                                  doesn't parse as a valid composite of
+     *                                  integer piece flags.
+     * @see PositionState#getPieceSquares
+     */
+    public static int generatePossibleMoves(final int[][] boardArray, final int[] movesArray,
+                                            final int colorsTurnItIs, final int colorOnTop,
+                                            final int[] pieceSquares, final int piecesCount, final int kingSquare
+                                            ) throws IllegalArgumentException {
+        int moveIdx = 0;
+
+        for (int pieceIdx = 0; pieceIdx < piecesCount; pieceIdx++) {
+            int square = pieceSquares[pieceIdx];
+            moveIdx = generatePieceMoves(boardArray, movesArray, moveIdx, square >>> 3, square & 7, colorsTurnItIs,
+                                         colorOnTop, kingSquare);
+        }
+
+        return moveIdx;
+    }
+
+    /**
+     * Counts the mobility of the pieces of the specified color: the number of
+     * squares each piece could move to, summed over the pieces in the
+     * supplied piece list. It counts the squares of pseudo-legal moves
+     * without generating the moves. No move is tested for leaving the king in
+     * check, castling isn't counted, and a pawn's promotion counts as one
+     * square rather than one move per piece it could promote to. A square
+     * counts if it's empty or holds an opposing piece other than the king.
+     * Bitboards.countMobility() counts the same squares on a BitboardPosition.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param colorsTurnItIs The color of the pieces.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @param pieceSquares   The squares occupied by that color's pieces, as
+     *                       xIdx * 8 + yIdx.
+     * @param piecesCount    The number of squares in use in pieceSquares.
+     * @return               The number of squares counted.
+     * @see PositionState#getPieceSquares
+     */
+    public static int countMobility(final int[][] boardArray, final int colorsTurnItIs, final int colorOnTop,
+                                    final int[] pieceSquares, final int piecesCount) {
+        int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
+        int mobility = 0;
+
+        for (int pieceIdx = 0; pieceIdx < piecesCount; pieceIdx++) {
+            int xIdx = pieceSquares[pieceIdx] >>> 3;
+            int yIdx = pieceSquares[pieceIdx] & 7;
+            int pieceInt = boardArray[xIdx][yIdx];
+
+            if ((pieceInt & PAWN) != 0) {
+                mobility += countPawnMobility(boardArray, xIdx, yIdx, colorsTurnItIs, colorOnTop);
+            } else if ((pieceInt & KNIGHT) != 0) {
+                mobility += countStepMobility(boardArray, xIdx, yIdx, KNIGHT_STEPS, colorsTurnItIs, otherColor);
+            } else if ((pieceInt & KING) != 0) {
+                mobility += countStepMobility(boardArray, xIdx, yIdx, KING_STEPS, colorsTurnItIs, otherColor);
+            } else {
+                if ((pieceInt & (ROOK | QUEEN)) != 0) {
+                    mobility += countSlidingMobility(boardArray, xIdx, yIdx, ROOK_DIRECTIONS, colorsTurnItIs,
+                                                     otherColor);
+                }
+                if ((pieceInt & (BISHOP | QUEEN)) != 0) {
+                    mobility += countSlidingMobility(boardArray, xIdx, yIdx, BISHOP_DIRECTIONS, colorsTurnItIs,
+                                                     otherColor);
+                }
+            }
+        }
+
+        return mobility;
+    }
+
+    /*
+     * Counts the squares a pawn could move to for countMobility(): one or two
+     * squares ahead if they're empty, and the two squares diagonally ahead if
+     * they hold an opposing piece other than the king.
+     */
+    private static int countPawnMobility(final int[][] boardArray, final int xIdx, final int yIdx,
+                                         final int colorsTurnItIs, final int colorOnTop) {
+        int yStep = colorsTurnItIs == colorOnTop ? 1 : -1;
+        int startingYIdx = colorsTurnItIs == colorOnTop ? 1 : 6;
+        int aheadYIdx = yIdx + yStep;
+        int mobility = 0;
+
+        if (aheadYIdx < 0 || aheadYIdx > 7) {
+            return 0;
+        }
+        if (boardArray[xIdx][aheadYIdx] == 0) {
+            mobility++;
+            if (yIdx == startingYIdx && boardArray[xIdx][aheadYIdx + yStep] == 0) {
+                mobility++;
+            }
+        }
+        for (int captureXIdx = xIdx - 1; captureXIdx <= xIdx + 1; captureXIdx += 2) {
+            if (captureXIdx < 0 || captureXIdx > 7) {
+                continue;
+            }
+            int capturedPieceInt = boardArray[captureXIdx][aheadYIdx];
+            if (capturedPieceInt != 0 && (capturedPieceInt & colorsTurnItIs) == 0 && (capturedPieceInt & KING) == 0) {
+                mobility++;
+            }
+        }
+
+        return mobility;
+    }
+
+    /*
+     * Counts the squares a knight or a king could move to for
+     * countMobility(), taking one step from the given set.
+     */
+    private static int countStepMobility(final int[][] boardArray, final int xIdx, final int yIdx,
+                                         final int[][] steps, final int colorsTurnItIs, final int otherColor) {
+        int mobility = 0;
+
+        for (int[] step : steps) {
+            int xIdxMod = xIdx + step[0];
+            int yIdxMod = yIdx + step[1];
+            if (xIdxMod < 0 || xIdxMod > 7 || yIdxMod < 0 || yIdxMod > 7) {
+                continue;
+            }
+            int targetPieceInt = boardArray[xIdxMod][yIdxMod];
+            if ((targetPieceInt & colorsTurnItIs) == 0 && targetPieceInt != (otherColor | KING)) {
+                mobility++;
+            }
+        }
+
+        return mobility;
+    }
+
+    /*
+     * Counts the squares a rook, a bishop or a queen could move to for
+     * countMobility() in the given set of directions, each ray ending at the
+     * edge of the board or the first piece on it.
+     */
+    private static int countSlidingMobility(final int[][] boardArray, final int xIdx, final int yIdx,
+                                            final int[][] directions, final int colorsTurnItIs,
+                                            final int otherColor) {
+        int mobility = 0;
+
+        for (int[] direction : directions) {
+            int xIdxMod = xIdx + direction[0];
+            int yIdxMod = yIdx + direction[1];
+            while (xIdxMod >= 0 && xIdxMod <= 7 && yIdxMod >= 0 && yIdxMod <= 7) {
+                int targetPieceInt = boardArray[xIdxMod][yIdxMod];
+                if (targetPieceInt != 0) {
+                    if ((targetPieceInt & colorsTurnItIs) == 0 && targetPieceInt != (otherColor | KING)) {
+                        mobility++;
+                    }
+                    break;
+                }
+                mobility++;
+                xIdxMod += direction[0];
+                yIdxMod += direction[1];
+            }
+        }
+
+        return mobility;
+    }
+
+    /**
+     * Returns the value of a piece in a static exchange, in centipawns. It's
+     * the piece's material value, as PositionState.materialValue() weighs it,
+     * except that the king is worth more than every other piece together.
+     *
+     * @param pieceInt The piece int.
+     * @return         The piece's exchange value.
+     * @see PositionState#materialValue
+     */
+    public static int exchangeValue(final int pieceInt) {
+        return (pieceInt & KING) != 0 ? KING_EXCHANGE_VALUE : PositionState.materialValue(pieceInt);
+    }
+
+    /**
+     * Computes the static exchange evaluation of a capture: the material the
+     * side making it wins, in centipawns, if both sides then go on
+     * recapturing on the captured square for as long as it profits them,
+     * each with its least valuable piece. A slider that was behind a piece
+     * that recaptured joins the exchange in its turn (an x-ray). Pins are
+     * ignored, and a pawn recapturing onto the last rank isn't counted as
+     * promoting. Bitboards.staticExchangeScore() computes the same score on a
+     * BitboardPosition.
+     *
+     * @param boardArray  An int[8][8] array that is the chessboard
+     *                    representation used explicitly by methods in this
+     *                    static class, and internally by the Chessboard object.
+     * @param move        The packed capture, as encoded by MoveEncoding.
+     * @param colorOnTop  The color playing from the top of the board.
+     * @param gainsArray  A working int[] array for the exchange's running
+     *                    gains. It's assumed to have at least 32 elements.
+     * @return            The material won by the capture if it's positive, or
+     *                    lost by it if it's negative.
+     * @see #exchangeValue
+     */
+    public static int staticExchangeScore(final int[][] boardArray, final int move, final int colorOnTop,
+                                          final int[] gainsArray) {
+        int toXIdx = MoveEncoding.toSquare(move) >>> 3;
+        int toYIdx = MoveEncoding.toSquare(move) & 7;
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int capturingColor = (movedPieceInt & WHITE) != 0 ? BLACK : WHITE;
+        int pieceOnSquareValue = exchangeValue(movedPieceInt);
+        long removedSquares = 1L << MoveEncoding.fromSquare(move);
+        int exchangeDepth = 0;
+
+        gainsArray[0] = exchangeValue(MoveEncoding.capturedPieceInt(move));
+        if (MoveEncoding.isPromotion(move)) {
+            pieceOnSquareValue = exchangeValue(MoveEncoding.promotedToPieceInt(move));
+            gainsArray[0] += pieceOnSquareValue - exchangeValue(PAWN);
+        }
+
+        /* Each gain is the material the side recapturing wins if the
+           exchange stops after its recapture. The exchange is played out
+           until a side has nothing left to recapture with, or until
+           recapturing can't help whichever side is to recapture. */
+        while (true) {
+            int attackerSquare = findLeastValuableAttacker(boardArray, toXIdx, toYIdx, capturingColor, colorOnTop,
+                                                           removedSquares);
+            if (attackerSquare == -1) {
+                break;
+            }
+            exchangeDepth++;
+            gainsArray[exchangeDepth] = pieceOnSquareValue - gainsArray[exchangeDepth - 1];
+            if (Math.max(-gainsArray[exchangeDepth - 1], gainsArray[exchangeDepth]) < 0) {
+                break;
+            }
+            pieceOnSquareValue = exchangeValue(boardArray[attackerSquare >>> 3][attackerSquare & 7]);
+            removedSquares |= 1L << attackerSquare;
+            capturingColor = (capturingColor == WHITE) ? BLACK : WHITE;
+        }
+
+        /* Working back from the end of the exchange, each side stops
+           recapturing where doing so would lose it material. */
+        while (exchangeDepth > 0) {
+            gainsArray[exchangeDepth - 1] = -Math.max(-gainsArray[exchangeDepth - 1], gainsArray[exchangeDepth]);
+            exchangeDepth--;
+        }
+
+        return gainsArray[0];
+    }
+
+    /*
+     * Finds the least valuable piece of the given color that attacks the
+     * given square for staticExchangeScore(), skipping the pieces on the
+     * squares in removedSquares, which have already been exchanged. A slider
+     * attacks through them. Of two equally valuable attackers, the one on the
+     * lower square is found, as Bitboards.staticExchangeScore() finds it.
+     *
+     * @return The attacker's square, as xIdx * 8 + yIdx, or -1 if there's no
+     *         attacker.
+     */
+    private static int findLeastValuableAttacker(final int[][] boardArray, final int xIdx, final int yIdx,
+                                                 final int attackerColor, final int colorOnTop,
+                                                 final long removedSquares) {
+        int attackerSquare;
+
+        /* An attacking pawn stands one row behind the square, from its
+           color's point of view, on a neighboring file. */
+        int pawnYIdx = yIdx - (attackerColor == colorOnTop ? 1 : -1);
+        if (pawnYIdx >= 0 && pawnYIdx <= 7) {
+            for (int pawnXIdx = xIdx - 1; pawnXIdx <= xIdx + 1; pawnXIdx += 2) {
+                if (pawnXIdx >= 0 && pawnXIdx <= 7 && boardArray[pawnXIdx][pawnYIdx] == (attackerColor | PAWN)
+                    && (removedSquares & (1L << (pawnXIdx * 8 + pawnYIdx))) == 0L) {
+                    return pawnXIdx * 8 + pawnYIdx;
+                }
+            }
+        }
+
+        attackerSquare = findStepAttacker(boardArray, xIdx, yIdx, KNIGHT_STEPS, attackerColor | KNIGHT,
+                                          removedSquares);
+        if (attackerSquare == 64) {
+            attackerSquare = findSlidingAttacker(boardArray, xIdx, yIdx, BISHOP_DIRECTIONS, attackerColor | BISHOP,
+                                                 removedSquares);
+        }
+        if (attackerSquare == 64) {
+            attackerSquare = findSlidingAttacker(boardArray, xIdx, yIdx, ROOK_DIRECTIONS, attackerColor | ROOK,
+                                                 removedSquares);
+        }
+        if (attackerSquare == 64) {
+            attackerSquare = Math.min(findSlidingAttacker(boardArray, xIdx, yIdx, BISHOP_DIRECTIONS,
+                                                          attackerColor | QUEEN, removedSquares),
+                                      findSlidingAttacker(boardArray, xIdx, yIdx, ROOK_DIRECTIONS,
+                                                          attackerColor | QUEEN, removedSquares));
+        }
+        if (attackerSquare == 64) {
+            attackerSquare = findStepAttacker(boardArray, xIdx, yIdx, KING_STEPS, attackerColor | KING,
+                                              removedSquares);
+        }
+
+        return attackerSquare == 64 ? -1 : attackerSquare;
+    }
+
+    /*
+     * Finds the knight or king on the lowest square that attacks the given
+     * square for findLeastValuableAttacker(), or returns 64 if there's none.
+     * A knight's facing is ignored.
+     */
+    private static int findStepAttacker(final int[][] boardArray, final int xIdx, final int yIdx,
+                                        final int[][] steps, final int attackerPieceInt,
+                                        final long removedSquares) {
+        int attackerSquare = 64;
+
+        for (int[] step : steps) {
+            int xIdxMod = xIdx + step[0];
+            int yIdxMod = yIdx + step[1];
+            if (xIdxMod >= 0 && xIdxMod <= 7 && yIdxMod >= 0 && yIdxMod <= 7
+                && (boardArray[xIdxMod][yIdxMod] & ~(LEFT | RIGHT)) == attackerPieceInt
+                && (removedSquares & (1L << (xIdxMod * 8 + yIdxMod))) == 0L) {
+                attackerSquare = Math.min(attackerSquare, xIdxMod * 8 + yIdxMod);
+            }
+        }
+
+        return attackerSquare;
+    }
+
+    /*
+     * Finds the rook, bishop or queen on the lowest square that attacks the
+     * given square along one of the given directions for
+     * findLeastValuableAttacker(), or returns 64 if there's none. Each ray
+     * is followed past the removed squares to the first piece still on it.
+     */
+    private static int findSlidingAttacker(final int[][] boardArray, final int xIdx, final int yIdx,
+                                           final int[][] directions, final int attackerPieceInt,
+                                           final long removedSquares) {
+        int attackerSquare = 64;
+
+        for (int[] direction : directions) {
+            int xIdxMod = xIdx + direction[0];
+            int yIdxMod = yIdx + direction[1];
+            while (xIdxMod >= 0 && xIdxMod <= 7 && yIdxMod >= 0 && yIdxMod <= 7) {
+                int pieceInt = boardArray[xIdxMod][yIdxMod];
+                if (pieceInt != 0 && (removedSquares & (1L << (xIdxMod * 8 + yIdxMod))) == 0L) {
+                    if (pieceInt == attackerPieceInt) {
+                        attackerSquare = Math.min(attackerSquare, xIdxMod * 8 + yIdxMod);
+                    }
+                    break;
+                }
+                xIdxMod += direction[0];
+                yIdxMod += direction[1];
+            }
+        }
+
+        return attackerSquare;
+    }
+
     /**
      * Generates possible moves for the piece at the specified location its
-     * boardArray first argument, and saves them to its movesArray argument. It
-     * returns the index of the first empty array in movesArray after it has
-     * filled zero or more arrays with moves.
+     * boardArray first argument, and saves them to its movesArray argument as
+     * int[7] move arrays. It returns the index of the first empty array in
+     * movesArray after it has filled zero or more arrays with moves.
+     *
+     * This is a convenience wrapper around the version of this method that
+     * fills an int[] array of packed moves.
      *
      * @param boardArray     An int[8][8] array that is the chessboard
      *                       representation used explicitly by methods in this
      *                       static class, and internally by the Chessboard object.
      * @param movesArray     The working int[][7] array to fill moves into.
      * @param moveIdx        The index of the first empty array in movesArray.
-     *                       This value is incremented each time a new move is
-     *                       saved to movesArray, and the final value (still
-     *                       pointing to the
      * @param xIdx           The x index of the location of the piece.
      * @param yIdx           The y index of the location of the piece.
      * @param colorsTurnItIs The color of the piece.
@@ -293,7 +879,40 @@ public final class BoardArrays {
      *                       array in the int[][7] movesArray.
      * @throws IllegalArgumentException If an integer in the boardArray argument
      *                                  doesn't parse as a valid composite of
+     *                                  integer piece flags, or if movesArray
+     *                                  isn't empty from moveIdx on.
+     * @see MoveEncoding#decode
+     */
+    public static int generatePieceMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdx,
+                                  final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
+                                  ) throws IllegalArgumentException {
+        int[] packedMovesArray = new int[movesArray.length];
+        int usedLength = generatePieceMoves(boardArray, packedMovesArray, moveIdx, xIdx, yIdx, colorsTurnItIs,
+                                            colorOnTop);
+        return unpackMovesArray(packedMovesArray, movesArray, moveIdx, usedLength);
+    }
+
+    /**
+     * Generates possible moves for the piece at the specified location its
+     * boardArray first argument, and saves them to its movesArray argument as
+     * packed moves. It returns the index of the first empty element in
+     * movesArray after it has filled zero or more elements with moves.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param movesArray     The working int[] array to fill packed moves into.
+     * @param moveIdx        The index of the first empty element in movesArray.
+     * @param xIdx           The x index of the location of the piece.
+     * @param yIdx           The y index of the location of the piece.
+     * @param colorsTurnItIs The color of the piece.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @return               The new value for the index of the first empty
+     *                       element in the int[] movesArray.
+     * @throws IllegalArgumentException If an integer in the boardArray argument
+     *                                  doesn't parse as a valid composite of
      *                                  integer piece flags.
+     * @see MoveEncoding
      * @see #generatePawnsMoves
      * @see #generateRooksMoves
      * @see #generateBishopsMoves
@@ -301,18 +920,55 @@ public final class BoardArrays {
      * @see #generateQueensMoves
      * @see #generateKingsMoves
      */
-    public static int generatePieceMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdx,
+    public static int generatePieceMoves(final int[][] boardArray, final int[] movesArray, final int moveIdx,
                                   final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
                                   ) throws IllegalArgumentException {
+        return generatePieceMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                  findKingSquare(boardArray, colorsTurnItIs));
+    }
+
+    /**
+     * Generates possible moves for the piece at the specified location, like
+     * the other generatePieceMoves() that fills packed moves, but with the
+     * square of the king of the piece's color supplied by the caller, so the
+     * board doesn't need to be searched for it. Every candidate move is
+     * tested for whether it leaves that king in check.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param movesArray     The working int[] array to fill packed moves into.
+     * @param moveIdx        The index of the first empty element in movesArray.
+     * @param xIdx           The x index of the location of the piece.
+     * @param yIdx           The y index of the location of the piece.
+     * @param colorsTurnItIs The color of the piece.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @param kingSquare     The square of the king of the piece's color, as
+     *                       xIdx * 8 + yIdx.
+     * @return               The new value for the index of the first empty
+     *                       element in the int[] movesArray.
+     * @throws IllegalArgumentException If an integer in the boardArray argument
+     *                                  doesn't parse as a valid composite of
+     *                                  integer piece flags.
+     * @see PositionState#getKingSquare
+     */
+    public static int generatePieceMoves(final int[][] boardArray, final int[] movesArray, final int moveIdx,
+                                         final int xIdx, final int yIdx, final int colorsTurnItIs,
+                                         final int colorOnTop, final int kingSquare) throws IllegalArgumentException {
         int pieceInt = boardArray[xIdx][yIdx];
         int retval = switch (pieceInt ^ colorsTurnItIs) {
-            case PAWN -> generatePawnsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
-            case ROOK -> generateRooksMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
+            case PAWN -> generatePawnsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                            kingSquare);
+            case ROOK -> generateRooksMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                            kingSquare);
             case KNIGHT | LEFT, KNIGHT | RIGHT ->
-                    generateKnightsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
+                    generateKnightsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                         kingSquare);
             case BISHOP ->
-                    generateBishopsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
-            case QUEEN -> generateQueensMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
+                    generateBishopsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                         kingSquare);
+            case QUEEN -> generateQueensMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop,
+                                              kingSquare);
             case KING -> generateKingsMoves(boardArray, movesArray, moveIdx, xIdx, yIdx, colorsTurnItIs, colorOnTop);
             default -> throw new IllegalArgumentException(
                     "The integer value found in the board array at the specified indexes doesn't parse as a "
@@ -322,31 +978,58 @@ public final class BoardArrays {
         /* The color of the piece is Not'd off of the pieceInt found in
            boardArray at the given indexes, and the value is switched against.
            The generate*sMoves() method corresponding to the piece is
-           called. The return value of that method is returned directly. */
+           called. The return value of that method is returned directly. No
+           packed move is 0, so a 0 at the last index written means something
+           went wrong. */
 
-        if (retval > moveIdx && Arrays.equals(movesArray[retval - 1], new int[7])) {
+        if (retval > moveIdx && movesArray[retval - 1] == 0) {
             throw new IllegalStateException("move index has been incremented (moves for piece "
                                             + BoardArrays.pieceIntToString(pieceInt)
-                                            + ") but most recent move array pointed to is 0s");
+                                            + ") but most recent move pointed to is 0");
         }
 
         return retval;
     }
 
+    /*
+     * Unpacks the packed moves from fromIdx up to toIdx in packedMovesArray
+     * into the int[7] arrays at the same indexes in movesArray, which must be
+     * empty. Used by the int[][] versions of the move generation methods.
+     *
+     * @param packedMovesArray The int[] array of packed moves.
+     * @param movesArray       The int[][7] array to unpack the moves into.
+     * @param fromIdx          The index of the first move to unpack.
+     * @param toIdx            The index after the last move to unpack.
+     * @return                 toIdx.
+     * @throws IllegalArgumentException If an array in movesArray that a move
+     *                                  would be unpacked into isn't empty.
+     */
+    private static int unpackMovesArray(final int[] packedMovesArray, final int[][] movesArray, final int fromIdx,
+                                        final int toIdx) throws IllegalArgumentException {
+        for (int moveIdx = fromIdx; moveIdx < toIdx; moveIdx++) {
+            if (movesArray[moveIdx][0] != 0) {
+                throw new IllegalArgumentException("move generation called with moveIdx arg pointing to "
+                                                   + "non-zero entry in movesArray argument");
+            }
+            MoveEncoding.decode(packedMovesArray[moveIdx], movesArray[moveIdx]);
+        }
+        return toIdx;
+    }
+
     /**
      * Generates possible moves for the pawn, and saves them to its movesArray
-     * argument. It returns the index of the first empty array in movesArray
+     * argument. It returns the index of the first empty element in movesArray
      * after it has filled zero or more arrays with moves.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -354,15 +1037,19 @@ public final class BoardArrays {
      * @param yIdx            The y index of the location of the pawn.
      * @param colorsTurnItIs  The color of the pawn.
      * @param colorOnTop      The color playing from the top of the board.
+     * @param kingSquare      The square of the king of the pawn's color, as
+     *                        xIdx * 8 + yIdx.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  pawn of the specified color.
      */
-    public static int generatePawnsMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
-                                  final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
-                                  ) throws IllegalArgumentException {
+    public static int generatePawnsMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
+                                  final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop,
+                                  final int kingSquare) throws IllegalArgumentException {
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
         int colorOnBottom = colorOnTop == WHITE ? BLACK : WHITE;
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
         int pawnPieceInt;
@@ -420,7 +1107,8 @@ public final class BoardArrays {
 
             /* If the move would put this side's king in check (or fail to
                get it out of check), it's discarded. */
-            if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+            if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                   colorsTurnItIs, colorOnTop)) {
                 continue;
             }
 
@@ -455,41 +1143,45 @@ public final class BoardArrays {
         }
 
         /* If the pawn is on the 2nd rank from the top, and is the color playing
-           from the top, and the square two ahead is empty, */
-        if (yIdx == 1 && colorsTurnItIs == colorOnTop && boardArray[xIdx][yIdx + 2] == 0
+           from the top, and the squares one and two ahead are empty, */
+        if (yIdx == 1 && colorsTurnItIs == colorOnTop && boardArray[xIdx][yIdx + 1] == 0
+            && boardArray[xIdx][yIdx + 2] == 0
             /* or the pawn is on the 7th rank from the top, and is the color
-               playing from the bottom, and the square two ahead is empty, */
-            || yIdx == 6 && colorsTurnItIs == colorOnBottom && boardArray[xIdx][yIdx - 2] == 0) {
+               playing from the bottom, and the squares one and two ahead are
+               empty, */
+            || yIdx == 6 && colorsTurnItIs == colorOnBottom && boardArray[xIdx][yIdx - 1] == 0
+            && boardArray[xIdx][yIdx - 2] == 0) {
             /* Then a move of two ahead is possible. */
             yIdxMod = yIdx == 1 ? yIdx + 2 : yIdx - 2;
 
             /* If the move wouldn't put this side's king in check (or fail to
                get it out of check), it's saved to the movesArray. */
-            if (!wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdx, yIdxMod, colorsTurnItIs, colorOnTop)) {
+            if (!wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdx, yIdxMod,
+                                    colorsTurnItIs, colorOnTop)) {
                 moveIdx = setMoveToMovesArray(movesArray, moveIdx, pawnPieceInt, xIdx, yIdx, xIdx, yIdxMod, 0);
             }
         }
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /**
      * Generate possible moves for the rook, and saves them to its movesArray
-     * argument. It returns the index of the first empty array in movesArray
+     * argument. It returns the index of the first empty element in movesArray
      * after it has filled zero or more arrays with moves.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -497,15 +1189,19 @@ public final class BoardArrays {
      * @param yIdx            The y index of the location of the rook.
      * @param colorsTurnItIs  The color of the rook.
      * @param colorOnTop      The color playing from the top of the board.
+     * @param kingSquare      The square of the king of the rook's color, as
+     *                        xIdx * 8 + yIdx.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  rook of the specified color.
      */
-    public static int generateRooksMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
-                                  final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
-                                  ) throws IllegalArgumentException {
+    public static int generateRooksMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
+                                  final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop,
+                                  final int kingSquare) throws IllegalArgumentException {
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
         int rookPieceInt;
         int moveIdx = moveIdxArg;
@@ -531,7 +1227,12 @@ public final class BoardArrays {
 
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdx, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdx, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdx][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -555,7 +1256,12 @@ public final class BoardArrays {
 
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdx, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdx, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdx][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
 
@@ -580,7 +1286,12 @@ public final class BoardArrays {
 
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdx, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdx,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdx] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -604,7 +1315,12 @@ public final class BoardArrays {
 
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdx, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdx,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdx] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -621,24 +1337,24 @@ public final class BoardArrays {
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /**
      * Generates possible moves for the bishop, and saves them to its movesArray
-     * argument. It returns the index of the first empty array in movesArray
+     * argument. It returns the index of the first empty element in movesArray
      * after it has filled zero or more arrays with moves.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -646,15 +1362,19 @@ public final class BoardArrays {
      * @param yIdx            The y index of the location of the bishop.
      * @param colorsTurnItIs  The color of the bishop.
      * @param colorOnTop      The color playing from the top of the board.
+     * @param kingSquare      The square of the king of the bishop's color, as
+     *                        xIdx * 8 + yIdx.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  bishop of the specified color.
      */
-    public static int generateBishopsMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
-                                    final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
-                                    ) throws IllegalArgumentException {
+    public static int generateBishopsMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
+                                    final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop,
+                                    final int kingSquare) throws IllegalArgumentException {
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
         int bishopPieceInt;
         int moveIdx = moveIdxArg;
@@ -679,7 +1399,12 @@ public final class BoardArrays {
                 xIdxMod++, yIdxMod++) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -702,7 +1427,12 @@ public final class BoardArrays {
                 xIdxMod--, yIdxMod++) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -725,7 +1455,12 @@ public final class BoardArrays {
                 xIdxMod++, yIdxMod--) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -748,7 +1483,12 @@ public final class BoardArrays {
                 xIdxMod--, yIdxMod--) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -765,24 +1505,24 @@ public final class BoardArrays {
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /**
      * Generates possible moves for the knight, and saves them to its movesArray
-     * argument. It returns the index of the first empty array in movesArray
+     * argument. It returns the index of the first empty element in movesArray
      * after it has filled zero or more arrays with moves.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -790,15 +1530,19 @@ public final class BoardArrays {
      * @param yIdx            The y index of the location of the knight.
      * @param colorsTurnItIs  The color of the knight.
      * @param colorOnTop      The color playing from the top of the board.
+     * @param kingSquare      The square of the king of the knight's color, as
+     *                        xIdx * 8 + yIdx.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  knight of the specified color.
      */
-    public static int generateKnightsMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
-                                    final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
-                                    ) throws IllegalArgumentException {
+    public static int generateKnightsMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
+                                    final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop,
+                                    final int kingSquare) throws IllegalArgumentException {
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
         int knightPieceInt;
         int moveIdx = moveIdxArg;
@@ -842,7 +1586,8 @@ public final class BoardArrays {
 
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
                     continue;
                 }
 
@@ -854,24 +1599,24 @@ public final class BoardArrays {
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /**
      * Generates possible moves for the queen, and saves them to its movesArray
-     * argument. It returns the index of the first empty array in movesArray
+     * argument. It returns the index of the first empty element in movesArray
      * after it has filled zero or more arrays with moves.
      *
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -879,15 +1624,19 @@ public final class BoardArrays {
      * @param yIdx            The y index of the location of the queen.
      * @param colorsTurnItIs  The color of the queen.
      * @param colorOnTop      The color playing from the top of the board.
+     * @param kingSquare      The square of the king of the queen's color, as
+     *                        xIdx * 8 + yIdx.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  queen of the specified color.
      */
-    public static int generateQueensMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
-                                   final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
-                                   ) throws IllegalArgumentException {
+    public static int generateQueensMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
+                                   final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop,
+                                   final int kingSquare) throws IllegalArgumentException {
+        int kingXIdx = kingSquare >>> 3;
+        int kingYIdx = kingSquare & 7;
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
         int queenPieceInt;
         int moveIdx = moveIdxArg;
@@ -911,7 +1660,12 @@ public final class BoardArrays {
                 xIdxMod++) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdx, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdx,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdx] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -933,7 +1687,12 @@ public final class BoardArrays {
                      xIdxMod++, yIdxMod++) {
                     /* If the move would put this side's king in check (or fail to
                        get it out of check), it's discarded. */
-                    if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                    if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                           colorsTurnItIs, colorOnTop)) {
+                        /* A discarded capture still ends the ray. */
+                        if (boardArray[xIdxMod][yIdxMod] != 0) {
+                            break;
+                        }
                         continue;
                     }
                     /* The move is saved if it wouldn't capture a king. */
@@ -955,7 +1714,12 @@ public final class BoardArrays {
                      && (boardArray[xIdxMod][yIdxMod] & colorsTurnItIs) == 0; xIdxMod++, yIdxMod--) {
                     /* If the move would put this side's king in check (or fail to
                        get it out of check), it's discarded. */
-                    if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                    if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                           colorsTurnItIs, colorOnTop)) {
+                        /* A discarded capture still ends the ray. */
+                        if (boardArray[xIdxMod][yIdxMod] != 0) {
+                            break;
+                        }
                         continue;
                     }
                     /* The move is saved if it wouldn't capture a king. */
@@ -979,7 +1743,12 @@ public final class BoardArrays {
                  yIdxMod++) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdx, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdx, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdx][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -1002,7 +1771,12 @@ public final class BoardArrays {
                  yIdxMod--) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdx, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdx, yIdxMod,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdx][yIdxMod] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -1025,7 +1799,12 @@ public final class BoardArrays {
                  xIdxMod--) {
                 /* If the move would put this side's king in check (or fail to
                    get it out of check), it's discarded. */
-                if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdx, colorsTurnItIs, colorOnTop)) {
+                if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdx,
+                                       colorsTurnItIs, colorOnTop)) {
+                    /* A discarded capture still ends the ray. */
+                    if (boardArray[xIdxMod][yIdx] != 0) {
+                        break;
+                    }
                     continue;
                 }
                 /* The move is saved if it wouldn't capture a king. */
@@ -1047,7 +1826,12 @@ public final class BoardArrays {
                      xIdxMod--, yIdxMod++) {
                     /* If the move would put this side's king in check (or fail
                        to get it out of check), it's discarded. */
-                    if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                    if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                           colorsTurnItIs, colorOnTop)) {
+                        /* A discarded capture still ends the ray. */
+                        if (boardArray[xIdxMod][yIdxMod] != 0) {
+                            break;
+                        }
                         continue;
                     }
                     /* The move is saved if it wouldn't capture a king. */
@@ -1070,7 +1854,12 @@ public final class BoardArrays {
                      xIdxMod--, yIdxMod--) {
                     /* If the move would put this side's king in check (or fail
                        to get it out of check), it's discarded. */
-                    if (wouldKingBeInCheck(boardArray, xIdx, yIdx, xIdxMod, yIdxMod, colorsTurnItIs, colorOnTop)) {
+                    if (wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, xIdx, yIdx, xIdxMod, yIdxMod,
+                                           colorsTurnItIs, colorOnTop)) {
+                        /* A discarded capture still ends the ray. */
+                        if (boardArray[xIdxMod][yIdxMod] != 0) {
+                            break;
+                        }
                         continue;
                     }
                     /* The move is saved if it wouldn't capture a king. */
@@ -1088,13 +1877,13 @@ public final class BoardArrays {
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /**
      * Generates possible moves for the king, and save them to the movesArray
-     * it's given as an argument. It returns the index of the first empty array
+     * it's given as an argument. It returns the index of the first empty element
      * in movesArray after it has filled zero or more arrays with moves. It
      * checks each possible move for if it would put the king in check. Of note,
      * if it doesn't find any possible moves for the king, then de facto the
@@ -1103,12 +1892,12 @@ public final class BoardArrays {
      * @param boardArray      An int[8][8] array that is the chessboard
      *                        representation used explicitly by methods in this
      *                        static class, and internally by the Chessboard object.
-     * @param movesArray      The working int[][7] array that is populated by
-     *                        generate*sMoves() methods. It may already contain
-     *                        moves for other pieces. It is assumed to be long
-     *                        enough to contain all new moves without checking
-     *                        for overflow.
-     * @param moveIdxArg      The index of the first empty array in movesArray.
+     * @param movesArray      The working int[] array of packed moves that is
+     *                        populated by generate*sMoves() methods. It may
+     *                        already contain moves for other pieces. It is
+     *                        assumed to be long enough to contain all new moves
+     *                        without checking for overflow.
+     * @param moveIdxArg      The index of the first empty element in movesArray.
      *                        This value is incremented each time a new move is
      *                        saved to movesArray, and the final value (still
      *                        pointing to the
@@ -1117,13 +1906,13 @@ public final class BoardArrays {
      * @param colorsTurnItIs  The color of the king.
      * @param colorOnTop      The color playing from the top of the board.
      * @return                The new value for the index of the first empty
-     *                        array in the int[][7] movesArray.
+     *                        element in the int[] movesArray.
      * @throws IllegalArgumentException If the coordinates point to a cell in
      *                                  the boardArray argument that isn't a
      *                                  king of the specified color.
      * @see #isKingInCheck
      */
-    public static int generateKingsMoves(final int[][] boardArray, final int[][] movesArray, final int moveIdxArg,
+    public static int generateKingsMoves(final int[][] boardArray, final int[] movesArray, final int moveIdxArg,
                                          final int xIdx, final int yIdx, final int colorsTurnItIs, final int colorOnTop
                                          ) throws IllegalArgumentException {
         int otherColor = (colorsTurnItIs == WHITE) ? BLACK : WHITE;
@@ -1187,14 +1976,13 @@ public final class BoardArrays {
         if ((yIdx == 0 || yIdx == 7) && xIdx == 4) {
             /* If the king is at its starter position, then it might be able to
                castle in either direction. The intervening squares must be
-               empty, the rook must be in position, and both the king's
-               destination square and the intervening squares must not be
-               threatened. */
+               empty, the rook must be in position, and the squares the king
+               crosses and lands on must not be threatened. (Queenside, the
+               square next to the rook only needs to be empty.) */
             if (boardArray[3][yIdx] == 0 && boardArray[2][yIdx] == 0 && boardArray[1][yIdx] == 0
                 && boardArray[0][yIdx] == (colorsTurnItIs | ROOK)
                 && !wouldKingBeInCheck(boardArray, 3, yIdx, colorsTurnItIs, colorOnTop)
-                && !wouldKingBeInCheck(boardArray, 2, yIdx, colorsTurnItIs, colorOnTop)
-                && !wouldKingBeInCheck(boardArray, 1, yIdx, colorsTurnItIs, colorOnTop)) {
+                && !wouldKingBeInCheck(boardArray, 2, yIdx, colorsTurnItIs, colorOnTop)) {
                     moveIdx = setMoveToMovesArray(movesArray, moveIdx, pieceInt, xIdx, yIdx, 0, yIdx,
                                                   boardArray[0][yIdx]);
             }
@@ -1209,20 +1997,20 @@ public final class BoardArrays {
 
         /* The new value for moveIdx is returned. It's been incremented after
            every assignment to movesArray, so it's still the index of the first
-           empty array in the int[][7] movesArray. */
+           empty element in the int[] movesArray. */
         return moveIdx;
     }
 
     /*
-     * An alternative signature of setMoveToMovesArray(int[][], int, int, int,
+     * An alternative signature of setMoveToMovesArray(int[], int, int, int,
      * int, int, int, int, int) that omits the rarely used final argument,
      * promotedToPieceInt, since in the vast majority of cases the move isn't a
      * pawn promotion. See the other signature of setMoveToMovesArray() for the
      * full docs.
      */
-    private static int setMoveToMovesArray(final int[][] movesArray, final int moveIdx, final int pieceInt,
+    private static int setMoveToMovesArray(final int[] movesArray, final int moveIdx, final int pieceInt,
                                            final int fromXIdx, final int fromYIdx, final int toXIdx, final int toYIdx,
-                                           final int capturedPiece) throws IllegalArgumentException {
+                                           final int capturedPiece) throws IllegalStateException {
         if (pieceInt == 0) {
             throw new IllegalStateException("invalid values to save to a movesArray: "
                                             + Arrays.toString(new int[] {
@@ -1232,33 +2020,32 @@ public final class BoardArrays {
     }
 
     /*
-     * A utility method used by generate*sMoves() methods to save a set of
-     * values to a specific index on the int[][] movesArray the method is
-     * populating. Just a shorthand for a series of array assignments.
+     * A utility method used by generate*sMoves() methods to save a move to a
+     * specific index on the int[] movesArray the method is populating. The
+     * move is packed into a single int by MoveEncoding.encode().
      *
-     * @param movesArray         The int[][7] array that the calling method is
+     * @param movesArray         The int[] array that the calling method is
      *                           iterating over.
-     * @param moveIdx            The index of the nest empty int[7] array in
+     * @param moveIdx            The index of the next empty element in
      *                           movesArray that the caller wishes to populate
      *                           with the remaining arguments.
-     * @param pieceInt           The int value denoting a piece, to be set at
-     *                           array index 0.
+     * @param pieceInt           The int value denoting the piece moving.
      * @param fromXIdx           The int value of the x coordinate the piece is
-     *                           moving from, to be set at array index 1.
+     *                           moving from.
      * @param fromYIdx           The int value of the y coordinate the piece is
-     *                           moving from, to be set at array index 2.
+     *                           moving from.
      * @param toXIdx             The int value of the x coordinate the piece is
-     *                           moving to, to be set at array index 3.
+     *                           moving to.
      * @param toYIdx             The int value of the y coordinate the piece is
-     *                           moving to, to be set at array index 4.
+     *                           moving to.
      * @param capturedPiece      If there is a piece at (toXIdx, toYIdx), this
-     *                           is the int value denoting that piece, to be set
-     *                           at array index 5.
+     *                           is the int value denoting that piece.
      * @param promotedToPieceInt If the piece moving is a pawn, and its
      *                           destination is the opposite end of the board
      *                           from where its color started, then this is the
      *                           piece it promotes into.
-     * @return                   Void.
+     * @return                   The index of the next empty element.
+     * @see MoveEncoding#encode
      * @see #generatePawnsMoves
      * @see #generateRooksMoves
      * @see #generateBishopsMoves
@@ -1266,25 +2053,113 @@ public final class BoardArrays {
      * @see #generateQueensMoves
      * @see #generateKingsMoves
      */
-    private static int setMoveToMovesArray(final int[][] movesArray, final int moveIdx, final int pieceInt,
+    private static int setMoveToMovesArray(final int[] movesArray, final int moveIdx, final int pieceInt,
                                            final int fromXIdx, final int fromYIdx, final int toXIdx, final int toYIdx,
-                                           final int capturedPiece, final int promotedToPieceInt
-                                           ) throws IllegalArgumentException {
-        if (movesArray[moveIdx][0] != 0) {
-            throw new IllegalArgumentException("setMoveToMovesArray() called with moveIdx arg pointing to "
-                                                    + "non-zero entry in movesArray argument");
-        }
-        movesArray[moveIdx][0] = pieceInt;
-        movesArray[moveIdx][1] = fromXIdx;
-        movesArray[moveIdx][2] = fromYIdx;
-        movesArray[moveIdx][3] = toXIdx;
-        movesArray[moveIdx][4] = toYIdx;
-        movesArray[moveIdx][5] = capturedPiece;
-        movesArray[moveIdx][6] = promotedToPieceInt;
+                                           final int capturedPiece, final int promotedToPieceInt) {
+        movesArray[moveIdx] = MoveEncoding.encode(pieceInt, fromXIdx, fromYIdx, toXIdx, toYIdx, capturedPiece,
+                                                  promotedToPieceInt);
 
         return moveIdx + 1;
     }
 
+    /**
+     * Tests whether a packed move may be made on the boardArray, returning an
+     * int flag rather than throwing an exception if it can't. This is the
+     * check the minimax search uses; the GUI goes through
+     * Chessboard.movePiece(), which throws KingIsInCheckException or
+     * CastlingNotPossibleException so the reason can be shown to the user.
+     *
+     * The move generation methods can't check castling rights, since they
+     * only see the boardArray, so this method checks them for castling moves
+     * along with the squares the king passes through. For other moves it
+     * checks that the moving side's king isn't left in check.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param move           The packed move to check.
+     * @param castlingRights The castling rights flags in effect.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @return               One of MOVE_IS_LEGAL, MOVE_LEAVES_KING_IN_CHECK
+     *                       or MOVE_CASTLING_NOT_POSSIBLE.
+     * @see MoveEncoding
+     */
+    public static int checkMoveLegality(final int[][] boardArray, final int move, final int castlingRights,
+                                        final int colorOnTop) {
+        int colorsTurnItIs = (MoveEncoding.movedPieceInt(move) & WHITE) != 0 ? WHITE : BLACK;
+        return checkMoveLegality(boardArray, move, castlingRights, findKingSquare(boardArray, colorsTurnItIs),
+                                 colorOnTop);
+    }
+
+    /**
+     * Tests whether a packed move may be made on the boardArray, like the
+     * other checkMoveLegality(), but with the square of the moving side's
+     * king supplied by the caller, so the board doesn't need to be searched
+     * for it.
+     *
+     * @param boardArray     An int[8][8] array that is the chessboard
+     *                       representation used explicitly by methods in this
+     *                       static class, and internally by the Chessboard object.
+     * @param move           The packed move to check.
+     * @param castlingRights The castling rights flags in effect.
+     * @param kingSquare     The square of the moving side's king, as
+     *                       xIdx * 8 + yIdx.
+     * @param colorOnTop     The color playing from the top of the board.
+     * @return               One of MOVE_IS_LEGAL, MOVE_LEAVES_KING_IN_CHECK
+     *                       or MOVE_CASTLING_NOT_POSSIBLE.
+     * @see PositionState#getKingSquare
+     */
+    public static int checkMoveLegality(final int[][] boardArray, final int move, final int castlingRights,
+                                        final int kingSquare, final int colorOnTop) {
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int colorsTurnItIs = (movedPieceInt & WHITE) != 0 ? WHITE : BLACK;
+        int fromXIdx = MoveEncoding.fromXIdx(move);
+        int fromYIdx = MoveEncoding.fromYIdx(move);
+        int toXIdx = MoveEncoding.toXIdx(move);
+        int toYIdx = MoveEncoding.toYIdx(move);
+
+        if (MoveEncoding.isCastling(move)) {
+            boolean isKingside = toXIdx == 7;
+            int rightsFlag = colorsTurnItIs == WHITE
+                             ? (isKingside ? WHITE_KINGSIDE_CASTLING : WHITE_QUEENSIDE_CASTLING)
+                             : (isKingside ? BLACK_KINGSIDE_CASTLING : BLACK_QUEENSIDE_CASTLING);
+            if ((castlingRights & rightsFlag) == 0) {
+                return MOVE_CASTLING_NOT_POSSIBLE;
+            }
+
+            /* The squares between the king and the rook must be empty, and
+               the squares from the king's square to its destination must not
+               be threatened, as Chessboard.isCastlingPossible() requires. */
+            int lowXIdx = isKingside ? 5 : 1;
+            int highXIdx = isKingside ? 6 : 3;
+            for (int xIdx = lowXIdx; xIdx <= highXIdx; xIdx++) {
+                if (boardArray[xIdx][fromYIdx] != 0) {
+                    return MOVE_CASTLING_NOT_POSSIBLE;
+                }
+            }
+            lowXIdx = isKingside ? 4 : 2;
+            highXIdx = isKingside ? 6 : 4;
+            for (int xIdx = lowXIdx; xIdx <= highXIdx; xIdx++) {
+                if (wouldKingBeInCheck(boardArray, xIdx, fromYIdx, colorsTurnItIs, colorOnTop)) {
+                    return MOVE_CASTLING_NOT_POSSIBLE;
+                }
+            }
+
+            return MOVE_IS_LEGAL;
+        }
+
+        /* A king that moves is tested for check at the square it moves to;
+           any other piece is tested for exposing its king. */
+        if ((movedPieceInt & KING) != 0
+            ? wouldKingBeInCheck(boardArray, toXIdx, toYIdx, colorsTurnItIs, colorOnTop)
+            : wouldKingBeInCheck(boardArray, kingSquare >>> 3, kingSquare & 7, fromXIdx, fromYIdx, toXIdx, toYIdx,
+                                 colorsTurnItIs, colorOnTop)) {
+            return MOVE_LEAVES_KING_IN_CHECK;
+        }
+
+        return MOVE_IS_LEGAL;
+    }
+
     /**
      * Tests whether the king of the specified color is in check.
      *
@@ -1295,10 +2170,10 @@ public final class BoardArrays {
      * @return               A boolean, whether this color's king is in check.
      */
     public static boolean isKingInCheck(final int[][] boardArray, final int colorsTurnItIs, final int colorOnTop) {
-        int[] kingCoords = findKing(boardArray, colorsTurnItIs);
-        assert kingCoords != null;
-        int kingXIdx = kingCoords[0];
-        int kingYIdx = kingCoords[1];
+        int kingSquare = findKingSquare(boardArray, colorsTurnItIs);
+        assert kingSquare != -1;
+        int kingXIdx = kingSquare / 8;
+        int kingYIdx = kingSquare % 8;
         return wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, -1, -1, -1, -1, colorsTurnItIs, colorOnTop);
     }
 
@@ -1326,10 +2201,10 @@ public final class BoardArrays {
     public static boolean wouldKingBeInCheck(final int[][] boardArray, final int fromXIdx, final int fromYIdx,
                                              final int toXIdx, final int toYIdx, final int colorsTurnItIs,
                                              final int colorOnTop) {
-        int[] kingCoords = findKing(boardArray, colorsTurnItIs);
-        assert kingCoords != null;
-        int kingXIdx = kingCoords[0];
-        int kingYIdx = kingCoords[1];
+        int kingSquare = findKingSquare(boardArray, colorsTurnItIs);
+        assert kingSquare != -1;
+        int kingXIdx = kingSquare / 8;
+        int kingYIdx = kingSquare % 8;
         return wouldKingBeInCheck(boardArray, kingXIdx, kingYIdx, fromXIdx, fromYIdx, toXIdx, toYIdx,
                                   colorsTurnItIs, colorOnTop);
     }
@@ -127,6 +127,7 @@ public class BoardView extends JComponent implements MouseListener, ActionListen
         colorOfPlayer = colorPlaying;
         colorOfAI = (colorPlaying == BoardArrays.WHITE) ? BoardArrays.BLACK : BoardArrays.WHITE;
         minimaxRunner = new MinimaxRunner(chessboard, colorOfAI);
+        minimaxRunner.setBitboardMoveGeneration(true);
         turnCount = 0;
         whiteHasMoved = false;
         blackHasMoved = false;
@@ -392,6 +392,34 @@ public class Chessboard {
         return colorPlaying;
     }
 
+    /**
+     * Summarizes the booleans that track whether the kings and rooks have
+     * moved into an int of castling rights flags, in the form used by
+     * MinimaxRunner and ZobristHashing.
+     *
+     * @return An int composed of zero or more of
+     *         BoardArrays.WHITE_KINGSIDE_CASTLING,
+     *         BoardArrays.WHITE_QUEENSIDE_CASTLING,
+     *         BoardArrays.BLACK_KINGSIDE_CASTLING, and
+     *         BoardArrays.BLACK_QUEENSIDE_CASTLING.
+     */
+    public int getCastlingRights() {
+        int castlingRights = 0;
+        if (!whiteKingHasMoved && !whiteKingsRookHasMoved) {
+            castlingRights |= BoardArrays.WHITE_KINGSIDE_CASTLING;
+        }
+        if (!whiteKingHasMoved && !whiteQueensRookHasMoved) {
+            castlingRights |= BoardArrays.WHITE_QUEENSIDE_CASTLING;
+        }
+        if (!blackKingHasMoved && !blackKingsRookHasMoved) {
+            castlingRights |= BoardArrays.BLACK_KINGSIDE_CASTLING;
+        }
+        if (!blackKingHasMoved && !blackQueensRookHasMoved) {
+            castlingRights |= BoardArrays.BLACK_QUEENSIDE_CASTLING;
+        }
+        return castlingRights;
+    }
+
     /**
      * Promotes the pawn at the specified location. The pawn's integer value in
      * the internal board array is replaced with the new value given, or'd with
@@ -526,7 +554,7 @@ public class Chessboard {
                 } else if (boardArray[3][yIdx] != 0 || boardArray[2][yIdx] != 0 || boardArray[1][yIdx] != 0) {
                     return MovesLog.MoveError.CASTLING_INTERVENING_SPACE_OCCUPIED;
                 } else {
-                    for (int xIdx = 1; xIdx <= 4; xIdx++) {
+                    for (int xIdx = 2; xIdx <= 4; xIdx++) {
                         if (BoardArrays.wouldKingBeInCheck(boardArray, xIdx, yIdx,
                                                            colorPlaying, colorOnTop)) {
                             if ((boardArray[xIdx][yIdx] & KING) != 0) {
@@ -575,7 +603,7 @@ public class Chessboard {
                 } else if (boardArray[3][yIdx] != 0 || boardArray[2][yIdx] != 0 || boardArray[1][yIdx] != 0) {
                     return MovesLog.MoveError.CASTLING_INTERVENING_SPACE_OCCUPIED;
                 } else {
-                    for (int xIdx = 1; xIdx <= 4; xIdx++) {
+                    for (int xIdx = 2; xIdx <= 4; xIdx++) {
                         if (BoardArrays.wouldKingBeInCheck(boardArray, xIdx, yIdx,
                                                            colorPlaying, colorOnTop)) {
                             if ((boardArray[xIdx][yIdx] & KING) != 0) {
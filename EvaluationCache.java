@@ -0,0 +1,239 @@
+package org.kmfahey.jchessgame;
+
+import java.util.Arrays;
+
+/**
+ * Implements a fixed-size cache of evaluation scores, keyed on a position's
+ * Zobrist hash, which lets evaluateBoard() return the score of a position it
+ * has already evaluated instead of evaluating it again.
+ *
+ * The cache is allocated once, at a size in megabytes chosen when it's
+ * instanced, and is never resized, so it doesn't grow over the course of a
+ * game. It uses open addressing: a key may be stored in any of PROBE_SLOTS
+ * consecutive slots starting at the one its low bits select. Every entry is
+ * stamped with the generation it was last stored or found in, and
+ * newSearch() moves the cache on to the next generation. When a key is stored
+ * and none of its slots holds it already or is empty, the entry that has gone
+ * longest without being used is evicted, the first of them on a tie.
+ *
+ * Each MinimaxRunner has a cache of its own, so like PawnHashTable it isn't
+ * written by more than one thread and its entries are stored plainly, in
+ * three arrays. The cache counts its probes, hits and evictions, so they can
+ * be reported.
+ *
+ * @see MinimaxRunner
+ * @see PawnHashTable
+ */
+public class EvaluationCache {
+
+    /** The default size of an evaluation cache, in megabytes. */
+    public static final int DEFAULT_MEGABYTES = 2;
+
+    /** Returned by probe() when the key isn't in the cache. No evaluation
+        scores a position this low. */
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
+    /* Each entry is a long key, an int score and a byte of generation. */
+    private static final int BYTES_PER_ENTRY = 13;
+
+    /* The number of consecutive slots a key may be stored in. */
+    private static final int PROBE_SLOTS = 4;
+
+    /* Generations count from 1 to MAXIMUM_GENERATION and then start over at
+       1, so that a generation of 0 can mark an empty slot. */
+    private static final int MAXIMUM_GENERATION = 255;
+
+    /* The three parts of every entry. */
+    private final long[] entryKeys;
+    private final int[] entryScores;
+    private final byte[] entryGenerations;
+
+    /* The number of slots less one, used to mask a key down to a slot
+       index. */
+    private final int slotMask;
+
+    /* The current generation. */
+    private int generation;
+
+    /* The number of calls to probe() since the counters were last reset, the
+       number of those that found an entry, and the number of entries
+       store() has evicted to make room for another key. */
+    private long probesCount;
+    private long hitsCount;
+    private long evictionsCount;
+
+    /**
+     * Initializes the EvaluationCache object, allocating the largest
+     * power-of-two number of entries that fits in the given budget.
+     *
+     * @param megabytes The memory budget for the cache, in megabytes.
+     * @throws IllegalArgumentException If megabytes is less than 1.
+     */
+    public EvaluationCache(final int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("EvaluationCache() called with a memory budget of less than 1MB");
+        }
+
+        long budgetEntries = (long) megabytes * 1024L * 1024L / BYTES_PER_ENTRY;
+        int entriesCount = (int) Long.highestOneBit(Math.min(budgetEntries, 1L << 30));
+
+        entryKeys = new long[entriesCount];
+        entryScores = new int[entriesCount];
+        entryGenerations = new byte[entriesCount];
+        slotMask = entriesCount - 1;
+        generation = 1;
+    }
+
+    /**
+     * Moves the cache on to a new generation. Entries from earlier
+     * generations are kept and can still be found, but an entry that isn't
+     * found again ages, and is evicted ahead of the ones that are.
+     */
+    public void newSearch() {
+        generation = generation == MAXIMUM_GENERATION ? 1 : generation + 1;
+    }
+
+    /**
+     * Empties the cache. It's needed when the score stored for a key would
+     * no longer be computed the same way, as when the color playing from the
+     * top of the board changes.
+     */
+    public void clear() {
+        Arrays.fill(entryGenerations, (byte) 0);
+    }
+
+    /**
+     * Looks up the score stored for a position. An entry that's found is
+     * moved into the current generation.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @return            The score stored, or NO_SCORE if there's no entry
+     *                    for the key.
+     */
+    public int probe(final long positionKey) {
+        int homeSlotIdx = (int) (positionKey ^ (positionKey >>> 32)) & slotMask;
+
+        probesCount++;
+        for (int slotOffset = 0; slotOffset < PROBE_SLOTS; slotOffset++) {
+            int slotIdx = (homeSlotIdx + slotOffset) & slotMask;
+            if (entryGenerations[slotIdx] != 0 && entryKeys[slotIdx] == positionKey) {
+                hitsCount++;
+                entryGenerations[slotIdx] = (byte) generation;
+                return entryScores[slotIdx];
+            }
+        }
+
+        return NO_SCORE;
+    }
+
+    /**
+     * Stores the score of a position. It goes in the slot that already holds
+     * the key if there is one, in the first empty slot if there isn't, and
+     * otherwise in place of the oldest entry among the key's slots.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @param score       The position's score. It must not be NO_SCORE.
+     */
+    public void store(final long positionKey, final int score) {
+        int homeSlotIdx = (int) (positionKey ^ (positionKey >>> 32)) & slotMask;
+        int replacedSlotIdx = -1;
+        int replacedAge = -1;
+
+        for (int slotOffset = 0; slotOffset < PROBE_SLOTS; slotOffset++) {
+            int slotIdx = (homeSlotIdx + slotOffset) & slotMask;
+            int entryGeneration = entryGenerations[slotIdx] & 0xFF;
+            if (entryGeneration == 0 || entryKeys[slotIdx] == positionKey) {
+                writeEntry(slotIdx, positionKey, score);
+                return;
+            }
+            int age = Math.floorMod(generation - entryGeneration, MAXIMUM_GENERATION);
+            if (age > replacedAge) {
+                replacedSlotIdx = slotIdx;
+                replacedAge = age;
+            }
+        }
+
+        evictionsCount++;
+        writeEntry(replacedSlotIdx, positionKey, score);
+    }
+
+    /**
+     * Accessor for the number of calls to probe() since the counters were
+     * last reset.
+     *
+     * @return The number of probes.
+     */
+    public long getProbesCount() {
+        return probesCount;
+    }
+
+    /**
+     * Accessor for the number of calls to probe() since the counters were
+     * last reset that found an entry.
+     *
+     * @return The number of hits.
+     */
+    public long getHitsCount() {
+        return hitsCount;
+    }
+
+    /**
+     * Accessor for the number of calls to probe() since the counters were
+     * last reset that didn't find an entry.
+     *
+     * @return The number of misses.
+     */
+    public long getMissesCount() {
+        return probesCount - hitsCount;
+    }
+
+    /**
+     * Accessor for the number of entries evicted by store() since the
+     * counters were last reset.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionsCount() {
+        return evictionsCount;
+    }
+
+    /**
+     * Returns the fraction of calls to probe() since the counters were last
+     * reset that found an entry.
+     *
+     * @return The hit rate, or 0 if there were no probes.
+     */
+    public double getHitRate() {
+        return probesCount == 0 ? 0D : (double) hitsCount / probesCount;
+    }
+
+    /**
+     * Adds another cache's counters to this cache's, so the statistics of
+     * several caches used by one search can be reported as one.
+     *
+     * @param otherCache The cache whose counters to add.
+     */
+    public void addCounters(final EvaluationCache otherCache) {
+        probesCount += otherCache.probesCount;
+        hitsCount += otherCache.hitsCount;
+        evictionsCount += otherCache.evictionsCount;
+    }
+
+    /**
+     * Sets the probe, hit and eviction counters back to 0.
+     */
+    public void resetCounters() {
+        probesCount = 0;
+        hitsCount = 0;
+        evictionsCount = 0;
+    }
+
+    /*
+     * Writes an entry to a slot, stamped with the current generation.
+     */
+    private void writeEntry(final int slotIdx, final long positionKey, final int score) {
+        entryKeys[slotIdx] = positionKey;
+        entryScores[slotIdx] = score;
+        entryGenerations[slotIdx] = (byte) generation;
+    }
+}
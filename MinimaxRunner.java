@@ -1,6 +1,15 @@
 package org.kmfahey.jchessgame;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the minimax algorithm with alpha/beta pruning. The frontend method
@@ -44,8 +53,85 @@ public class MinimaxRunner {
     private static final int ISOLATED = 1;
     private static final int BLOCKED = 2;
 
-    /* This mapping is used to memoize results of evaluateBoard(). */
-    private final HashMap<String, Double> evaluateBoardMemoizeMap;
+    /* An entry in the pawn hash table holds white's doubled and isolated
+       pawns count in its low 8 bits, and black's in the 8 bits above. */
+    private static final int PAWN_STRUCTURE_SHIFT = 8;
+    private static final int PAWN_STRUCTURE_MASK = 0xFF;
+
+    /* The search checks its budgets each time this many positions (plus 1)
+       have been searched. It's a bitmask, so the check is a single AND. */
+    private static final long BUDGET_CHECK_INTERVAL = 1023L;
+
+    /* Returned by startHelperSearches() when there are no helpers, so a
+       single-threaded search doesn't allocate an empty array each time. */
+    private static final Future<?>[] NO_HELPER_FUTURES = new Future<?>[0];
+
+    /* The history scores quiet moves are ordered by are kept below this
+       limit by halving the history table whenever an entry reaches it. */
+    private static final int HISTORY_SCORE_LIMIT = (1 << 28) - 1;
+
+    /* Scores are ints, in hundredths of a pawn. */
+    private static final int CENTIPAWNS_PER_PAWN = 100;
+
+    /* The score of being checkmated at the root is -MATE_SCORE, and of
+       checkmating, MATE_SCORE; a mate n plies from the root scores n less.
+       Any score at least MATE_BOUND in magnitude is a mate score.
+       INFINITE_SCORE is beyond every score, and bounds the widest window.
+       All of them fit in the transposition table's 16-bit scores. */
+    private static final int MATE_SCORE = 30000;
+    private static final int MATE_BOUND = MATE_SCORE - PositionState.MAXIMUM_PLY;
+    private static final int INFINITE_SCORE = 32000;
+
+    /* The half-width, in centipawns, of the first aspiration window the
+       iterative deepening loop searches each iteration with. */
+    private static final int ASPIRATION_WINDOW = 50;
+
+    /* The margin, in centipawns, by which the quiescence search's delta
+       pruning lets a capture fall short of reaching alpha before it's
+       skipped. It covers the positional terms of evaluateBoard() a capture
+       can also swing. */
+    private static final int DELTA_PRUNING_MARGIN = 200;
+
+    /* The most the pawn structure term of evaluateBoard() can be worth, in
+       centipawns, either way. Each color has at most 8 pawns, and each can
+       be at most doubled, isolated and blocked, so a color's pawn penalty is
+       at most 24, and the term, half the difference of the two, is at most
+       12 pawns. The lazy evaluation relies on it. */
+    private static final int MAXIMUM_PAWN_STRUCTURE_SCORE = 1200;
+
+    /* Added to the ordering score of a capture or promotion that doesn't
+       lose material by static exchange evaluation. It's more than
+       captureOrderingScore() ranges over, so every losing capture is ordered
+       after every other capture. */
+    private static final int WINNING_CAPTURE_BONUS = 1024;
+
+    /* Null move pruning is tried at depths of at least
+       NULL_MOVE_MINIMUM_DEPTH. The null move is searched to a depth reduced
+       by NULL_MOVE_REDUCTION, or by NULL_MOVE_DEEP_REDUCTION when more than
+       NULL_MOVE_DEEP_DEPTH plies remain. */
+    private static final int NULL_MOVE_MINIMUM_DEPTH = 3;
+    private static final int NULL_MOVE_REDUCTION = 2;
+    private static final int NULL_MOVE_DEEP_REDUCTION = 3;
+    private static final int NULL_MOVE_DEEP_DEPTH = 6;
+
+    /* Late move reductions are applied at depths of at least
+       LATE_MOVE_MINIMUM_DEPTH, to the quiet moves after the first
+       LATE_MOVE_FULL_DEPTH_MOVES in the ordered moves. */
+    private static final int LATE_MOVE_MINIMUM_DEPTH = 3;
+    private static final int LATE_MOVE_FULL_DEPTH_MOVES = 3;
+
+    /* The score of a drawn position, such as a stalemate. */
+    private static final int DRAW_SCORE = 0;
+
+    /* The evaluation cache, which memoizes results of evaluateBoard(). It's
+       keyed on the Zobrist hash of the position being evaluated. Each runner
+       has its own. */
+    private final EvaluationCache evaluationCache = new EvaluationCache(EvaluationCache.DEFAULT_MEGABYTES);
+
+    /* The position being searched: the boardArray, the castling rights in
+       effect in it and its Zobrist hash. algorithmTopLevel() sets it up, and
+       algorithmCallExecutor() makes and unmakes each move on it. */
+    private final PositionState position = new PositionState();
 
     /* These three ints store relevant colors that decide how the algorithm
        picks sides and processes moves. */
@@ -53,8 +139,152 @@ public class MinimaxRunner {
     private int colorOfPlayer;
     private int colorOnTop;
 
-    /** The default depth value used by the algorithm. */
-    private final int algorithmStartingDepth;
+    /** The default time budget for each move, in milliseconds. */
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 2000L;
+
+    /** The deepest search the algorithm will attempt. */
+    public static final int MAXIMUM_SEARCH_DEPTH = 64;
+
+    /* The budgets that bound the iterative deepening loop in
+       algorithmTopLevel(). A budget of 0 is unlimited. */
+    private long timeBudgetMillis;
+    private long nodeBudget;
+    private int maximumDepth;
+
+    /* The state of the current search: the number of positions searched so
+       far, the System.nanoTime() value at which the time budget runs out,
+       whether the budgets are being enforced yet, and whether the search has
+       been cut short because one ran out. */
+    private long nodesSearched;
+    private long quiescenceNodesSearched;
+
+    /* The number of calls to evaluateBoard() in the current search, and the
+       number of those that returned early from the lazy evaluation. */
+    private long evaluationsCount;
+    private long lazyEvaluationExitsCount;
+    private long searchDeadlineNanos;
+    private boolean budgetEnforced;
+    private boolean searchAborted;
+
+    /* The results of the most recent searches: the depth of the deepest one
+       completed, and the score of the best move found by the last iteration
+       of algorithmRootSearch(). */
+    private int lastCompletedDepth;
+    private int lastRootScore;
+
+    /* Preallocated arrays, so that once they've all been used a search
+       allocates nothing: a moves array for the root moves, one moves array
+       per ply for the quiescence search, one MovePicker per ply of the
+       main search (which can't go deeper than MAXIMUM_SEARCH_DEPTH, unlike
+       the quiescence search), and scratch arrays for evaluateBoard() and
+       its delegate methods. Moves are stored packed into ints by
+       MoveEncoding. Each MinimaxRunner has its own arrays, so every thread
+       searching does too. */
+    private final int[] rootMovesArray = new int[128];
+    private final int[][] plyMovesArrays = new int[PositionState.MAXIMUM_PLY][128];
+    private final MovePicker[] plyMovePickers = createPlyMovePickers();
+    private final double[][] specialPawnsTallies = new double[2][3];
+    private final int[][] tallyPawnsCoords = new int[8][2];
+    private final int[][] doubledPawnsCoords = new int[8][2];
+
+    /* The move ordering tables used by MovePicker: two killer moves per
+       ply, which are quiet moves that caused a beta cutoff at that ply, and
+       a butterfly history table indexed by the color moving and the from
+       and to squares, which accumulates credit for the quiet moves that
+       caused cutoffs anywhere in the tree. moveOrderingScores is scratch
+       space for the scores orderCaptures() sorts by. */
+    private final int[][] killerMoves = new int[PositionState.MAXIMUM_PLY][2];
+    private final int[] historyScores = new int[2 * 64 * 64];
+    private final int[] moveOrderingScores = new int[128];
+
+    /* Scratch space for the running gains of a static exchange evaluation,
+       see isLosingCapture(). */
+    private final int[] exchangeGainsArray = new int[32];
+
+    /* The number of positions in which a move caused a beta cutoff during
+       the most recent search, and the number of those in which it was the
+       first move searched. Their ratio measures how well the moves are
+       ordered. */
+    private long cutoffsCount;
+    private long firstMoveCutoffsCount;
+
+    /* Whether null move pruning and late move reductions are used. Both are
+       on by default, and each can be switched off on its own with its
+       mutator method. */
+    private boolean nullMovePruningEnabled = true;
+    private boolean lateMoveReductionsEnabled = true;
+
+    /* The bitboard copy of the position that moves are generated on when
+       bitboard move generation is enabled, or null when it isn't. It's
+       attached to the PositionState, which keeps it in step. */
+    private BitboardPosition bitboardPosition;
+
+    /* The transposition table is kept for the lifetime of this object, so
+       results from the search for one move remain available to the searches
+       for the moves after it. It's shared with the helper searchers. */
+    private final TranspositionTable transpositionTable;
+
+    /* The pawn hash table, which caches the pawn structure terms of
+       evaluateBoard() by pawn key. Each runner has its own. */
+    private final PawnHashTable pawnHashTable = new PawnHashTable(PawnHashTable.DEFAULT_MEGABYTES);
+
+    /* The helper searchers used when the search is configured to run on more
+       than one thread, and the executor whose threads run them. Each helper
+       is a MinimaxRunner of its own with a private copy of the board and its
+       own search state; all that the helpers share with this object is the
+       transposition table, which is how they help: a helper's results become
+       cutoffs and hash moves for this object's search. Both are null when the
+       search is single-threaded. */
+    private MinimaxRunner[] helperRunners;
+    private ExecutorService helperExecutor;
+
+    /* The pool that the root moves are searched on when root move
+       parallelism is enabled, or null when it isn't. */
+    private ForkJoinPool rootMovePool;
+
+    /* The runners for the root move tasks of algorithmRootSearchParallel(),
+       one per thread of the rootMovePool, and the tasks, one per runner.
+       Each task searches root moves on its runner until there are none left
+       for it to take. The runners, their boards and the tasks are all reused
+       from one iteration and one search to the next. Both are null when root
+       move parallelism is disabled. */
+    private MinimaxRunner[] rootTaskRunners;
+    private List<Callable<Void>> rootMoveTasks;
+
+    /* A root move task runner's own copy of the board, which is null for
+       any other runner. */
+    private int[][] rootTaskBoardArray;
+
+    /* What algorithmRootSearchParallel() shares with its root move tasks:
+       the index of the next root move for a task to take, the best score
+       found so far, which a task takes as its alpha bound, and the board,
+       root moves, depth and beta of the iteration being searched. */
+    private final AtomicInteger nextRootMoveIdx = new AtomicInteger();
+    private final AtomicInteger rootTasksAlpha = new AtomicInteger();
+    private int[][] rootTasksBoardArray;
+    private int[] rootTasksMovesArray;
+    private int rootTasksMovesCount;
+    private int rootTasksSearchDepth;
+    private int rootTasksBeta;
+
+    /* For each index in the root moves array, the score its root move task
+       found, the alpha bound the task searched the move with, and whether
+       the task was aborted. */
+    private final int[] rootMoveScores = new int[128];
+    private final int[] rootMoveAlphas = new int[128];
+    private final boolean[] rootMovesAborted = new boolean[128];
+
+    /* Whether this object is a helper searcher, and the depth a helper starts
+       its iterative deepening loop at. Half the helpers start one ply deeper
+       than the others, so their iterations stay out of step and they search
+       different parts of the tree at any given moment. */
+    private final boolean isHelper;
+    private final int helperStartingDepth;
+
+    /* Set by the main searcher to tell a helper to stop searching. It's the
+       only field written by one thread and read by another, so it's
+       volatile; helpers only read it when they check their budgets. */
+    private volatile boolean stopRequested;
 
     /** Object whose boardArray instance variable the algorithm calculates its
         moves on. */
@@ -71,12 +301,107 @@ public class MinimaxRunner {
      *                      BoardArrays.BLACK.
      */
     public MinimaxRunner(final Chessboard chessboardObj, final int aiColor) {
+        this(chessboardObj, aiColor, TranspositionTable.DEFAULT_MEGABYTES);
+    }
+
+    /**
+     * Initializes the MinimaxRunner object, which hosts the minimax algorithm
+     * implemented with a frontend at the algorithmTopLevel() method, with a
+     * transposition table of the given size.
+     *
+     * @param chessboardObj     The Chessboard object modelling the game that
+     *                          the minimax algorithm is needed to generate
+     *                          moves for.
+     * @param aiColor           The color the AI is playing, which moves will
+     *                          be generated for. One of either
+     *                          BoardArrays.WHITE or BoardArrays.BLACK.
+     * @param transpositionMegs The memory budget for the transposition table,
+     *                          in megabytes.
+     * @see TranspositionTable
+     */
+    public MinimaxRunner(final Chessboard chessboardObj, final int aiColor, final int transpositionMegs) {
         chessboard = chessboardObj;
         colorOfAI = aiColor;
         colorOfPlayer = colorOfAI == WHITE ? BLACK : WHITE;
         colorOnTop = chessboard.getColorOnTop();
-        algorithmStartingDepth = 4;
-        evaluateBoardMemoizeMap = new HashMap<>();
+        timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+        nodeBudget = 0L;
+        maximumDepth = MAXIMUM_SEARCH_DEPTH;
+        transpositionTable = new TranspositionTable(transpositionMegs);
+        isHelper = false;
+        helperStartingDepth = 1;
+    }
+
+    /*
+     * Initializes a helper searcher for the given MinimaxRunner. The helper
+     * shares the main searcher's transposition table, and has search state of
+     * its own. Its colors are copied from the main searcher at the start of
+     * each search.
+     *
+     * @param mainRunner The MinimaxRunner this helper searches for.
+     * @param helperIdx  The helper's index, counting from 1, or 0 for the
+     *                   runner of a root move task.
+     */
+    private MinimaxRunner(final MinimaxRunner mainRunner, final int helperIdx) {
+        chessboard = mainRunner.chessboard;
+        timeBudgetMillis = 0L;
+        nodeBudget = 0L;
+        transpositionTable = mainRunner.transpositionTable;
+        isHelper = true;
+        helperStartingDepth = 1 + helperIdx % 2;
+    }
+
+    /*
+     * Creates the plyMovePickers, one for each ply the main search can
+     * reach, so the search never allocates one.
+     *
+     * @return The array of MovePickers.
+     */
+    private MovePicker[] createPlyMovePickers() {
+        MovePicker[] movePickers = new MovePicker[MAXIMUM_SEARCH_DEPTH];
+
+        for (int ply = 0; ply < MAXIMUM_SEARCH_DEPTH; ply++) {
+            movePickers[ply] = new MovePicker();
+        }
+
+        return movePickers;
+    }
+
+    /**
+     * Mutator method for the number of threads the search runs on. With more
+     * than one thread, the search uses Lazy SMP: the extra threads run helper
+     * searches of the same position, each on its own copy of the board, that
+     * share the transposition table with the main search. The move returned
+     * is always the main search's.
+     *
+     * @param threadCount The number of threads to search on, at least 1.
+     * @throws IllegalArgumentException If threadCount is less than 1.
+     */
+    public void setSearchThreads(final int threadCount) throws IllegalArgumentException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("setSearchThreads() called with a thread count less than 1");
+        }
+
+        if (helperExecutor != null) {
+            helperExecutor.shutdownNow();
+            helperExecutor = null;
+            helperRunners = null;
+        }
+
+        if (threadCount > 1) {
+            helperRunners = new MinimaxRunner[threadCount - 1];
+            for (int helperIdx = 0; helperIdx < helperRunners.length; helperIdx++) {
+                helperRunners[helperIdx] = new MinimaxRunner(this, helperIdx + 1);
+            }
+
+            /* The helper threads are daemon threads, so an idle pool doesn't
+               keep the program running after its window is closed. */
+            helperExecutor = Executors.newFixedThreadPool(helperRunners.length, runnable -> {
+                Thread helperThread = new Thread(runnable, "minimax-helper");
+                helperThread.setDaemon(true);
+                return helperThread;
+            });
+        }
     }
 
     /**
@@ -91,332 +416,1487 @@ public class MinimaxRunner {
      */
     public void setColors(final int colorPlayingVal, final int colorOnTopVal) {
         colorOfPlayer = colorPlayingVal;
+
+        /* The transposition table's scores are relative to the side to move,
+           so they stay valid when the AI's color changes. But the evaluation
+           depends on which way each color's pawns advance, so every score
+           computed with the other color on top is invalid, in all three
+           tables. */
+        if (colorOnTopVal != colorOnTop) {
+            pawnHashTable.clear();
+            evaluationCache.clear();
+            transpositionTable.clear();
+        }
         colorOnTop = colorOnTopVal;
         colorOfAI = (colorOfPlayer == BoardArrays.WHITE) ? BoardArrays.BLACK : BoardArrays.WHITE;
     }
 
     /**
-     * Implements the minimax algorithm with the alpha/beta optimization. The
-     * default recursion depth is 4 calls.
+     * Mutator method for the limits on how long the algorithm searches for
+     * each move. The algorithm searches to depth 1, then depth 2, and so on,
+     * until either limit is reached, and plays the best move found by the
+     * deepest search it completed.
+     *
+     * @param timeBudgetMillisVal The time budget for each move, in
+     *                            milliseconds. 0 means no time limit.
+     * @param nodeBudgetVal       The budget of positions searched for each
+     *                            move. 0 means no node limit.
+     * @param maximumDepthVal     The deepest search to attempt, at most
+     *                            MAXIMUM_SEARCH_DEPTH.
+     * @throws IllegalArgumentException If a budget is negative or the depth
+     *                                  is outside [1, MAXIMUM_SEARCH_DEPTH].
+     */
+    public void setSearchBudget(final long timeBudgetMillisVal, final long nodeBudgetVal, final int maximumDepthVal)
+                                throws IllegalArgumentException {
+        if (timeBudgetMillisVal < 0 || nodeBudgetVal < 0) {
+            throw new IllegalArgumentException("setSearchBudget() called with a negative budget");
+        } else if (maximumDepthVal < 1 || maximumDepthVal > MAXIMUM_SEARCH_DEPTH) {
+            throw new IllegalArgumentException("setSearchBudget() called with a maximum depth outside [1, "
+                                               + MAXIMUM_SEARCH_DEPTH + "]");
+        }
+        timeBudgetMillis = timeBudgetMillisVal;
+        nodeBudget = nodeBudgetVal;
+        maximumDepth = maximumDepthVal;
+    }
+
+    /**
+     * Mutator method for null move pruning. When it's enabled, a position in
+     * which the side to move could pass and still be doing well enough to
+     * cause a cutoff is cut off after a reduced-depth search of the pass
+     * (the "null move"), without its moves being searched. It's never tried
+     * when the side to move is in check, when it has only its king and pawns
+     * (where zugzwang makes passing unsound), or right after another null
+     * move.
+     *
+     * @param enabled Whether null move pruning is used.
+     */
+    public void setNullMovePruning(final boolean enabled) {
+        nullMovePruningEnabled = enabled;
+    }
+
+    /**
+     * Mutator method for late move reductions. When they're enabled, quiet
+     * moves that come late in the ordered moves, and so are unlikely to be
+     * best, are searched one ply shallower than the rest. A reduced move that
+     * turns out to improve on the best score so far is searched again to the
+     * full depth.
+     *
+     * @param enabled Whether late move reductions are used.
+     */
+    public void setLateMoveReductions(final boolean enabled) {
+        lateMoveReductionsEnabled = enabled;
+    }
+
+    /**
+     * Mutator method for bitboard move generation. When it's enabled, the
+     * search generates moves, detects check and tests move legality with the
+     * methods in Bitboards, on a BitboardPosition kept in step with the
+     * boardArray, instead of with the boardArray methods in BoardArrays. The
+     * bitboard generator also checks castling rights, so every move it
+     * generates is legal and checkMoveLegality() has nothing left to test.
+     * Evaluation still reads the boardArray. It's off by default.
+     *
+     * @param enabled Whether bitboard move generation is used.
+     */
+    public void setBitboardMoveGeneration(final boolean enabled) {
+        if (enabled == (bitboardPosition != null)) {
+            return;
+        }
+        bitboardPosition = enabled ? new BitboardPosition() : null;
+        position.setBitboardPosition(bitboardPosition);
+    }
+
+    /**
+     * Mutator method for root move parallelism. When it's enabled, each
+     * iteration of the search searches the first root move (the previous
+     * iteration's best move) on the calling thread, then searches the rest of
+     * the root moves in parallel as ForkJoinPool tasks, each on its own copy
+     * of the board with its own search state. The tasks share the best score
+     * found so far as their alpha bound, so a task started after another has
+     * finished benefits from the cutoffs its score allows.
+     *
+     * With null move pruning and late move reductions switched off, the
+     * score found at each depth is the same as the sequential search's.
+     * With them on, as they are by default, it can differ, and can differ
+     * from one run to the next. What they cut short depends on the move
+     * ordering tables and on what the transposition table holds. Each task
+     * starts its move from a copy of the tables as they stood after the
+     * first move, while the sequential search's tables carry over from each
+     * root move to the next. And what the other tasks have stored in the
+     * shared transposition table by then depends on timing. Root move
+     * parallelism leaves both as they were set all the same: switched off,
+     * the scores would match only because the parallel search was searching
+     * a weaker tree than the sequential search it's meant to speed up.
+     *
+     * When root move parallelism is enabled, the node budget is only checked
+     * between iterations of the search, since the nodes are counted by
+     * separate tasks.
+     *
+     * @param parallelism The number of threads to search root moves on. 1
+     *                    disables root move parallelism.
+     * @throws IllegalArgumentException If parallelism is less than 1.
+     */
+    public void setRootMoveParallelism(final int parallelism) throws IllegalArgumentException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("setRootMoveParallelism() called with a parallelism less than 1");
+        }
+
+        if (rootMovePool != null) {
+            rootMovePool.shutdownNow();
+            rootMovePool = null;
+            rootTaskRunners = null;
+            rootMoveTasks = null;
+        }
+
+        if (parallelism > 1) {
+            rootMovePool = new ForkJoinPool(parallelism);
+            rootTaskRunners = new MinimaxRunner[parallelism];
+            rootMoveTasks = new ArrayList<>(parallelism);
+            for (int runnerIdx = 0; runnerIdx < parallelism; runnerIdx++) {
+                MinimaxRunner taskRunner = new MinimaxRunner(this, 0);
+                taskRunner.rootTaskBoardArray = new int[8][8];
+                rootTaskRunners[runnerIdx] = taskRunner;
+                rootMoveTasks.add(() -> {
+                    runRootMoveTasks(taskRunner);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Accessor for the depth of the deepest search completed during the most
+     * recent call to algorithmTopLevel().
+     *
+     * @return The depth, in plies.
+     */
+    public int getLastCompletedDepth() {
+        return lastCompletedDepth;
+    }
+
+    /**
+     * Accessor for the score of the best move found by the deepest search
+     * completed during the most recent call to algorithmTopLevel().
+     *
+     * @return The score, in centipawns from the AI's point of view.
+     */
+    public int getLastRootScore() {
+        return lastRootScore;
+    }
+
+    /**
+     * Accessor for the number of positions searched during the most recent
+     * call to algorithmTopLevel(), summed across all the threads searching.
+     *
+     * @return The number of positions searched.
+     */
+    public long getNodesSearched() {
+        return nodesSearched;
+    }
+
+    /**
+     * Accessor for the number of positions the quiescence search reached
+     * past the search's horizon during the most recent call to
+     * algorithmTopLevel(), summed across all the threads searching. These
+     * aren't included in getNodesSearched().
+     *
+     * @return The number of quiescence positions searched.
+     */
+    public long getQuiescenceNodesSearched() {
+        return quiescenceNodesSearched;
+    }
+
+    /**
+     * Accessor for the fraction of the positions evaluated during the most
+     * recent call to algorithmTopLevel(), summed across all the threads
+     * searching, whose evaluation returned early because the terms computed
+     * first already put the score outside the search window.
+     *
+     * @return The early exit rate, or 0 if nothing was evaluated.
+     */
+    public double getLazyEvaluationExitRate() {
+        return evaluationsCount == 0 ? 0D : (double) lazyEvaluationExitsCount / evaluationsCount;
+    }
+
+    /**
+     * Accessor for the first-move cutoff rate of the most recent call to
+     * algorithmTopLevel(): of the positions in which a move caused a beta
+     * cutoff, the fraction in which it was the first move searched. The
+     * better the moves are ordered, the closer it is to 1.
+     *
+     * @return The first-move cutoff rate, or 0 if there were no cutoffs.
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffsCount == 0 ? 0D : (double) firstMoveCutoffsCount / cutoffsCount;
+    }
+
+    /**
+     * Accessor for the pawn hash table's hit rate during the most recent
+     * call to algorithmTopLevel(), summed across all the threads searching:
+     * the fraction of evaluations that found their pawn structure terms in
+     * the table instead of counting them.
+     *
+     * @return The pawn hash hit rate, or 0 if nothing was evaluated.
+     */
+    public double getPawnHashHitRate() {
+        return pawnHashTable.getHitRate();
+    }
+
+    /**
+     * Accessor for the evaluation cache's hit rate during the most recent
+     * call to algorithmTopLevel(), summed across all the threads searching:
+     * the fraction of evaluations whose score was found in the cache.
+     *
+     * @return The evaluation cache hit rate, or 0 if nothing was evaluated.
+     */
+    public double getEvaluationCacheHitRate() {
+        return evaluationCache.getHitRate();
+    }
+
+    /**
+     * Accessor for the number of entries evicted from the evaluation cache
+     * during the most recent call to algorithmTopLevel(), summed across all
+     * the threads searching.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvaluationCacheEvictionsCount() {
+        return evaluationCache.getEvictionsCount();
+    }
+
+    /**
+     * Implements the minimax algorithm with the alpha/beta optimization, using
+     * iterative deepening: the moves are searched to depth 1, then to depth 2,
+     * and so on, until the time budget or the node budget runs out or the
+     * maximum depth is reached. The best move from the deepest search that
+     * completed is returned. Each search's best move is searched first by the
+     * next one, which makes the deeper search's pruning more effective.
      *
      * @param turnCount The number of the turn it is, counting from 0.
      * @return          A Chessboard.Move object describing the move that the
      *                  algorithm has selected.
+     * @see #setSearchBudget
      */
     public Chessboard.Move algorithmTopLevel(final int turnCount) {
-        Chessboard.Move bestMoveObj;
-        int[][] movesArray = new int[128][7];
+        int[] movesArray = rootMovesArray;
         int[][] boardArray;
-        int[] bestMoveArray = null;
-        boolean isCastlingKingside;
-        boolean isCastlingQueenside;
-        int capturedPieceInt;
-        int fromXIdx;
-        int fromYIdx;
-        int movedPieceInt;
         int movesArrayUsedLength;
-        int promotedToPieceInt;
-        int toXIdx;
-        int toYIdx;
-        int useableMovesCount;
-        double alpha = Double.NEGATIVE_INFINITY;
-        double bestScore = Double.NEGATIVE_INFINITY;
-        double beta = Double.POSITIVE_INFINITY;
-        double thisScore;
-
-        boardArray = chessboard.getBoardArray();
-
-        movesArrayUsedLength = BoardArrays.generatePossibleMoves(boardArray, movesArray, colorOfAI, colorOnTop);
-        useableMovesCount = movesArrayUsedLength;
 
-        if (movesArrayUsedLength == 0) {
-            /* BoardArrays.generatePossibleMoves() found zero moves. That only
-               happens if the king is in checkmate. So the game is over and
-               the AI concedes defeat. The algorithm returns a Chessboard.Move
-               object with a null movedPiece attribute as a signal value. */
-            return new Chessboard.Move(null, 0, 0, 0, 0, 0, false, false, 0);
+        boardArray = chessboard.getBoardArray();
+        position.setPosition(boardArray, colorOfAI, chessboard.getCastlingRights(), colorOnTop);
+        transpositionTable.newSearch();
+
+        movesArrayUsedLength = generatePossibleMoves(boardArray, movesArray, colorOfAI);
+
+        if (movesArrayUsedLength == 0) {
+            /* generatePossibleMoves() found zero moves. That only
+               happens if the king is in checkmate. So the game is over and
+               the AI concedes defeat. The algorithm returns a Chessboard.Move
+               object with a null movedPiece attribute as a signal value. */
+            return new Chessboard.Move(null, 0, 0, 0, 0, 0, false, false, 0);
+        }
+
+        if (turnCount == 0) {
+            /* Introduces some nondeterminism into the algorithm in case the
+               best score is tied between multiple moves. This is done at the AI's
+               move in the first turn to prevent the AI from using the same opening
+               move each time. */
+            BoardArrays.shuffleMovesArray(movesArray, movesArrayUsedLength);
+        }
+
+        Future<?>[] helperFutures = startHelperSearches(boardArray, movesArray, movesArrayUsedLength);
+
+        algorithmIterativeDeepening(boardArray, movesArray, movesArrayUsedLength);
+
+        stopHelperSearches(helperFutures);
+
+        /* The best move found is unpacked into a Chessboard.Move object. If
+           it's castling, the Chessboard.Move object's castling booleans are
+           set accordingly. */
+        return MoveEncoding.toChessboardMove(movesArray[0], chessboard);
+    }
+
+    /*
+     * This method implements the iterative deepening loop. Each iteration
+     * searches every move to one more ply than the last. After a completed
+     * iteration, its best move is swapped to the front of the movesArray so
+     * that the next iteration searches it first. If an iteration is cut short
+     * by the budget, its partial results are discarded, so movesArray[0] is
+     * left holding the best move of the last completed iteration.
+     *
+     * From the second iteration on, the root is searched with an aspiration
+     * window: a narrow alpha/beta window around the previous iteration's
+     * score. A narrow window prunes more, and the score rarely moves far
+     * from one iteration to the next. If the score falls outside the window,
+     * the window is widened on that side and the iteration is searched
+     * again.
+     *
+     * @param boardArray           The int[8][8] array that represents the
+     *                             chessboard.
+     * @param movesArray           The AI's possible moves.
+     * @param movesArrayUsedLength The number of moves in movesArray.
+     */
+    private void algorithmIterativeDeepening(final int[][] boardArray, final int[] movesArray,
+                                             final int movesArrayUsedLength) {
+        /* The main search doesn't enforce its budgets during the depth 1
+           search, so there's always a completed search to take a move from.
+           A helper has no budgets, but it enforces its stop flag from the
+           start. */
+        nodesSearched = 0;
+        quiescenceNodesSearched = 0;
+        evaluationsCount = 0;
+        lazyEvaluationExitsCount = 0;
+        cutoffsCount = 0;
+        firstMoveCutoffsCount = 0;
+        pawnHashTable.resetCounters();
+        evaluationCache.resetCounters();
+        evaluationCache.newSearch();
+        ageMoveOrderingTables();
+        searchAborted = false;
+        budgetEnforced = isHelper;
+        searchDeadlineNanos = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+        lastCompletedDepth = 0;
+
+        for (int searchDepth = helperStartingDepth; searchDepth <= maximumDepth; searchDepth++) {
+            int windowDelta = ASPIRATION_WINDOW;
+            int alpha = -INFINITE_SCORE;
+            int beta = INFINITE_SCORE;
+            int bestMoveIdx;
+
+            if (lastCompletedDepth > 0 && Math.abs(lastRootScore) < MATE_BOUND) {
+                alpha = Math.max(lastRootScore - windowDelta, -INFINITE_SCORE);
+                beta = Math.min(lastRootScore + windowDelta, INFINITE_SCORE);
+            }
+
+            while (true) {
+                bestMoveIdx = rootMovePool == null
+                              ? algorithmRootSearch(boardArray, movesArray, movesArrayUsedLength, searchDepth,
+                                                    alpha, beta)
+                              : algorithmRootSearchParallel(boardArray, movesArray, movesArrayUsedLength,
+                                                            searchDepth, alpha, beta);
+                if (searchAborted) {
+                    break;
+                }
+
+                /* A score outside the window is only a bound, so the window
+                   is widened on the side it failed on, by twice as much each
+                   time, and the iteration is searched again. The move that
+                   failed high is moved to the front to be searched first. */
+                windowDelta *= 2;
+                if (lastRootScore <= alpha && alpha > -INFINITE_SCORE) {
+                    alpha = Math.max(lastRootScore - windowDelta, -INFINITE_SCORE);
+                } else if (lastRootScore >= beta && beta < INFINITE_SCORE) {
+                    beta = Math.min(lastRootScore + windowDelta, INFINITE_SCORE);
+                    swapToFront(movesArray, bestMoveIdx);
+                } else {
+                    break;
+                }
+            }
+
+            if (searchAborted) {
+                break;
+            }
+
+            lastCompletedDepth = searchDepth;
+            swapToFront(movesArray, bestMoveIdx);
+
+            /* If the AI has found a checkmate, searching deeper won't find a
+               better move. */
+            if (lastRootScore >= MATE_BOUND) {
+                break;
+            }
+
+            budgetEnforced = true;
+
+            /* The root move tasks count their nodes separately, so with root
+               move parallelism the node budget is checked here instead. */
+            if (rootMovePool != null && nodeBudget != 0 && nodesSearched >= nodeBudget) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Swaps the move at the given index in movesArray with the first move.
+     *
+     * @param movesArray The moves array.
+     * @param moveIdx    The index of the move to move to the front.
+     */
+    private static void swapToFront(final int[] movesArray, final int moveIdx) {
+        int swapValue = movesArray[0];
+        movesArray[0] = movesArray[moveIdx];
+        movesArray[moveIdx] = swapValue;
+    }
+
+    /*
+     * Starts the helper searches, if the search is configured to use more
+     * than one thread. Each helper is given its own copy of the board and of
+     * the root moves, and the main searcher's colors, position key and search
+     * limits.
+     *
+     * @param boardArray           The int[8][8] array that represents the
+     *                             chessboard.
+     * @param movesArray           The AI's possible moves.
+     * @param movesArrayUsedLength The number of moves in movesArray.
+     * @return                     The helpers' Future objects, or an empty
+     *                             array if there are no helpers.
+     */
+    private Future<?>[] startHelperSearches(final int[][] boardArray, final int[] movesArray,
+                                            final int movesArrayUsedLength) {
+        if (helperRunners == null) {
+            return NO_HELPER_FUTURES;
+        }
+
+        Future<?>[] helperFutures = new Future<?>[helperRunners.length];
+
+        for (int helperIdx = 0; helperIdx < helperRunners.length; helperIdx++) {
+            MinimaxRunner helper = helperRunners[helperIdx];
+            int[][] helperBoardArray = BoardArrays.copyBoardArray(boardArray);
+            int[] helperMovesArray = Arrays.copyOf(movesArray, movesArrayUsedLength);
+
+            copySearchStateTo(helper, helperBoardArray);
+
+            helperFutures[helperIdx] = helperExecutor.submit(
+                () -> helper.algorithmIterativeDeepening(helperBoardArray, helperMovesArray, movesArrayUsedLength));
+        }
+
+        return helperFutures;
+    }
+
+    /*
+     * Tells the helper searches to stop, and waits for them to do so. The
+     * helpers' node counts are added to this object's so getNodesSearched()
+     * reports the work done by every thread.
+     *
+     * @param helperFutures The Future objects returned by
+     *                      startHelperSearches().
+     * @throws IllegalStateException If a helper search threw an exception.
+     */
+    private void stopHelperSearches(final Future<?>[] helperFutures) throws IllegalStateException {
+        for (int helperIdx = 0; helperIdx < helperFutures.length; helperIdx++) {
+            helperRunners[helperIdx].stopRequested = true;
+        }
+
+        for (int helperIdx = 0; helperIdx < helperFutures.length; helperIdx++) {
+            try {
+                helperFutures[helperIdx].get();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException("helper search failed", exception.getCause());
+            }
+            nodesSearched += helperRunners[helperIdx].nodesSearched;
+            quiescenceNodesSearched += helperRunners[helperIdx].quiescenceNodesSearched;
+            evaluationsCount += helperRunners[helperIdx].evaluationsCount;
+            lazyEvaluationExitsCount += helperRunners[helperIdx].lazyEvaluationExitsCount;
+            cutoffsCount += helperRunners[helperIdx].cutoffsCount;
+            firstMoveCutoffsCount += helperRunners[helperIdx].firstMoveCutoffsCount;
+            pawnHashTable.addCounters(helperRunners[helperIdx].pawnHashTable);
+            evaluationCache.addCounters(helperRunners[helperIdx].evaluationCache);
+        }
+    }
+
+    /*
+     * This method implements the 1st level of the search for one iteration
+     * of the iterative deepening loop in algorithmTopLevel(). It searches
+     * every move in movesArray to the given depth within the given window and
+     * returns the index of the highest-scoring one. Its score is saved to
+     * lastRootScore; if it's at or below alpha, or at or above beta, it's
+     * only a bound on the true score.
+     *
+     * The search is a principal variation search: the first move is searched
+     * with the full window, and each later move with a zero window that
+     * only tests whether it beats the best score so far. A move that does is
+     * searched again with the full window to find its score.
+     *
+     * @param boardArray           The int[8][8] array that represents the
+     *                             chessboard.
+     * @param movesArray           The AI's possible moves.
+     * @param movesArrayUsedLength The number of moves in movesArray.
+     * @param searchDepth          The depth to search each move to.
+     * @param alphaArg             The value for alpha.
+     * @param beta                 The value for beta.
+     * @return                     The index in movesArray of the best move.
+     */
+    private int algorithmRootSearch(final int[][] boardArray, final int[] movesArray,
+                                    final int movesArrayUsedLength, final int searchDepth, final int alphaArg,
+                                    final int beta) {
+        int bestMoveIdx = 0;
+        int alpha = alphaArg;
+        int bestScore = -INFINITE_SCORE;
+        int thisScore;
+        boolean isFirstMove = true;
+
+        /* The main loop of the top-level phase of the search.
+           algorithmCallExecutor() makes the given move on the board, calls
+           algorithmLowerLevel() for the player's reply, unmakes the move,
+           and returns the score from the AI's point of view. During this for
+           loop the highest-scoring move is found and that's the one the
+           algorithm will indicate as the AI's move this turn. */
+        for (int moveIdx = 0; moveIdx < movesArrayUsedLength; moveIdx++) {
+            if (checkMoveLegality(boardArray, movesArray[moveIdx]) != BoardArrays.MOVE_IS_LEGAL) {
+                continue;
+            }
+
+            if (isFirstMove) {
+                thisScore = algorithmCallExecutor(boardArray, movesArray[moveIdx], colorOfPlayer, searchDepth,
+                                                  alpha, beta);
+                isFirstMove = false;
+            } else {
+                thisScore = algorithmCallExecutor(boardArray, movesArray[moveIdx], colorOfPlayer, searchDepth,
+                                                  alpha, alpha + 1);
+                if (thisScore > alpha && thisScore < beta && !searchAborted) {
+                    thisScore = algorithmCallExecutor(boardArray, movesArray[moveIdx], colorOfPlayer, searchDepth,
+                                                      alpha, beta);
+                }
+            }
+            if (searchAborted) {
+                return bestMoveIdx;
+            }
+            if (thisScore > bestScore) {
+                bestScore = thisScore;
+                bestMoveIdx = moveIdx;
+            }
+            if (thisScore > alpha) {
+                alpha = thisScore;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        /* The root position's result is stored too, so the best move found is
+           available to later searches that reach it again. */
+        storeTransposition(searchDepth, bestScore, alphaArg, beta, transpositionMoveKey(movesArray[bestMoveIdx]));
+
+        lastRootScore = bestScore;
+        return bestMoveIdx;
+    }
+
+    /*
+     * This method implements the 1st level of the search for one iteration
+     * of the iterative deepening loop, like algorithmRootSearch(), but
+     * searches the root moves in parallel. The first move is searched on
+     * this thread to establish an alpha bound; the rest are searched by the
+     * rootMoveTasks, which run on the rootMovePool. Each task takes the next
+     * move not yet taken and searches it on its own runner and copy of the
+     * board, starting from the best score that any task has found so far,
+     * which is shared through an AtomicInteger.
+     *
+     * @param boardArray           The int[8][8] array that represents the
+     *                             chessboard.
+     * @param movesArray           The AI's possible moves.
+     * @param movesArrayUsedLength The number of moves in movesArray.
+     * @param searchDepth          The depth to search each move to.
+     * @param alphaArg             The value for alpha.
+     * @param beta                 The value for beta.
+     * @return                     The index in movesArray of the best move.
+     * @throws IllegalStateException If a root move task threw an exception.
+     */
+    private int algorithmRootSearchParallel(final int[][] boardArray, final int[] movesArray,
+                                            final int movesArrayUsedLength, final int searchDepth,
+                                            final int alphaArg, final int beta) throws IllegalStateException {
+        int bestMoveIdx = 0;
+        int alpha;
+        int bestScore;
+        int thisScore;
+
+        if (checkMoveLegality(boardArray, movesArray[0]) != BoardArrays.MOVE_IS_LEGAL) {
+            bestScore = -INFINITE_SCORE;
+        } else {
+            bestScore = algorithmCallExecutor(boardArray, movesArray[0], colorOfPlayer, searchDepth, alphaArg, beta);
+        }
+        if (searchAborted) {
+            return bestMoveIdx;
+        }
+
+        for (MinimaxRunner taskRunner : rootTaskRunners) {
+            taskRunner.timeBudgetMillis = timeBudgetMillis;
+            taskRunner.searchDeadlineNanos = searchDeadlineNanos;
+            taskRunner.budgetEnforced = budgetEnforced;
+            taskRunner.nodesSearched = 0;
+            taskRunner.quiescenceNodesSearched = 0;
+            taskRunner.evaluationsCount = 0;
+            taskRunner.lazyEvaluationExitsCount = 0;
+            taskRunner.cutoffsCount = 0;
+            taskRunner.firstMoveCutoffsCount = 0;
+            taskRunner.pawnHashTable.resetCounters();
+            taskRunner.evaluationCache.resetCounters();
+            taskRunner.evaluationCache.newSearch();
+        }
+
+        /* If the first move fails high, the others don't need searching. */
+        if (bestScore < beta) {
+            nextRootMoveIdx.set(1);
+            rootTasksAlpha.set(Math.max(alphaArg, bestScore));
+            rootTasksBoardArray = boardArray;
+            rootTasksMovesArray = movesArray;
+            rootTasksMovesCount = movesArrayUsedLength;
+            rootTasksSearchDepth = searchDepth;
+            rootTasksBeta = beta;
+
+            for (Future<Void> rootMoveFuture : rootMovePool.invokeAll(rootMoveTasks)) {
+                try {
+                    rootMoveFuture.get();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    searchAborted = true;
+                } catch (ExecutionException exception) {
+                    throw new IllegalStateException("root move task failed", exception.getCause());
+                }
+            }
+        }
+
+        /* The results are collected in move order, as algorithmRootSearch()
+           would have found them, with alpha raised by each score that beats
+           it, and ties go to the earlier move, so the move chosen doesn't
+           depend on the order the tasks finished in. A score no higher than
+           the alpha its task searched with is only an upper bound. If that
+           alpha was no higher than this one, the bound is enough to rule the
+           move out; if it was higher, the move might still score above this
+           alpha, so it's searched again here to find out. */
+        alpha = Math.max(alphaArg, bestScore);
+        for (int moveIdx = 1; moveIdx < movesArrayUsedLength && alpha < beta && !searchAborted; moveIdx++) {
+            if (rootMovesAborted[moveIdx]) {
+                searchAborted = true;
+                break;
+            }
+            thisScore = rootMoveScores[moveIdx];
+            if (thisScore <= rootMoveAlphas[moveIdx] && rootMoveAlphas[moveIdx] > alpha) {
+                thisScore = searchRootMove(boardArray, movesArray[moveIdx], searchDepth, alpha, beta);
+                if (searchAborted) {
+                    break;
+                }
+            }
+            if (thisScore > bestScore) {
+                bestScore = thisScore;
+                bestMoveIdx = moveIdx;
+            }
+            if (thisScore > alpha) {
+                alpha = thisScore;
+            }
+        }
+        for (MinimaxRunner taskRunner : rootTaskRunners) {
+            nodesSearched += taskRunner.nodesSearched;
+            quiescenceNodesSearched += taskRunner.quiescenceNodesSearched;
+            evaluationsCount += taskRunner.evaluationsCount;
+            lazyEvaluationExitsCount += taskRunner.lazyEvaluationExitsCount;
+            cutoffsCount += taskRunner.cutoffsCount;
+            firstMoveCutoffsCount += taskRunner.firstMoveCutoffsCount;
+            pawnHashTable.addCounters(taskRunner.pawnHashTable);
+            evaluationCache.addCounters(taskRunner.evaluationCache);
+        }
+        if (searchAborted) {
+            return bestMoveIdx;
+        }
+
+        storeTransposition(searchDepth, bestScore, alphaArg, beta, transpositionMoveKey(movesArray[bestMoveIdx]));
+
+        lastRootScore = bestScore;
+        return bestMoveIdx;
+    }
+
+    /*
+     * Runs one of the rootMoveTasks of algorithmRootSearchParallel() on the
+     * given runner. Until there are no root moves left, the task takes the
+     * next one and searches it on the runner's copy of the board, with the
+     * best score found by any task when it takes the move as its alpha
+     * bound. The move's score, that alpha and whether the search was
+     * aborted are recorded under the move's index, and if the score beats
+     * that alpha, it becomes the shared best score.
+     *
+     * Before each move, the runner's killer moves and history scores are
+     * set to this object's, as they stand after its search of the first
+     * root move, so the order a move's search tries moves in, and so what
+     * null move pruning and late move reductions cut short, doesn't depend
+     * on which moves the runner searched before it.
+     *
+     * @param taskRunner The root move task runner to search on.
+     */
+    private void runRootMoveTasks(final MinimaxRunner taskRunner) {
+        int[][] taskBoardArray = taskRunner.rootTaskBoardArray;
+
+        for (int moveIdx = nextRootMoveIdx.getAndIncrement(); moveIdx < rootTasksMovesCount;
+             moveIdx = nextRootMoveIdx.getAndIncrement()) {
+            int alpha = rootTasksAlpha.get();
+
+            for (int xIdx = 0; xIdx < 8; xIdx++) {
+                System.arraycopy(rootTasksBoardArray[xIdx], 0, taskBoardArray[xIdx], 0, 8);
+            }
+            for (int ply = 0; ply < killerMoves.length; ply++) {
+                taskRunner.killerMoves[ply][0] = killerMoves[ply][0];
+                taskRunner.killerMoves[ply][1] = killerMoves[ply][1];
+            }
+            System.arraycopy(historyScores, 0, taskRunner.historyScores, 0, historyScores.length);
+            copySearchStateTo(taskRunner, taskBoardArray);
+            taskRunner.searchAborted = false;
+
+            int thisScore = taskRunner.searchRootMove(taskBoardArray, rootTasksMovesArray[moveIdx],
+                                                      rootTasksSearchDepth, alpha, rootTasksBeta);
+            rootMoveScores[moveIdx] = thisScore;
+            rootMoveAlphas[moveIdx] = alpha;
+            rootMovesAborted[moveIdx] = taskRunner.searchAborted;
+            if (!taskRunner.searchAborted && thisScore > alpha) {
+                rootTasksAlpha.accumulateAndGet(thisScore, Math::max);
+            }
+        }
+    }
+
+    /*
+     * Searches one root move other than the first for
+     * algorithmRootSearchParallel(), as algorithmRootSearch() does: with a
+     * zero window first, and with the full window only if the move beats
+     * alpha.
+     *
+     * @param boardArray  The int[8][8] array that represents the chessboard.
+     * @param move        The packed root move to search.
+     * @param searchDepth The depth to search the move to.
+     * @param alpha       The value for alpha.
+     * @param beta        The value for beta.
+     * @return            The move's score, which is an upper bound if it
+     *                    isn't greater than alpha, or -INFINITE_SCORE if the
+     *                    move can't legally be made.
+     */
+    private int searchRootMove(final int[][] boardArray, final int move, final int searchDepth, final int alpha,
+                               final int beta) {
+        int thisScore;
+
+        if (checkMoveLegality(boardArray, move) != BoardArrays.MOVE_IS_LEGAL) {
+            return -INFINITE_SCORE;
+        }
+
+        thisScore = algorithmCallExecutor(boardArray, move, colorOfPlayer, searchDepth, alpha, alpha + 1);
+        if (thisScore > alpha && thisScore < beta && !searchAborted) {
+            thisScore = algorithmCallExecutor(boardArray, move, colorOfPlayer, searchDepth, alpha, beta);
+        }
+
+        return thisScore;
+    }
+
+    /*
+     * Copies the colors, position and maximum depth of the search about to be
+     * run to a helper searcher or a root move task's runner, and clears its
+     * stop flag. The position is set up on the other runner's own copy of the
+     * boardArray.
+     *
+     * @param otherRunner     The MinimaxRunner to copy the search state to.
+     * @param otherBoardArray The other runner's copy of the boardArray.
+     */
+    private void copySearchStateTo(final MinimaxRunner otherRunner, final int[][] otherBoardArray) {
+        otherRunner.colorOfAI = colorOfAI;
+        otherRunner.colorOfPlayer = colorOfPlayer;
+        if (otherRunner.colorOnTop != colorOnTop) {
+            otherRunner.pawnHashTable.clear();
+            otherRunner.evaluationCache.clear();
+        }
+        otherRunner.colorOnTop = colorOnTop;
+        otherRunner.setBitboardMoveGeneration(bitboardPosition != null);
+        otherRunner.position.setPosition(otherBoardArray, position.getColorToMove(), position.getCastlingRights(),
+                                         colorOnTop);
+        otherRunner.maximumDepth = maximumDepth;
+        otherRunner.nullMovePruningEnabled = nullMovePruningEnabled;
+        otherRunner.lateMoveReductionsEnabled = lateMoveReductionsEnabled;
+        otherRunner.stopRequested = false;
+    }
+
+    /*
+     * This method implements the levels of the search after the 1st, as a
+     * negamax principal variation search. Scores are in centipawns from the
+     * point of view of the side to move, so each level negates the scores of
+     * the level below it and every level maximizes. The first move is
+     * searched with the full alpha/beta window, and each later move with a
+     * zero window (alpha, alpha + 1) that only tests whether it beats alpha;
+     * a move that does is searched again with the full window. When the
+     * window is already a zero window, as it is everywhere off the principal
+     * variation, the two searches are the same.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param depth          The depth counter, which is decremented with each
+     *                       successive recursive call. When it reaches zero,
+     *                       this method returns the result of the quiescence
+     *                       search instead of its normal logic.
+     * @param colorsTurnItIs An integer, indicating which side of the game this
+     *                       level of the algorithm is calculating for. Either
+     *                       BoardArrays.BLACK or BoardArrays.WHITE.
+     * @param alphaArg       The value for alpha.
+     * @param betaArg        The value for beta.
+     * @return               The position's score for the side to move.
+     */
+    private int algorithmLowerLevel(final int[][] boardArray, final int depth, final int colorsTurnItIs,
+                                    final int alphaArg, final int betaArg) {
+        int bestScore;
+        int thisScore;
+        int alpha = alphaArg;
+        int beta = betaArg;
+        MovePicker movePicker;
+        int move;
+        int legalMovesCount = 0;
+        int ply = position.getPly();
+        int colorOpposing = colorsTurnItIs == WHITE ? BLACK : WHITE;
+        boolean isInCheck;
+        int hashMoveKey = 0;
+        int bestMoveKey;
+        long transpositionData;
+
+        /* Every so often the budgets are checked. If one has run out, the
+           search is abandoned: every level returns immediately, and
+           algorithmTopLevel() discards the unfinished iteration. */
+        nodesSearched++;
+        if (budgetEnforced && (nodesSearched & BUDGET_CHECK_INTERVAL) == 0) {
+            checkSearchBudget();
+        }
+        if (searchAborted) {
+            return 0;
+        }
+
+        /* If the depth counter has decreased to 0, the quiescence search
+           takes over, so the position isn't evaluated in the middle of an
+           exchange of pieces. */
+        if (depth == 0) {
+            return algorithmQuiescence(boardArray, colorsTurnItIs, alphaArg, betaArg);
+        }
+
+        /* Mate distance pruning: a mate found at this ply or later can't
+           score better than mating right away or worse than being mated
+           right away, so the window is narrowed to that range. */
+        alpha = Math.max(alpha, -MATE_SCORE + ply);
+        beta = Math.min(beta, MATE_SCORE - ply - 1);
+        if (alpha >= beta) {
+            return alpha;
+        }
+
+        /* The transposition table is probed before any moves are generated.
+           If this position was already searched at least as deep, its stored
+           score is used directly if it's exact, or to narrow the alpha/beta
+           window if it's a bound. If the stored search was shallower, its
+           best move is still a good first guess for this one. */
+        transpositionData = transpositionTable.probe(position.getPositionKey());
+        if (transpositionData != 0L) {
+            hashMoveKey = TranspositionTable.moveOf(transpositionData);
+            if (TranspositionTable.depthOf(transpositionData) >= depth) {
+                int storedScore = scoreFromTransposition(TranspositionTable.scoreOf(transpositionData), ply);
+                switch (TranspositionTable.boundOf(transpositionData)) {
+                    case TranspositionTable.EXACT -> {
+                        return storedScore;
+                    }
+                    case TranspositionTable.LOWER_BOUND -> alpha = Math.max(alpha, storedScore);
+                    case TranspositionTable.UPPER_BOUND -> beta = Math.min(beta, storedScore);
+                    default -> { }
+                }
+                if (alpha >= beta) {
+                    return storedScore;
+                }
+            }
+        }
+
+        /* Null move pruning: if this side could pass and a reduced-depth
+           search still finds the score beats beta, then some real move would
+           too, and the position is cut off. It isn't tried near a mate
+           score, where passing could hide the mate. */
+        isInCheck = (nullMovePruningEnabled || lateMoveReductionsEnabled)
+                    && isKingInCheck(boardArray, colorsTurnItIs);
+        if (nullMovePruningEnabled && depth >= NULL_MOVE_MINIMUM_DEPTH && !isInCheck
+            && !position.isLastMoveNull() && beta - alpha == 1 && Math.abs(beta) < MATE_BOUND
+            && hasNonPawnMaterial(boardArray, colorsTurnItIs)) {
+            int reduction = depth > NULL_MOVE_DEEP_DEPTH ? NULL_MOVE_DEEP_REDUCTION : NULL_MOVE_REDUCTION;
+
+            /* The null move is searched with a zero window at beta, which is
+               just wide enough to tell whether its score beats beta. */
+            position.makeNullMove();
+            int nullMoveScore = -algorithmLowerLevel(boardArray, depth - 1 - reduction, colorOpposing, -beta,
+                                                     -beta + 1);
+            position.unmakeMove();
+
+            if (searchAborted) {
+                return 0;
+            } else if (nullMoveScore >= beta) {
+                return beta;
+            }
+        }
+
+        /* bestScore is initialized to the worst possible score. */
+        bestScore = -INFINITE_SCORE;
+
+        /* The moves are handed out by this ply's MovePicker. It hands them
+           out in the order likeliest to cause a cutoff, the hash move first,
+           then captures, then killers, then the rest by their history
+           scores, and generates each kind only once the kinds before it have
+           all been searched, so a cutoff saves generating the rest. */
+        movePicker = plyMovePickers[ply];
+        movePicker.start(boardArray, colorsTurnItIs, hashMoveKey, ply);
+
+        bestMoveKey = hashMoveKey;
+
+        for (int moveIdx = 0; (move = movePicker.nextMove()) != 0; moveIdx++) {
+            /* A move that can't legally be made is skipped. */
+            if (checkMoveLegality(boardArray, move) != BoardArrays.MOVE_IS_LEGAL) {
+                continue;
+            }
+            legalMovesCount++;
+
+            if (legalMovesCount == 1) {
+                thisScore = algorithmCallExecutor(boardArray, move, colorOpposing, depth, alpha, beta);
+            } else {
+                /* Late move reduction: a quiet move late in the ordering is
+                   searched one ply shallower, and searched again to the full
+                   depth only if it beats alpha. */
+                boolean isReduced = lateMoveReductionsEnabled && moveIdx >= LATE_MOVE_FULL_DEPTH_MOVES
+                                    && depth >= LATE_MOVE_MINIMUM_DEPTH && !isInCheck
+                                    && isReducibleMove(move, hashMoveKey, ply);
+
+                thisScore = algorithmCallExecutor(boardArray, move, colorOpposing, isReduced ? depth - 1 : depth,
+                                                  alpha, alpha + 1);
+                if (isReduced && thisScore > alpha && !searchAborted) {
+                    thisScore = algorithmCallExecutor(boardArray, move, colorOpposing, depth, alpha, alpha + 1);
+                }
+                if (thisScore > alpha && thisScore < beta && !searchAborted) {
+                    thisScore = algorithmCallExecutor(boardArray, move, colorOpposing, depth, alpha, beta);
+                }
+            }
+
+            /* If the search was abandoned, the score is meaningless and
+               mustn't be stored to the transposition table. */
+            if (searchAborted) {
+                return 0;
+            }
+            if (thisScore > bestScore) {
+                bestScore = thisScore;
+                if (thisScore > alpha) {
+                    alpha = thisScore;
+                    bestMoveKey = transpositionMoveKey(move);
+                }
+            }
+            /* If this score reaches beta, further moves are skipped, and it's
+               returned directly. It's stored to the transposition table as a
+               lower bound, since the moves that weren't searched might have
+               scored even better. */
+            if (alpha >= beta) {
+                recordCutoff(move, moveIdx, ply, depth, colorsTurnItIs);
+                storeTransposition(depth, bestScore, alphaArg, betaArg, bestMoveKey);
+                return bestScore;
+            }
+        }
+
+        /* No legal moves means the side to move is checkmated if its king is
+           in check, and stalemated, a draw, if it isn't. A mate score is
+           offset by the ply, so a mate found nearer the root scores as more
+           decisive than one found further away. */
+        if (legalMovesCount == 0) {
+            return isKingInCheck(boardArray, colorsTurnItIs) ? -MATE_SCORE + ply : DRAW_SCORE;
+        }
+
+        /* The best score found is stored to the transposition table. If it
+           never improved on alpha, it's only an upper bound, and the best
+           move isn't meaningful so the previous hash move is kept. */
+        storeTransposition(depth, bestScore, alphaArg, betaArg, bestScore > alphaArg ? bestMoveKey : hashMoveKey);
+
+        /* The best score found is returned. */
+        return bestScore;
+    }
+
+    /*
+     * Stores a search result to the transposition table, as an exact score
+     * if it's inside the window the position was searched with, or as a
+     * bound if it isn't. Mate scores are stored relative to the position
+     * rather than the root; see scoreToTransposition().
+     *
+     * @param depth       The depth the position was searched to.
+     * @param score       The score the search returned.
+     * @param alpha       The alpha the position was searched with.
+     * @param beta        The beta the position was searched with.
+     * @param bestMoveKey The key of the best move found, or 0.
+     */
+    private void storeTransposition(final int depth, final int score, final int alpha, final int beta,
+                                    final int bestMoveKey) {
+        int boundType;
+
+        if (score <= alpha) {
+            boundType = TranspositionTable.UPPER_BOUND;
+        } else if (score >= beta) {
+            boundType = TranspositionTable.LOWER_BOUND;
+        } else {
+            boundType = TranspositionTable.EXACT;
+        }
+
+        transpositionTable.store(position.getPositionKey(), depth,
+                                 scoreToTransposition(score, position.getPly()), boundType, bestMoveKey);
+    }
+
+    /*
+     * Converts a mate score from distance-from-the-root, as the search
+     * scores it, to distance-from-this-position, as it's stored in the
+     * transposition table, so it's still correct when the position is
+     * reached again at another ply. Other scores are returned unchanged.
+     *
+     * @param score The score, relative to the root.
+     * @param ply   The ply of the position.
+     * @return      The score, relative to the position.
+     */
+    private static int scoreToTransposition(final int score, final int ply) {
+        if (score >= MATE_BOUND) {
+            return score + ply;
+        } else if (score <= -MATE_BOUND) {
+            return score - ply;
+        } else {
+            return score;
+        }
+    }
+
+    /*
+     * Converts a mate score read from the transposition table back to
+     * distance-from-the-root. It's the inverse of scoreToTransposition().
+     *
+     * @param score The score, relative to the position.
+     * @param ply   The ply of the position.
+     * @return      The score, relative to the root.
+     */
+    private static int scoreFromTransposition(final int score, final int ply) {
+        if (score >= MATE_BOUND) {
+            return score - ply;
+        } else if (score <= -MATE_BOUND) {
+            return score + ply;
+        } else {
+            return score;
+        }
+    }
+
+    /*
+     * This method implements the quiescence search, which algorithmLowerLevel()
+     * hands off to at the search's horizon. Only captures and promotions are
+     * searched, until the position is quiet. The side to move may always
+     * decline to capture, so the position's static evaluation (the "stand
+     * pat" score) is a lower bound on its score: if it already reaches beta,
+     * the position is cut off without searching a move. Captures that
+     * couldn't raise the score to alpha even by winning the captured piece
+     * and a margin more are skipped (delta pruning), and so are captures that
+     * lose material by static exchange evaluation. A side in check can't
+     * decline to answer it, so in check there's no stand pat score and every
+     * move that gets out of check is searched. Like algorithmLowerLevel(), it
+     * scores positions for the side to move.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param colorsTurnItIs The color whose turn it is.
+     * @param alphaArg       The value for alpha.
+     * @param beta           The value for beta.
+     * @return               The position's score for the side to move.
+     */
+    private int algorithmQuiescence(final int[][] boardArray, final int colorsTurnItIs, final int alphaArg,
+                                    final int beta) {
+        int alpha = alphaArg;
+        int standPatScore;
+        int thisScore;
+        int[] movesArray;
+        int movesArrayUsedLength;
+        int searchedMovesCount = 0;
+        int ply = position.getPly();
+        boolean isInCheck;
+
+        /* If the search is as deep as the undo stack allows, the static
+           evaluation is returned as is. */
+        if (ply >= PositionState.MAXIMUM_PLY - 1) {
+            return evaluateBoard(boardArray, colorsTurnItIs, alpha, beta);
+        }
+
+        /* The stand pat score is a bound on this position's score unless
+           the side to move is in check. If it already causes a cutoff, no
+           move needs to be searched. */
+        isInCheck = isKingInCheck(boardArray, colorsTurnItIs);
+        if (!isInCheck) {
+            standPatScore = evaluateBoard(boardArray, colorsTurnItIs, alpha, beta);
+            if (standPatScore >= beta) {
+                return standPatScore;
+            }
+            alpha = Math.max(alpha, standPatScore);
+        } else {
+            standPatScore = -INFINITE_SCORE;
         }
 
-        if (turnCount == 0) {
-            /* Introduces some nondeterminism into the algorithm in case the
-               best score is tied between multiple moves. This is done at the AI's
-               move in the first turn to prevent the AI from using the same opening
-               move each time. */
-            BoardArrays.shuffleMovesArray(movesArray, movesArrayUsedLength);
+        /* With bitboard move generation, only the captures and promotions
+           are generated, unless the side to move is in check. Then, and
+           with the boardArray generator, every move is generated, and as in
+           algorithmLowerLevel(), no moves means checkmate if the side to
+           move is in check and stalemate if it isn't. Without every move
+           generated, a stalemate can't be told from a position with only
+           quiet moves, so there the stand pat score stands. */
+        movesArray = plyMovesArrays[ply];
+        if (bitboardPosition != null && !isInCheck) {
+            movesArrayUsedLength = Bitboards.generateLegalMoves(bitboardPosition, movesArray, colorsTurnItIs,
+                                                                colorOnTop, position.getCastlingRights(),
+                                                                Bitboards.CAPTURE_MOVES);
+        } else {
+            movesArrayUsedLength = generatePossibleMoves(boardArray, movesArray, colorsTurnItIs);
+            if (movesArrayUsedLength == 0) {
+                return isInCheck ? -MATE_SCORE + ply : DRAW_SCORE;
+            }
         }
 
-        /* The main loop of the top-level phase of the minimax algorithm.
-           algorithmExecutor() implements the given move on the board,
-           calls algorithmLowerLevel(), reverses the move, and returns the
-           score returned by algorithmLowerLevel(). During this for loop
-           highest-scoring move is found and that's the one the algorithm will
-           indicate as the AI's move this turn. */
+        /* In check, every legal move is searched, captures and promotions
+           first. Otherwise the captures and promotions are moved to the
+           front of the movesArray, skipping any captures delta pruning rules
+           out and any that lose material. A capture or a promotion is never
+           a castling move, and the move generators only generate moves that
+           don't leave the king in check, so only the moves out of check
+           need checkMoveLegality(). Either way the moves are sorted by
+           MVV-LVA. */
         for (int moveIdx = 0; moveIdx < movesArrayUsedLength; moveIdx++) {
-            try {
-                thisScore = algorithmCallExecutor(boardArray, true, movesArray[moveIdx],
-                                                  (colorOfAI == WHITE ? BLACK : WHITE),
-                                                  algorithmStartingDepth, alpha, beta);
-            } catch (KingIsInCheckException | CastlingNotPossibleException exception) {
-                thisScore = Double.NEGATIVE_INFINITY;
+            int move = movesArray[moveIdx];
+            if (isInCheck) {
+                if (checkMoveLegality(boardArray, move) == BoardArrays.MOVE_IS_LEGAL) {
+                    movesArray[searchedMovesCount++] = move;
+                }
+            } else if (MoveEncoding.isPromotion(move)) {
+                movesArray[searchedMovesCount++] = move;
+            } else if (MoveEncoding.isCapture(move)
+                       && standPatScore + pieceValue(MoveEncoding.capturedPieceInt(move)) * CENTIPAWNS_PER_PAWN
+                          + DELTA_PRUNING_MARGIN > alpha
+                       && !isLosingCapture(boardArray, move)) {
+                movesArray[searchedMovesCount++] = move;
             }
-            if (thisScore >= bestScore) {
-                bestScore = thisScore;
-                bestMoveArray = movesArray[moveIdx];
+        }
+        if (isInCheck && searchedMovesCount == 0) {
+            return -MATE_SCORE + ply;
+        }
+        orderCaptures(movesArray, searchedMovesCount);
+
+        for (int moveIdx = 0; moveIdx < searchedMovesCount; moveIdx++) {
+            quiescenceNodesSearched++;
+            if (budgetEnforced && (quiescenceNodesSearched & BUDGET_CHECK_INTERVAL) == 0) {
+                checkSearchBudget();
             }
-            if (thisScore > alpha) {
+            if (searchAborted) {
+                return 0;
+            }
+
+            position.makeMove(movesArray[moveIdx]);
+            thisScore = -algorithmQuiescence(boardArray, colorsTurnItIs == WHITE ? BLACK : WHITE, -beta, -alpha);
+            position.unmakeMove();
+
+            if (thisScore >= beta) {
+                return thisScore;
+            } else if (thisScore > alpha) {
                 alpha = thisScore;
             }
         }
 
-        /* If the AI has no usable moves, that means it needs to concede. A null
-           Move object is returned as a signal value. */
-        if (useableMovesCount == 0) {
-            return new Chessboard.Move(null, 0, 0, 0, 0, 0, false, false, 0);
-        }
+        return alpha;
+    }
 
-        /* The values of the bestMoveArray are broken out into named variables,
-           for clarity. */
-        assert bestMoveArray != null;
-        movedPieceInt = bestMoveArray[0];
-        fromXIdx = bestMoveArray[1];
-        fromYIdx = bestMoveArray[2];
-        toXIdx = bestMoveArray[3];
-        toYIdx = bestMoveArray[4];
-        capturedPieceInt = bestMoveArray[5];
-        promotedToPieceInt = bestMoveArray[6];
-        isCastlingKingside = false;
-        isCastlingQueenside = false;
-
-        /* If the moving piece is a king, the captured piece is a rook, and
-           they're both the same color, then it's a castling move, so one of the
-           castling booleans is set to true. */
-        if ((capturedPieceInt & ROOK) != 0 && (movedPieceInt & KING) != 0
-            && (movedPieceInt & WHITE) == (capturedPieceInt & WHITE)) {
-
-            if (toXIdx == 7) {
-                isCastlingKingside = true;
-            } else {
-                isCastlingQueenside = true;
+    /*
+     * Sorts the captures and promotions in movesArray (or, in check, the
+     * moves out of check) into the order they should be searched in, by
+     * their captureOrderingScore(). The sort is an insertion sort, which is
+     * fast on arrays this short.
+     *
+     * @param movesArray           The moves to sort.
+     * @param movesArrayUsedLength The number of moves in movesArray.
+     */
+    private void orderCaptures(final int[] movesArray, final int movesArrayUsedLength) {
+        for (int moveIdx = 0; moveIdx < movesArrayUsedLength; moveIdx++) {
+            int move = movesArray[moveIdx];
+            int score = captureOrderingScore(move);
+
+            /* The move is inserted into the sorted part of the array, behind
+               every move that scores at least as well as it. */
+            int insertIdx = moveIdx;
+            while (insertIdx > 0 && moveOrderingScores[insertIdx - 1] < score) {
+                movesArray[insertIdx] = movesArray[insertIdx - 1];
+                moveOrderingScores[insertIdx] = moveOrderingScores[insertIdx - 1];
+                insertIdx--;
             }
+            movesArray[insertIdx] = move;
+            moveOrderingScores[insertIdx] = score;
+        }
+    }
+
+    /*
+     * Scores a capture or promotion for move ordering, by most valuable
+     * victim, then the most valuable piece promoted to, then least valuable
+     * attacker (MVV-LVA).
+     *
+     * @param move The packed move.
+     * @return     The move's ordering score; higher is searched first.
+     */
+    private static int captureOrderingScore(final int move) {
+        return pieceValue(MoveEncoding.capturedPieceInt(move)) * 64
+               + pieceValue(MoveEncoding.promotedToPieceInt(move)) * 8
+               - pieceValue(MoveEncoding.movedPieceInt(move));
+    }
+
+    /*
+     * Tests whether a move is a capture that loses material by static
+     * exchange evaluation. A capture of a piece worth at least as much as
+     * the capturing piece can't lose material, so the exchange is only
+     * evaluated for the others. It's evaluated on the BitboardPosition with
+     * bitboard move generation enabled, and on the boardArray otherwise.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @param move       The packed move.
+     * @return           True if the move is a losing capture, false
+     *                   otherwise.
+     * @see BoardArrays#staticExchangeScore
+     */
+    private boolean isLosingCapture(final int[][] boardArray, final int move) {
+        if (!MoveEncoding.isCapture(move)
+            || pieceValue(MoveEncoding.capturedPieceInt(move)) >= pieceValue(MoveEncoding.movedPieceInt(move))) {
+            return false;
+        } else if (bitboardPosition != null) {
+            return Bitboards.staticExchangeScore(bitboardPosition, move, colorOnTop, exchangeGainsArray) < 0;
+        } else {
+            return BoardArrays.staticExchangeScore(boardArray, move, colorOnTop, exchangeGainsArray) < 0;
         }
+    }
 
-        /* The best move found is built into a Chessbpard.Move object. */
-        bestMoveObj = new Chessboard.Move(chessboard.getPieceAtCoords(fromXIdx, fromYIdx), fromXIdx, fromYIdx,
-                                          toXIdx, toYIdx, capturedPieceInt, isCastlingKingside, isCastlingQueenside,
-                                          promotedToPieceInt);
+    /*
+     * Returns the material value of a piece in pawns, as evaluateBoard()
+     * weighs it, or 0 if pieceInt is 0. It's used for MVV-LVA ordering and
+     * for delta pruning. The king is given a value just above the queen's,
+     * so it ranks as the most valuable attacker.
+     *
+     * @param pieceInt The piece's int value.
+     * @return         The piece's value.
+     */
+    private static int pieceValue(final int pieceInt) {
+        if ((pieceInt & PAWN) != 0) {
+            return 1;
+        } else if ((pieceInt & (KNIGHT | BISHOP)) != 0) {
+            return 3;
+        } else if ((pieceInt & ROOK) != 0) {
+            return 5;
+        } else if ((pieceInt & QUEEN) != 0) {
+            return 9;
+        } else if ((pieceInt & KING) != 0) {
+            return 10;
+        } else {
+            return 0;
+        }
+    }
 
-        return bestMoveObj;
+    /*
+     * Tests whether a move may be searched with a late move reduction: it
+     * must be quiet, and neither the hash move nor one of the ply's killer
+     * moves.
+     *
+     * @param move        The packed move.
+     * @param hashMoveKey The transposition table's move key for the
+     *                    position, or 0 if there isn't one.
+     * @param ply         The ply of the position, which indexes the killer
+     *                    moves.
+     * @return            True if the move may be reduced, false otherwise.
+     */
+    private boolean isReducibleMove(final int move, final int hashMoveKey, final int ply) {
+        return !MoveEncoding.isCapture(move) && !MoveEncoding.isPromotion(move)
+               && move != killerMoves[ply][0] && move != killerMoves[ply][1]
+               && transpositionMoveKey(move) != hashMoveKey;
     }
 
     /*
-     * This method implements the levels of the minimax algorithm after the 1st
-     * call. Alpha/beta pruning is done.
+     * Tests whether the given color has any pieces besides its king and
+     * pawns. Null move pruning isn't used without them, since positions with
+     * only kings and pawns are the ones where being forced to move can be a
+     * disadvantage (zugzwang), and passing would misjudge them.
      *
      * @param boardArray     The int[8][8] array that represents the chessboard.
-     * @param maximize       A boolean, true if this level of the algorithm is
-     *                       a maximizing step, false if it's a minimizing step.
-     * @param depth          The depth counter, which is decremented with each
-     *                       successive recursive call. When it reaches zero,
-     *                       this method returns the result of applying the
-     *                       evaluateBoard() method to boardArray instead of
-     *                       its normal logic.
-     * @param colorsTurnItIs An integer, indicating which side of the game this
-     *                       level of the algorithm is calculating for. Either
-     *                       BoardArrays.BLACK or BoardArrays.WHITE.
-     * @param alphaArg       The value for alpha.
-     * @param betaArg        The value for beta.
+     * @param colorsTurnItIs The color to test.
+     * @return               True if the color has a queen, rook, bishop or
+     *                       knight, false otherwise.
      */
-    private double algorithmLowerLevel(final int[][] boardArray, final boolean maximize, final int depth,
-                                       final int colorsTurnItIs, final double alphaArg, final double betaArg) {
-        double bestScore;
-        double thisScore;
-        double alpha = alphaArg;
-        double beta = betaArg;
-        int[][] movesArray = new int[128][7];
-        int movesArrayUsedLength;
+    private boolean hasNonPawnMaterial(final int[][] boardArray, final int colorsTurnItIs) {
+        int[] pieceSquares = position.getPieceSquares(colorsTurnItIs);
+        int piecesCount = position.getPiecesCount(colorsTurnItIs);
+
+        for (int pieceIdx = 0; pieceIdx < piecesCount; pieceIdx++) {
+            int square = pieceSquares[pieceIdx];
+            if ((boardArray[square >>> 3][square & 7] & (QUEEN | ROOK | BISHOP | KNIGHT)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        /* If the depth counter has decreased to 0, the value of evaluateBoard()
-           is returned rather than recursing any further. */
-        if (depth == 0) {
-            return evaluateBoard(boardArray, colorsTurnItIs);
+    /*
+     * Generates the moves of the given color into movesArray, visiting only
+     * the squares in the color's piece list and using its king's square
+     * from the PositionState, rather than scanning the board for either. With
+     * bitboard move generation enabled, only legal moves are generated, from
+     * the BitboardPosition and the PositionState's castling rights.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param movesArray     The int[] array to fill packed moves into.
+     * @param colorsTurnItIs The color to generate moves for.
+     * @return               The number of moves generated.
+     */
+    private int generatePossibleMoves(final int[][] boardArray, final int[] movesArray, final int colorsTurnItIs) {
+        if (bitboardPosition != null) {
+            return Bitboards.generateLegalMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop,
+                                                position.getCastlingRights());
         }
+        return BoardArrays.generatePossibleMoves(boardArray, movesArray, colorsTurnItIs, colorOnTop,
+                                                 position.getPieceSquares(colorsTurnItIs),
+                                                 position.getPiecesCount(colorsTurnItIs),
+                                                 position.getKingSquare(colorsTurnItIs));
+    }
 
-        /* bestScore is initialized to the worst possible score for the
-           maximize/minimize mode the algorithm is in. */
-        bestScore = maximize ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    /*
+     * Tests whether the given color's king is in check, using its square
+     * from the PositionState, or the BitboardPosition if bitboard move
+     * generation is enabled.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param colorsTurnItIs The color of the king to test.
+     * @return               True if the king is in check, false otherwise.
+     */
+    private boolean isKingInCheck(final int[][] boardArray, final int colorsTurnItIs) {
+        if (bitboardPosition != null) {
+            return Bitboards.isKingInCheck(bitboardPosition, colorsTurnItIs, colorOnTop);
+        }
+        int kingSquare = position.getKingSquare(colorsTurnItIs);
+        return BoardArrays.wouldKingBeInCheck(boardArray, kingSquare >>> 3, kingSquare & 7, colorsTurnItIs,
+                                              colorOnTop);
+    }
 
-        /* Moves are calculated and saved to movesArray. */
-        movesArrayUsedLength = BoardArrays.generatePossibleMoves(boardArray, movesArray, colorsTurnItIs, colorOnTop);
+    /*
+     * Tests whether a move of the side to move may be made, using the
+     * castling rights and the king's square from the PositionState. With
+     * bitboard move generation enabled, every generated move is already
+     * legal, so there's nothing to test.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @param move       The packed move to check.
+     * @return           One of the BoardArrays.MOVE_* status codes.
+     */
+    private int checkMoveLegality(final int[][] boardArray, final int move) {
+        if (bitboardPosition != null) {
+            return BoardArrays.MOVE_IS_LEGAL;
+        }
+        return BoardArrays.checkMoveLegality(boardArray, move, position.getCastlingRights(),
+                                             position.getKingSquare(position.getColorToMove()), colorOnTop);
+    }
 
-        /* BoardArrays.generatePossibleMoves() only returns a 0 if the king is
-           in checkmate. That's the worst possible outcome if it was generating
-           moves for the AI, or the best possible outcome if it was generating
-           moves for the player. */
-        if (movesArrayUsedLength == 0 && colorsTurnItIs == colorOfAI) {
-            return Double.NEGATIVE_INFINITY;
-        } else if (movesArrayUsedLength == 0 && colorsTurnItIs == colorOfPlayer) {
-            return Double.POSITIVE_INFINITY;
+    /*
+     * Records a move that caused a beta cutoff. The cutoff statistics are
+     * updated, and if the move is quiet it becomes the ply's first killer
+     * move and its history score is raised by the square of the remaining
+     * depth, so cutoffs near the root count for more.
+     *
+     * @param move           The packed move that caused the cutoff.
+     * @param moveIdx        The move's index in the ordered movesArray.
+     * @param ply            The ply of the position the cutoff occurred in.
+     * @param depth          The depth remaining at that position.
+     * @param colorsTurnItIs The color whose move it was.
+     */
+    private void recordCutoff(final int move, final int moveIdx, final int ply, final int depth,
+                              final int colorsTurnItIs) {
+        cutoffsCount++;
+        if (moveIdx == 0) {
+            firstMoveCutoffsCount++;
         }
 
-        for (int moveIdx = 0; moveIdx < movesArrayUsedLength; moveIdx++) {
-            /* The score is returned from the lower level call. */
-            try {
-                thisScore = algorithmCallExecutor(boardArray, !maximize, movesArray[moveIdx],
-                                                  (colorsTurnItIs == WHITE ? BLACK : WHITE), depth, alpha, beta);
-            } catch (KingIsInCheckException | CastlingNotPossibleException exception) {
-                thisScore = maximize ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
-            }
-            /* If the score returned is the best possible score, further calls
-               are skipped, and it's returned directly. */
-            if (maximize ? thisScore == Double.POSITIVE_INFINITY : thisScore == Double.NEGATIVE_INFINITY) {
-                return thisScore;
-            }
-            /* If a better value for alpha is found, it's set. */
-            if (maximize && thisScore > alpha) {
-                alpha = thisScore;
-            /* If a better value for beta is found, it's set. */
-            } else if (!maximize && thisScore < beta) {
-                beta = thisScore;
-            }
-            /* If this score bests alpha or beta, further calls are skipped, and
-               it's returned directly. */
-            if (maximize ? thisScore >= beta : thisScore <= alpha) {
-                return thisScore;
-            }
-            /* If this score bests the current best score, bestScore is set to
-               thisScore. */
-            if (maximize ? thisScore > bestScore : thisScore < bestScore) {
-                bestScore = thisScore;
+        if (MoveEncoding.isCapture(move) || MoveEncoding.isPromotion(move)) {
+            return;
+        }
+
+        int[] killers = killerMoves[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+
+        int historyIdx = (colorsTurnItIs == WHITE ? 0 : 64 * 64) + (MoveEncoding.fromSquare(move) << 6)
+                         + MoveEncoding.toSquare(move);
+        historyScores[historyIdx] += depth * depth;
+        if (historyScores[historyIdx] > HISTORY_SCORE_LIMIT) {
+            for (int idx = 0; idx < historyScores.length; idx++) {
+                historyScores[idx] >>= 1;
             }
         }
+    }
 
-        /* The best score found is returned. */
-        return bestScore;
+    /*
+     * Prepares the move ordering tables for a new search. The killer moves
+     * are cleared, since they were found for positions at plies that are now
+     * two plies further from the root. The history scores are halved, so
+     * they still inform the new search but give way to what it learns.
+     */
+    private void ageMoveOrderingTables() {
+        for (int[] killers : killerMoves) {
+            killers[0] = 0;
+            killers[1] = 0;
+        }
+        for (int idx = 0; idx < historyScores.length; idx++) {
+            historyScores[idx] >>= 1;
+        }
     }
 
     /*
      * This method performs the actual call to algorithmLowerLevel(),
      * which has the same logic when algorithmTopLevel() does it and when
      * algorithmLowerLevel() does it, so it's refactored into its own method.
+     * The move is made on the PositionState, which updates the castling
+     * rights and the hash along with the boardArray, and unmade after the
+     * call returns. The score is negated on the way back up, so it's
+     * returned from the point of view of the side that made the move.
      *
      * @param boardArray     The int[8][8] array used to model the chessboard.
-     * @param maximize       A boolean, whether this step of the algorithm is
-     *                       maximizing the score (if true) or minimizing it (if
-     *                       false).
-     * @param moveArray      The array representing the individual move to execute.
+     * @param move           The packed move to execute.
      * @param colorsTurnItIs The color whose turn is being modelled in the call
-     *                       of algorithmLowerLevel().
+     *                       of algorithmLowerLevel(), which is the color
+     *                       replying to the move.
      * @param depth          A number that decreases by 1 each successive
      *                       recursive call. When algorithmLowerLevel() is
      *                       called with depth=0, it returns the result of
-     *                       evaluateBoard() rather than conducting its normal
-     *                       logic.
-     * @param alpha          The value for alpha.
-     * @param beta           The value for beta.
+     *                       the quiescence search rather than conducting its
+     *                       normal logic.
+     * @param alpha          The value for alpha, for the side making the move.
+     * @param beta           The value for beta, for the side making the move.
+     * @return               The move's score, for the side making the move.
      */
-    private double algorithmCallExecutor(final int[][] boardArray, final boolean maximize,
-                                         final int[] moveArray, final int colorsTurnItIs,
-                                         final int depth, final double alpha, final double beta
-                                         ) throws IllegalArgumentException, KingIsInCheckException,
-                                                  CastlingNotPossibleException {
-        int colorOpposing = (colorsTurnItIs == WHITE ? BLACK : WHITE);
-        int movedPieceInt = moveArray[0];
-        int fromXIdx = moveArray[1];
-        int fromYIdx = moveArray[2];
-        int toXIdx = moveArray[3];
-        int toYIdx = moveArray[4];
-        int capturedPieceInt = moveArray[5];
-        int savedPieceNo1 = 0;
-        int savedPieceNo2 = 0;
-        boolean isCastlingKingside = false;
-        boolean isCastlingQueenside = false;
-        double retval;
-        String thisColorStr = colorsTurnItIs == WHITE ? "black" : "white";
-        Chessboard.Move moveObj;
-
-        /* The same boardArray is passed down the call stack and reused by
-           every step of the algorithm, to avoid having to clone it each time.
-           That means I need to execute this moveArray's move on the board,
-           execute the recursive call, and then undo the move so the board can
-           be reused. savedPiece holds whatever was at the square the piece
-           was moved to so it can be restored. */
-
-        if ((movedPieceInt & ROOK) != 0 && (capturedPieceInt & KING) != 0
-            && (movedPieceInt & WHITE) == (capturedPieceInt & WHITE)) {
-            if (toXIdx != 0 && toXIdx !=  7) {
-                throw new IllegalArgumentException("algorithmCallExecutor() called with a moveArray that indicated "
-                                                   + "castling but the Rook isn't in position");
-            }
-            if (toXIdx == 7) {
-                isCastlingKingside = true;
-                savedPieceNo1 = boardArray[5][toYIdx];
-                savedPieceNo2 = boardArray[6][fromYIdx];
-            } else {
-                isCastlingQueenside = true;
-                savedPieceNo1 = boardArray[2][toYIdx];
-                savedPieceNo2 = boardArray[3][fromYIdx];
-            }
-
-            moveObj = new Chessboard.Move(chessboard.getPieceAtCoords(fromXIdx, fromYIdx),
-                                          fromXIdx, fromYIdx, toXIdx, toYIdx,
-                                          capturedPieceInt, isCastlingKingside, isCastlingQueenside, 0);
+    private int algorithmCallExecutor(final int[][] boardArray, final int move, final int colorsTurnItIs,
+                                      final int depth, final int alpha, final int beta) {
+        int retval;
 
-            /* The boardArray being used is the same one this chessboard
-               object manipulates internally when movePiece() is called. Here
-               movePiece() is used because castling depends on state information
-               (whether the king or rook has moved so far, which makes castling
-               impossible) that's tracked internally by the Chessboard object. */
-            chessboard.movePiece(moveObj);
-
-            retval = algorithmLowerLevel(boardArray, maximize, depth - 1, colorsTurnItIs, alpha, beta);
-
-            if (isCastlingKingside) {
-                movedPieceInt = boardArray[6][toYIdx];
-                capturedPieceInt = boardArray[5][fromYIdx];
-                boardArray[6][toYIdx] = savedPieceNo1;
-                boardArray[6][fromYIdx] = savedPieceNo2;
-            } else {
-                movedPieceInt = boardArray[3][toYIdx];
-                capturedPieceInt = boardArray[2][fromYIdx];
-                boardArray[2][toYIdx] = savedPieceNo1;
-                boardArray[3][fromYIdx] = savedPieceNo2;
-            }
-        } else if (moveArray[6] != 0) {
-            /* The 7th element in a moveArray is only nonzero if the move is a
-               pawn being promoted. */
-            if (BoardArrays.wouldKingBeInCheck(boardArray, fromXIdx, fromYIdx, toXIdx, toYIdx, colorsTurnItIs, colorOnTop)) {
-                throw new KingIsInCheckException("Move would place " + thisColorStr + "'s king in check or "
-                                                 + thisColorStr + "'s King is in check and this move doesn't fix that. "
-                                                 + "Move can't be made.");
-            }
+        position.makeMove(move);
+        retval = -algorithmLowerLevel(boardArray, depth - 1, colorsTurnItIs, -beta, -alpha);
+        position.unmakeMove();
 
-            int promotedFromPieceInt = boardArray[fromXIdx][fromYIdx];
-            savedPieceNo1 = boardArray[toXIdx][toYIdx];
-            boardArray[toXIdx][toYIdx] = moveArray[6];
-            boardArray[fromXIdx][fromYIdx] = 0;
+        return retval;
+    }
 
-            retval = algorithmLowerLevel(boardArray, maximize, depth - 1, colorsTurnItIs, alpha, beta);
+    /*
+     * Checks whether the time budget or the node budget for the current search
+     * has run out, or whether a helper search has been told to stop, and if so
+     * sets searchAborted.
+     */
+    private void checkSearchBudget() {
+        if (stopRequested
+            || timeBudgetMillis != 0 && System.nanoTime() - searchDeadlineNanos >= 0
+            || nodeBudget != 0 && nodesSearched >= nodeBudget) {
+            searchAborted = true;
+        }
+    }
 
-            boardArray[fromXIdx][fromYIdx] = promotedFromPieceInt;
-            boardArray[toXIdx][toYIdx] = savedPieceNo1;
-        } else {
-            if (BoardArrays.wouldKingBeInCheck(boardArray, fromXIdx, fromYIdx, toXIdx, toYIdx, colorsTurnItIs, colorOnTop)) {
-                throw new KingIsInCheckException("Move would place " + thisColorStr + "'s king in check or "
-                                                 + thisColorStr + "'s King is in check and this move doesn't fix that. "
-                                                 + "Move can't be made.");
+    /*
+     * Derives the 16-bit key that the transposition table uses to identify a
+     * move: the from and to squares as xIdx * 8 + yIdx, and the index in
+     * BoardArrays.PAWN_PROMOTION_PIECES (plus 1) of the piece promoted to, if
+     * any. The key is never 0 for a valid move since the from and to squares
+     * differ.
+     *
+     * @param move The packed move.
+     * @return     The move's key.
+     */
+    private static int transpositionMoveKey(final int move) {
+        int promotionIdx = 0;
+        if (MoveEncoding.isPromotion(move)) {
+            int promotedToPieceBase = MoveEncoding.promotedToPieceInt(move) & (ROOK | KNIGHT | BISHOP | QUEEN);
+            for (int pieceIdx = 0; pieceIdx < BoardArrays.PAWN_PROMOTION_PIECES.length; pieceIdx++) {
+                if (BoardArrays.PAWN_PROMOTION_PIECES[pieceIdx] == promotedToPieceBase) {
+                    promotionIdx = pieceIdx + 1;
+                    break;
+                }
             }
-
-            savedPieceNo1 = boardArray[toXIdx][toYIdx];
-            boardArray[toXIdx][toYIdx] = moveArray[0];
-            boardArray[fromXIdx][fromYIdx] = 0;
-
-            retval = algorithmLowerLevel(boardArray, maximize, depth - 1, colorsTurnItIs, alpha, beta);
-
-            boardArray[fromXIdx][fromYIdx] = boardArray[toXIdx][toYIdx];
-            boardArray[toXIdx][toYIdx] = savedPieceNo1;
         }
-
-        return retval;
+        return MoveEncoding.fromSquare(move) | (MoveEncoding.toSquare(move) << 6) | (promotionIdx << 12);
     }
 
     /*
@@ -425,100 +1905,94 @@ public class MinimaxRunner {
      * programmer Claude Shannon in 1949, in his paper _Programming a Computer
      * for playing Chess_.
      *
+     * The evaluation is lazy: its terms are computed from the cheapest to
+     * the most costly, and after each stage the score is checked against the
+     * search window. If the terms not yet computed couldn't bring it back
+     * inside the window, the bound the score is known to be beyond is
+     * returned without computing them. That bound is still on the right side
+     * of the window, so the search reaches the same result, but it isn't
+     * cached.
+     *
      * @param boardArray     The int[8][8] array used to represent the chessboard.
-     * @param colorsTurnItIs An integer indicating which color the AI is
-     *                       playing (either BoardArrays.WHITE or BoardArrays.BLACK).
-     */
-    private double evaluateBoard(final int[][] boardArray, final int colorsTurnItIs) {
-        /* This statement derives from the boardArray a string value that is
-           guaranteed to be unique for that board configuration, so that this
-           method's memoization HashMap evaluateBoardMemoizeMap can store
-           the board's score with that key. The format() statement creates a
-           200-character hexadecimal string that comprises each element of
-           boardArray, in order, in hex.
-
-           Doing it as one big call to String.format avoids the overhead of
-           having to instance a StringJoiner object, and use 2 for loops with 64
-           calls to StringJoiner.add() to populate it. It's ugly but definitely
-           faster.  */
-        String boardStr = String.format("%03x%03x%03x%03x%03x%03x%03x%03x\n%03x%03x%03x%03x%03x%03x%03x%03x\n%03x%03x%03x"
-            + "%03x%03x%03x%03x%03x\n%03x%03x%03x%03x%03x%03x%03x%03x\n%03x%03x%03x%03x%03x%03x%03x%03x\n%03x%03x%03x%03x"
-            + "%03x%03x%03x%03x\n%03x%03x%03x%03x%03x%03x%03x%03x\n%03x%03x%03x%03x%03x%03x%03x%03x",
-            boardArray[0][0], boardArray[0][1], boardArray[0][2], boardArray[0][3], boardArray[0][4], boardArray[0][5],
-            boardArray[0][6], boardArray[0][7], boardArray[1][0], boardArray[1][1], boardArray[1][2], boardArray[1][3],
-            boardArray[1][4], boardArray[1][5], boardArray[1][6], boardArray[1][7], boardArray[2][0], boardArray[2][1],
-            boardArray[2][2], boardArray[2][3], boardArray[2][4], boardArray[2][5], boardArray[2][6], boardArray[2][7],
-            boardArray[3][0], boardArray[3][1], boardArray[3][2], boardArray[3][3], boardArray[3][4], boardArray[3][5],
-            boardArray[3][6], boardArray[3][7], boardArray[4][0], boardArray[4][1], boardArray[4][2], boardArray[4][3],
-            boardArray[4][4], boardArray[4][5], boardArray[4][6], boardArray[4][7], boardArray[5][0], boardArray[5][1],
-            boardArray[5][2], boardArray[5][3], boardArray[5][4], boardArray[5][5], boardArray[5][6], boardArray[5][7],
-            boardArray[6][0], boardArray[6][1], boardArray[6][2], boardArray[6][3], boardArray[6][4], boardArray[6][5],
-            boardArray[6][6], boardArray[6][7], boardArray[7][0], boardArray[7][1], boardArray[7][2], boardArray[7][3],
-            boardArray[7][4], boardArray[7][5], boardArray[7][6], boardArray[7][7]);
-
-        /* The boardStr value is used to memoize the return values of this
-           method to evaluateBoardMemoizeMap. */
-        if (evaluateBoardMemoizeMap.containsKey(boardStr)) {
-            return evaluateBoardMemoizeMap.get(boardStr);
+     * @param colorsTurnItIs An integer indicating which color's point of view
+     *                       to score the board from, which is the color whose
+     *                       turn it is (either BoardArrays.WHITE or
+     *                       BoardArrays.BLACK).
+     * @param alpha          The lower edge of the search window.
+     * @param beta           The upper edge of the search window.
+     * @return               The board's score, in centipawns, or a bound on it
+     *                       at or below alpha or at or above beta.
+     */
+    private int evaluateBoard(final int[][] boardArray, final int colorsTurnItIs, final int alpha,
+                              final int beta) {
+        /* The Zobrist hash of the position, which algorithmCallExecutor()
+           keeps current as it makes and unmakes moves, is used to memoize the
+           return values of this method to evaluationCache. The hash covers
+           whose turn it is, so a score computed from one color's point of
+           view is never returned for the other color's. */
+        evaluationsCount++;
+        int memoizedScore = evaluationCache.probe(position.getPositionKey());
+        if (memoizedScore != EvaluationCache.NO_SCORE) {
+            return memoizedScore;
         }
 
         int otherColor = colorsTurnItIs == WHITE ? BLACK : WHITE;
-        int whiteIndex = 0;
-        int blackIndex = 1;
-        int kingIndex = 0;
-        int queenIndex = 1;
-        int rookIndex = 2;
-        int bishopIndex = 3;
-        int knightIndex = 4;
-        int pawnIndex = 5;
 
-        int thisColorIndex = colorsTurnItIs == WHITE ? whiteIndex : blackIndex;
-        int otherColorIndex = colorsTurnItIs == WHITE ? blackIndex : whiteIndex;
-
-        double[][] piecesCounts = new double[2][6];
+        /* The material balance is read from the running totals the
+           PositionState keeps as moves are made and unmade. With assertions
+           enabled, it's checked against a count of the pieces on the board. */
+        int materialScore = position.getMaterialScore(colorsTurnItIs) - position.getMaterialScore(otherColor);
+        assert materialScore == countMaterialScore(boardArray, colorsTurnItIs)
+                : "incremental material balance " + materialScore + " doesn't match the board's";
 
         /* A highly-valued component of the calculation is whether a side's king
            is in check or not, so that's computed for both sides. */
-        int whiteKingNotInCheckBonus = BoardArrays.isKingInCheck(boardArray, WHITE, colorOnTop) ? 0 : 1;
-        int blackKingNotInCheckBonus = BoardArrays.isKingInCheck(boardArray, BLACK, colorOnTop) ? 0 : 1;
-
-        /* Switch statement's case values must be constants at compile time, so
-           the piece integer values are used, and they're all stored to an array
-           by key indexes, where they can be recovered from later. */
-        for (int[] boardRow : boardArray) {
-            for (int pieceInt : boardRow) {
-                switch (pieceInt) {
-                    case WHITE | KING:           piecesCounts[whiteIndex][kingIndex] = whiteKingNotInCheckBonus;
-                    case WHITE | QUEEN:          piecesCounts[whiteIndex][queenIndex]++; break;
-                    case WHITE | ROOK:           piecesCounts[whiteIndex][rookIndex]++; break;
-                    case WHITE | BISHOP:         piecesCounts[whiteIndex][bishopIndex]++; break;
-                    case WHITE | KNIGHT | RIGHT: case WHITE | KNIGHT | LEFT:
-                                                 piecesCounts[whiteIndex][knightIndex]++; break;
-                    case WHITE | PAWN:           piecesCounts[whiteIndex][pawnIndex]++; break;
-                    case BLACK | KING:           piecesCounts[blackIndex][kingIndex] = blackKingNotInCheckBonus;
-                    case BLACK | QUEEN:          piecesCounts[blackIndex][queenIndex]++; break;
-                    case BLACK | ROOK:           piecesCounts[blackIndex][rookIndex]++; break;
-                    case BLACK | BISHOP:         piecesCounts[blackIndex][bishopIndex]++; break;
-                    case BLACK | KNIGHT | RIGHT: case BLACK | KNIGHT | LEFT:
-                                                 piecesCounts[blackIndex][knightIndex]++; break;
-                    case BLACK | PAWN:           piecesCounts[blackIndex][pawnIndex]++; break;
-                    default: break;
-                }
-            }
+        int thisKingNotInCheckBonus = isKingInCheck(boardArray, colorsTurnItIs) ? 0 : 1;
+        int otherKingNotInCheckBonus = isKingInCheck(boardArray, otherColor) ? 0 : 1;
+
+        /* The weighting assigned to whether one side's king is in check
+           outshines every other value in this calculation by a wide margin. If
+           a move would put the player's side's king in check, that move will be
+           weighted far above every other possible move. */
+        double kingScore = 200D * (thisKingNotInCheckBonus - otherKingNotInCheckBonus);
+
+        /* The first stage of the lazy evaluation: the material and the king
+           terms are known, and the pawn structure and mobility terms are
+           bounded. A color's mobility is bounded by its material, see
+           maximumMobilityScore(). */
+        int partialScore = materialScore + (int) Math.round(CENTIPAWNS_PER_PAWN * kingScore);
+        int thisMaximumMobilityScore = maximumMobilityScore(colorsTurnItIs);
+        int otherMaximumMobilityScore = maximumMobilityScore(otherColor);
+        if (partialScore + MAXIMUM_PAWN_STRUCTURE_SCORE + thisMaximumMobilityScore <= alpha) {
+            lazyEvaluationExitsCount++;
+            return partialScore + MAXIMUM_PAWN_STRUCTURE_SCORE + thisMaximumMobilityScore;
+        } else if (partialScore - MAXIMUM_PAWN_STRUCTURE_SCORE - otherMaximumMobilityScore >= beta) {
+            lazyEvaluationExitsCount++;
+            return partialScore - MAXIMUM_PAWN_STRUCTURE_SCORE - otherMaximumMobilityScore;
         }
 
         /* Three special values are calculated for the pawns in play (see
-           tallySpecialPawns() for more info) by this method and returned as a
-           double[3] array. */
-        double[] thisColorSpecialPawnsTallies = tallySpecialPawns(boardArray, colorsTurnItIs);
-        double[] otherColorSpecialPawnsTallies = tallySpecialPawns(boardArray, otherColor);
-
-        double thisColorSpecialPawnScore = (-thisColorSpecialPawnsTallies[ISOLATED]
-                                            - thisColorSpecialPawnsTallies[BLOCKED]
-                                            - thisColorSpecialPawnsTallies[DOUBLED]);
-        double otherColorSpecialPawnScore = (-otherColorSpecialPawnsTallies[ISOLATED]
-                                             - otherColorSpecialPawnsTallies[BLOCKED]
-                                             - otherColorSpecialPawnsTallies[DOUBLED]);
+           tallySpecialPawns() for more info). The doubled and isolated pawn
+           counts depend only on where the pawns are, so their sum for each
+           color is looked up in the pawn hash table by the pawn key, and
+           only counted by tallySpecialPawns() if it isn't there. The blocked
+           pawns also depend on the other pieces, so they're always counted. */
+        int pawnStructure = pawnHashTable.probe(position.getPawnKey());
+        if (pawnStructure == -1) {
+            double[] whiteSpecialPawnsTallies = tallySpecialPawns(boardArray, WHITE, specialPawnsTallies[0]);
+            double[] blackSpecialPawnsTallies = tallySpecialPawns(boardArray, BLACK, specialPawnsTallies[1]);
+            pawnStructure = (int) (whiteSpecialPawnsTallies[DOUBLED] + whiteSpecialPawnsTallies[ISOLATED])
+                            | (int) (blackSpecialPawnsTallies[DOUBLED] + blackSpecialPawnsTallies[ISOLATED])
+                              << PAWN_STRUCTURE_SHIFT;
+            pawnHashTable.store(position.getPawnKey(), pawnStructure);
+        }
+        int whitePawnStructure = pawnStructure & PAWN_STRUCTURE_MASK;
+        int blackPawnStructure = pawnStructure >>> PAWN_STRUCTURE_SHIFT;
+
+        double thisColorSpecialPawnScore = -(colorsTurnItIs == WHITE ? whitePawnStructure : blackPawnStructure)
+                                           - countBlockedPawns(boardArray, colorsTurnItIs);
+        double otherColorSpecialPawnScore = -(colorsTurnItIs == WHITE ? blackPawnStructure : whitePawnStructure)
+                                            - countBlockedPawns(boardArray, otherColor);
 
         /* Since the special pawn score is a penalty-- a negative number--
            then the following computation will work out to a positive
@@ -526,38 +2000,109 @@ public class MinimaxRunner {
            abs(thisColorSpecialPawnScore). */
         double specialPawnScore = 0.5D * (thisColorSpecialPawnScore - otherColorSpecialPawnScore);
 
-        /* Mobility is the total number of moves available to that color. */
+        /* The second stage of the lazy evaluation: only the mobility term is
+           left to compute. */
+        partialScore = materialScore + (int) Math.round(CENTIPAWNS_PER_PAWN * (kingScore + specialPawnScore));
+        if (partialScore + thisMaximumMobilityScore <= alpha) {
+            lazyEvaluationExitsCount++;
+            return partialScore + thisMaximumMobilityScore;
+        } else if (partialScore - otherMaximumMobilityScore >= beta) {
+            lazyEvaluationExitsCount++;
+            return partialScore - otherMaximumMobilityScore;
+        }
+
+        /* Mobility is the total number of squares that color's pieces could
+           move to. */
         double thisColorMobility = totalColorMobility(boardArray, colorsTurnItIs);
         double otherColorMobility = totalColorMobility(boardArray, otherColor);
         double mobilityScore = 0.1D * (thisColorMobility - otherColorMobility);
 
-        /* The weighting assigned to whether one side's king is in check
-           outshines every other value in this calculation by a wide margin. If
-           a move would put the player's side's king in check, that move will be
-           weighted far above every other possible move. */
-        double kingScore = 200D * (piecesCounts[thisColorIndex][kingIndex]
-                                   - piecesCounts[otherColorIndex][kingIndex]);
-
-        /* These weighted scores are calculated from the difference between the
-           number of pieces in play for each color. */
-        double queenScore = 9D * (piecesCounts[thisColorIndex][queenIndex]
-                                  - piecesCounts[otherColorIndex][queenIndex]);
-        double rookScore = 5D * (piecesCounts[thisColorIndex][rookIndex]
-                                 - piecesCounts[otherColorIndex][rookIndex]);
-        double bishopScore = 3D * (piecesCounts[thisColorIndex][bishopIndex]
-                                   - piecesCounts[otherColorIndex][bishopIndex]);
-        double knightScore = 3D * (piecesCounts[thisColorIndex][knightIndex]
-                                   - piecesCounts[otherColorIndex][knightIndex]);
-        double generalPawnScore = (piecesCounts[thisColorIndex][pawnIndex]
-                                   - piecesCounts[otherColorIndex][pawnIndex]);
-
-        double totalScore = (kingScore + queenScore + rookScore + bishopScore
-                            + knightScore + generalPawnScore + specialPawnScore
-                            + mobilityScore);
-        evaluateBoardMemoizeMap.put(boardStr, totalScore);
+        /* The weights above are in pawns; the score is returned in
+           centipawns, as the search uses, and as the material balance
+           already is. */
+        int totalScore = materialScore + (int) Math.round(CENTIPAWNS_PER_PAWN * (kingScore + specialPawnScore
+                                                                                 + mobilityScore));
+        evaluationCache.store(position.getPositionKey(), totalScore);
         return totalScore;
     }
 
+    /*
+     * Counts the material balance of the position by scanning the whole
+     * board, weighing each piece as PositionState.materialValue() does. It's
+     * the slow way of computing what PositionState keeps a running total of,
+     * and evaluateBoard() only calls it to check that total when assertions
+     * are enabled.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param colorsTurnItIs The color to count the balance in favor of.
+     * @return               The material balance, in centipawns.
+     */
+    private static int countMaterialScore(final int[][] boardArray, final int colorsTurnItIs) {
+        int materialScore = 0;
+
+        for (int xIdx = 0; xIdx < 8; xIdx++) {
+            for (int yIdx = 0; yIdx < 8; yIdx++) {
+                int pieceInt = boardArray[xIdx][yIdx];
+                int pieceScore = switch (pieceInt & (QUEEN | ROOK | BISHOP | KNIGHT | PAWN)) {
+                    case QUEEN -> 9;
+                    case ROOK -> 5;
+                    case BISHOP, KNIGHT -> 3;
+                    case PAWN -> 1;
+                    default -> 0;
+                };
+                materialScore += (pieceInt & colorsTurnItIs) != 0 ? pieceScore : -pieceScore;
+            }
+        }
+
+        return materialScore * CENTIPAWNS_PER_PAWN;
+    }
+
+    /*
+     * Counts a color's blocked pawns the way tallySpecialPawns() does: the
+     * pawns with a piece of either side that isn't a friendly pawn on the
+     * square ahead of them, except the first pawn in board order (by x index,
+     * then y index), which tallySpecialPawns() doesn't test. It walks the
+     * piece list without sorting the pawns, so it's cheap enough to run on
+     * every evaluation that finds the rest of the pawn terms in the pawn
+     * hash table.
+     *
+     * @param boardArray      The int[8][8] board representation to count
+     *                        pawns in.
+     * @param colorInQuestion The color of pawns to count.
+     * @return                The number of blocked pawns.
+     * @see #tallySpecialPawns
+     */
+    private int countBlockedPawns(final int[][] boardArray, final int colorInQuestion) {
+        int yDiff = colorInQuestion == colorOnTop ? -1 : +1;
+        int[] pieceSquares = position.getPieceSquares(colorInQuestion);
+        int piecesCount = position.getPiecesCount(colorInQuestion);
+        int blockedPawnsCount = 0;
+        int firstPawnSquare = 64;
+        boolean isFirstPawnBlocked = false;
+
+        for (int pieceIdx = 0; pieceIdx < piecesCount; pieceIdx++) {
+            int square = pieceSquares[pieceIdx];
+            int xIdx = square >>> 3;
+            int nextSquareYIdx = (square & 7) + yDiff;
+            if (boardArray[xIdx][square & 7] != (colorInQuestion | PAWN) || nextSquareYIdx < 0
+                || nextSquareYIdx > 7) {
+                continue;
+            }
+
+            int nextSquarePieceInt = boardArray[xIdx][nextSquareYIdx];
+            boolean isBlocked = nextSquarePieceInt != 0 && (nextSquarePieceInt ^ colorInQuestion) != PAWN;
+            if (isBlocked) {
+                blockedPawnsCount++;
+            }
+            if (square < firstPawnSquare) {
+                firstPawnSquare = square;
+                isFirstPawnBlocked = isBlocked;
+            }
+        }
+
+        return isFirstPawnBlocked ? blockedPawnsCount - 1 : blockedPawnsCount;
+    }
+
     /*
      * This is a utility method that handles some logic needed by
      * evaluateBoard(). It reviews the positions of all the friendly pawns on the
@@ -568,16 +2113,12 @@ public class MinimaxRunner {
      *
      * @param boardArray      The int[8][8] board representation to count pawns in.
      * @param colorInQuestion The color of pawns to count.
-     * @param colorOnTop      Which color is playing from the top the board (the
-     *                        lowest y values).
-     * @return                A double[3] array of doubledPawnsCount,
+     * @param retval          The double[3] array to save the counts to.
+     * @return                The retval argument, holding doubledPawnsCount,
      *                        blockedPawnsCount, and isolatedPawnsCount.
      * @see #evaluateBoard
      */
-    private double[] tallySpecialPawns(final int[][] boardArray, final int colorInQuestion) {
-        int[][] tallyPawnsCoords = new int[8][2];
-        int[][] doubledPawnsCoords = new int[8][2];
-        double[] retval = new double[3];
+    private double[] tallySpecialPawns(final int[][] boardArray, final int colorInQuestion, final double[] retval) {
         double blockedPawnsCount = 0;
         double doubledPawnsCount = 0;
         double isolatedPawnsCount = 0;
@@ -585,19 +2126,33 @@ public class MinimaxRunner {
         int pawnsCount = 0;
         int maxPawnIndex;
 
-        /* These loops traverse the int[8][8] boardArray detecting pawns of this
-           color and saving their coordinates to int[8][2] so that the rest
-           of the loops in this method can just iterate over the saved pawns
-           coordinates. */
-        for (int xIdx = 0, pawnIndex = 0; xIdx < 8; xIdx++) {
-            for (int yIdx = 0; yIdx < 8; yIdx++) {
-                if (boardArray[xIdx][yIdx] == (colorInQuestion | PAWN)) {
-                    tallyPawnsCoords[pawnIndex][0] = xIdx;
-                    tallyPawnsCoords[pawnIndex][1] = yIdx;
-                    pawnIndex++;
-                    pawnsCount++;
-                }
+        /* This loop traverses the color's piece list detecting pawns and
+           saving their coordinates to the int[8][2] scratch array
+           tallyPawnsCoords so that the rest of the loops in this method can
+           just iterate over the saved pawns coordinates. The loops below
+           expect the pawns in board order (by x index, then y index), which
+           the piece list isn't kept in, so each pawn is inserted into place.
+           Only the entries saved by this call are read, so the array doesn't
+           need clearing. */
+        int[] pieceSquares = position.getPieceSquares(colorInQuestion);
+        int piecesCount = position.getPiecesCount(colorInQuestion);
+        for (int pieceIdx = 0; pieceIdx < piecesCount; pieceIdx++) {
+            int square = pieceSquares[pieceIdx];
+            int xIdx = square >>> 3;
+            int yIdx = square & 7;
+            if (boardArray[xIdx][yIdx] != (colorInQuestion | PAWN)) {
+                continue;
             }
+            int pawnIndex = pawnsCount;
+            while (pawnIndex > 0 && tallyPawnsCoords[pawnIndex - 1][0] * 8 + tallyPawnsCoords[pawnIndex - 1][1]
+                                    > square) {
+                tallyPawnsCoords[pawnIndex][0] = tallyPawnsCoords[pawnIndex - 1][0];
+                tallyPawnsCoords[pawnIndex][1] = tallyPawnsCoords[pawnIndex - 1][1];
+                pawnIndex--;
+            }
+            tallyPawnsCoords[pawnIndex][0] = xIdx;
+            tallyPawnsCoords[pawnIndex][1] = yIdx;
+            pawnsCount++;
         }
 
         maxPawnIndex = pawnsCount - 1;
@@ -705,8 +2260,8 @@ public class MinimaxRunner {
             }
         }
 
-        /* This method has 3 doubles to return, so they're packed into a double[3]
-           array and that's the return value. */
+        /* This method has 3 doubles to return, so they're saved to the double[3]
+           array argument and that's the return value. */
         retval[DOUBLED] = doubledPawnsCount;
         retval[BLOCKED] = blockedPawnsCount;
         retval[ISOLATED] = isolatedPawnsCount;
@@ -714,40 +2269,376 @@ public class MinimaxRunner {
     }
 
     /*
-     * This method is subordinate to evaluateBoard. It calculates the number
-     * of moves possible for every friendly piece on the board and returns the
-     * total number of moves (which is equal to the index of the first empty
-     * array in an int[][7] movesArray).
+     * This method is subordinate to evaluateBoard. It counts the mobility of
+     * every friendly piece on the board: the number of squares each could
+     * move to, counted from the pieces' attacks without generating moves or
+     * testing their legality. See BoardArrays.countMobility() for which
+     * squares count.
      *
-     * @param boardArray     The board array to calculate moves on.
-     * @param colorsTurnItIs An integer representing the color to calculate
-     *                       moves for (either BoardArrays.WHITE or
+     * @param boardArray     The board array to count mobility on.
+     * @param colorsTurnItIs An integer representing the color to count
+     *                       mobility for (either BoardArrays.WHITE or
      *                       BoardArrays.BLACK).
-     * @return               A double, the total number of moves possible.
+     * @return               A double, the total mobility.
      * @see #evaluateBoard
      */
     private double totalColorMobility(final int[][] boardArray, final int colorsTurnItIs) {
-        int[][] movesArray = new int[128][7];
-        double moveIdx = 0;
+        /* The count is made on the BitboardPosition with bitboard move
+           generation enabled, and from the color's piece list otherwise; both
+           count the same squares. It's returned as a double because the
+           calculations in evaluateBoard() are all done in doubles. */
+        if (bitboardPosition != null) {
+            return Bitboards.countMobility(bitboardPosition, colorsTurnItIs, colorOnTop);
+        }
+        return BoardArrays.countMobility(boardArray, colorsTurnItIs, colorOnTop,
+                                         position.getPieceSquares(colorsTurnItIs),
+                                         position.getPiecesCount(colorsTurnItIs));
+    }
 
-        /* Iterating across the board, stopping when a friendly
-           piece is encountered. For each friendly piece,
-           BoardArrays.generatePieceMoves() is called, and the new value for
-           moveIdx is set to its return value. */
-        for (int xIdx = 0; xIdx < 8; xIdx++) {
-            for (int yIdx = 0; yIdx < 8; yIdx++) {
-                if ((boardArray[xIdx][yIdx] & colorsTurnItIs) == 0) {
+    /*
+     * This method is subordinate to evaluateBoard. It bounds how much a
+     * color's mobility can add to evaluateBoard()'s score, in centipawns, for
+     * the lazy evaluation. No piece can move to more squares per centipawn
+     * of its material value than a bishop's 13 per 300, and the king, which
+     * has no material value, to more than 8, so a color's mobility is at most
+     * 13/300ths of its material plus 8, rounded up. Each square is worth a
+     * tenth of a pawn.
+     *
+     * @param colorInQuestion The color to bound the mobility of.
+     * @return                The bound, in centipawns.
+     * @see #evaluateBoard
+     */
+    private int maximumMobilityScore(final int colorInQuestion) {
+        int maximumMobility = (position.getMaterialScore(colorInQuestion) * 13 + 299) / 300 + 8;
+        return maximumMobility * CENTIPAWNS_PER_PAWN / 10;
+    }
+
+    /*
+     * Hands out the moves of one position to algorithmLowerLevel() in the
+     * order they should be searched in, generating them in stages as they're
+     * needed rather than all at once. First comes the hash move, which is
+     * checked to be legal in the position without generating the other
+     * pieces' moves. Then come the captures and promotions, by
+     * captureOrderingScore() with the ones that lose material by static
+     * exchange evaluation last; then the ply's killer moves that are legal in
+     * the position; and then the remaining quiet moves by their history
+     * scores. The quiet moves are only generated if none of the moves before
+     * them caused a cutoff. Within a stage, each next move is picked out by
+     * a scan for the best-scored one left, so moves that are never reached
+     * are never sorted.
+     *
+     * The stages are only generated separately with bitboard move
+     * generation. The boardArray generator generates every move at once, so
+     * without bitboards they're generated when the first move is needed and
+     * then split into the same stages.
+     */
+    private final class MovePicker {
+
+        /* The stages a MovePicker goes through, in order. */
+        private static final int HASH_MOVE_STAGE = 0;
+        private static final int GENERATE_CAPTURES_STAGE = 1;
+        private static final int CAPTURES_STAGE = 2;
+        private static final int KILLER_MOVES_STAGE = 3;
+        private static final int GENERATE_QUIET_MOVES_STAGE = 4;
+        private static final int QUIET_MOVES_STAGE = 5;
+        private static final int FINISHED_STAGE = 6;
+
+        /* The moves of the current stage and their ordering scores, and
+           scratch space for the moves of one piece. */
+        private final int[] movesArray = new int[128];
+        private final int[] moveScores = new int[128];
+        private final int[] pieceMovesArray = new int[32];
+
+        /* The position the moves are picked for. */
+        private int[][] boardArray;
+        private int colorsTurnItIs;
+        private int hashMoveKey;
+        private int ply;
+
+        /* The current stage; the index of the next move of the stage to hand
+           out, and the index after its last move; for the boardArray
+           generator, the number of moves it generated; and the killer moves
+           that have been handed out. */
+        private int stage;
+        private int moveIdx;
+        private int stageEndIdx;
+        private int movesArrayUsedLength;
+        private int killerMoveIdx;
+        private int firstKillerMove;
+        private int secondKillerMove;
+
+        /*
+         * Prepares to hand out the moves of a new position.
+         *
+         * @param boardArrayVal     The int[8][8] array that represents the
+         *                          chessboard.
+         * @param colorsTurnItIsVal The color whose moves to hand out.
+         * @param hashMoveKeyVal    The transposition table's move key for the
+         *                          position, or 0 if there isn't one.
+         * @param plyVal            The ply of the position, which indexes the
+         *                          killer moves.
+         */
+        void start(final int[][] boardArrayVal, final int colorsTurnItIsVal, final int hashMoveKeyVal,
+                   final int plyVal) {
+            boardArray = boardArrayVal;
+            colorsTurnItIs = colorsTurnItIsVal;
+            hashMoveKey = hashMoveKeyVal;
+            ply = plyVal;
+            stage = HASH_MOVE_STAGE;
+            movesArrayUsedLength = 0;
+            killerMoveIdx = 0;
+            firstKillerMove = 0;
+            secondKillerMove = 0;
+        }
+
+        /*
+         * Hands out the next move, moving on through the stages as each one
+         * runs out.
+         *
+         * @return The next packed move, or 0 if every move has been handed
+         *         out.
+         */
+        int nextMove() {
+            while (true) {
+                switch (stage) {
+                    case HASH_MOVE_STAGE -> {
+                        stage = GENERATE_CAPTURES_STAGE;
+                        int hashMove = findHashMove();
+                        if (hashMove != 0) {
+                            return hashMove;
+                        }
+                    }
+                    case GENERATE_CAPTURES_STAGE -> {
+                        generateCaptures();
+                        stage = CAPTURES_STAGE;
+                    }
+                    case CAPTURES_STAGE -> {
+                        int move = pickBestMove();
+                        if (move != 0) {
+                            return move;
+                        }
+                        stage = KILLER_MOVES_STAGE;
+                    }
+                    case KILLER_MOVES_STAGE -> {
+                        int move = nextKillerMove();
+                        if (move != 0) {
+                            return move;
+                        }
+                        stage = GENERATE_QUIET_MOVES_STAGE;
+                    }
+                    case GENERATE_QUIET_MOVES_STAGE -> {
+                        generateQuietMoves();
+                        stage = QUIET_MOVES_STAGE;
+                    }
+                    case QUIET_MOVES_STAGE -> {
+                        int move = pickBestMove();
+                        if (move != 0) {
+                            return move;
+                        }
+                        stage = FINISHED_STAGE;
+                    }
+                    default -> {
+                        return 0;
+                    }
+                }
+            }
+        }
+
+        /*
+         * Finds the move in the position that the hash move key stands for.
+         * With bitboard move generation, only the moves of the piece on the
+         * key's from square are generated to look for it.
+         *
+         * @return The packed hash move, or 0 if there's no hash move key or
+         *         no legal move matches it.
+         */
+        private int findHashMove() {
+            if (hashMoveKey == 0) {
+                return 0;
+            } else if (bitboardPosition == null) {
+                generateAllMoves();
+                for (int moveIdxToCheck = 0; moveIdxToCheck < movesArrayUsedLength; moveIdxToCheck++) {
+                    if (transpositionMoveKey(movesArray[moveIdxToCheck]) == hashMoveKey) {
+                        return movesArray[moveIdxToCheck];
+                    }
+                }
+                return 0;
+            }
+
+            int pieceMovesCount = Bitboards.generateLegalMovesFrom(bitboardPosition, pieceMovesArray, colorsTurnItIs,
+                                                                   colorOnTop, position.getCastlingRights(),
+                                                                   hashMoveKey & 63);
+            for (int pieceMoveIdx = 0; pieceMoveIdx < pieceMovesCount; pieceMoveIdx++) {
+                if (transpositionMoveKey(pieceMovesArray[pieceMoveIdx]) == hashMoveKey) {
+                    return pieceMovesArray[pieceMoveIdx];
+                }
+            }
+            return 0;
+        }
+
+        /*
+         * Sets up the captures and promotions as the current stage's moves,
+         * less the hash move, with their ordering scores.
+         */
+        private void generateCaptures() {
+            int capturesCount;
+
+            if (bitboardPosition != null) {
+                capturesCount = Bitboards.generateLegalMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop,
+                                                             position.getCastlingRights(), Bitboards.CAPTURE_MOVES);
+            } else {
+                /* The boardArray generator's moves are partitioned, the
+                   captures and promotions to the front and the quiet moves
+                   behind them. */
+                if (movesArrayUsedLength == 0) {
+                    generateAllMoves();
+                }
+                capturesCount = 0;
+                for (int moveIdxToCheck = 0; moveIdxToCheck < movesArrayUsedLength; moveIdxToCheck++) {
+                    int move = movesArray[moveIdxToCheck];
+                    if (MoveEncoding.isCapture(move) || MoveEncoding.isPromotion(move)) {
+                        movesArray[moveIdxToCheck] = movesArray[capturesCount];
+                        movesArray[capturesCount++] = move;
+                    }
+                }
+            }
+
+            /* Captures that lose material by static exchange evaluation are
+               ordered after the others. */
+            for (int captureIdx = 0; captureIdx < capturesCount; captureIdx++) {
+                int move = movesArray[captureIdx];
+                moveScores[captureIdx] = captureOrderingScore(move)
+                                         + (isLosingCapture(boardArray, move) ? 0 : WINNING_CAPTURE_BONUS);
+            }
+            moveIdx = 0;
+            stageEndIdx = capturesCount;
+        }
+
+        /*
+         * Hands out the next of this ply's killer moves that's legal in the
+         * position and isn't the hash move. A killer move is a quiet move
+         * found at this ply in another position, so it's only legal here if
+         * the same piece can make it.
+         *
+         * @return The packed killer move, or 0 if there are no more.
+         */
+        private int nextKillerMove() {
+            int[] killers = killerMoves[ply];
+
+            while (killerMoveIdx < 2) {
+                int killerMove = killers[killerMoveIdx++];
+                if (killerMove == 0 || killerMove == firstKillerMove || transpositionMoveKey(killerMove) == hashMoveKey
+                    || !isLegalQuietMove(killerMove)) {
                     continue;
                 }
-                moveIdx = (double) BoardArrays.generatePieceMoves(boardArray, movesArray, (int) moveIdx,
-                                                                  xIdx, yIdx, colorsTurnItIs, colorOnTop);
+                if (killerMoveIdx == 1) {
+                    firstKillerMove = killerMove;
+                } else {
+                    secondKillerMove = killerMove;
+                }
+                return killerMove;
+            }
+            return 0;
+        }
+
+        /*
+         * Tests whether a quiet move can be made in the position: whether
+         * it's among the legal moves of the piece on its from square. Without
+         * bitboard move generation, the quiet moves behind the captures in
+         * movesArray are searched for it instead.
+         *
+         * @param move The packed quiet move.
+         * @return     True if the move can be made, false otherwise.
+         */
+        private boolean isLegalQuietMove(final int move) {
+            if (bitboardPosition == null) {
+                for (int moveIdxToCheck = stageEndIdx; moveIdxToCheck < movesArrayUsedLength; moveIdxToCheck++) {
+                    if (movesArray[moveIdxToCheck] == move) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            int fromSquare = MoveEncoding.fromSquare(move);
+            if (bitboardPosition.getPieceInt(fromSquare) != MoveEncoding.movedPieceInt(move)) {
+                return false;
+            }
+            int pieceMovesCount = Bitboards.generateLegalMovesFrom(bitboardPosition, pieceMovesArray, colorsTurnItIs,
+                                                                   colorOnTop, position.getCastlingRights(),
+                                                                   fromSquare);
+            for (int pieceMoveIdx = 0; pieceMoveIdx < pieceMovesCount; pieceMoveIdx++) {
+                if (pieceMovesArray[pieceMoveIdx] == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /*
+         * Sets up the quiet moves as the current stage's moves, less the hash
+         * move and the killer moves already handed out, with their history
+         * scores.
+         */
+        private void generateQuietMoves() {
+            int historyOffset = colorsTurnItIs == WHITE ? 0 : 64 * 64;
+            int firstQuietMoveIdx;
+
+            if (bitboardPosition != null) {
+                firstQuietMoveIdx = 0;
+                stageEndIdx = Bitboards.generateLegalMoves(bitboardPosition, movesArray, colorsTurnItIs, colorOnTop,
+                                                           position.getCastlingRights(), Bitboards.QUIET_MOVES);
+            } else {
+                firstQuietMoveIdx = stageEndIdx;
+                stageEndIdx = movesArrayUsedLength;
+            }
+
+            for (int quietMoveIdx = firstQuietMoveIdx; quietMoveIdx < stageEndIdx; quietMoveIdx++) {
+                int move = movesArray[quietMoveIdx];
+                moveScores[quietMoveIdx] = move == firstKillerMove || move == secondKillerMove
+                                           ? -1
+                                           : historyScores[historyOffset + (MoveEncoding.fromSquare(move) << 6)
+                                                           + MoveEncoding.toSquare(move)];
+            }
+            moveIdx = firstQuietMoveIdx;
+        }
+
+        /*
+         * Hands out the best-scored move left in the current stage, skipping
+         * the hash move and the killer moves already handed out, which are
+         * scored -1.
+         *
+         * @return The packed move, or 0 if the stage has no moves left.
+         */
+        private int pickBestMove() {
+            while (moveIdx < stageEndIdx) {
+                int bestIdx = moveIdx;
+                for (int candidateIdx = moveIdx + 1; candidateIdx < stageEndIdx; candidateIdx++) {
+                    if (moveScores[candidateIdx] > moveScores[bestIdx]) {
+                        bestIdx = candidateIdx;
+                    }
+                }
+
+                int move = movesArray[bestIdx];
+                int score = moveScores[bestIdx];
+                movesArray[bestIdx] = movesArray[moveIdx];
+                moveScores[bestIdx] = moveScores[moveIdx];
+                movesArray[moveIdx] = move;
+                moveScores[moveIdx] = score;
+                moveIdx++;
+
+                if (score >= 0 && (hashMoveKey == 0 || transpositionMoveKey(move) != hashMoveKey)) {
+                    return move;
+                }
             }
+            return 0;
         }
 
-        /* The index of the first empty array in the int[][7] movesArray is also
-           the length of the used arrays, so that is returned. It's returned as
-           a double because the calculations in evaluateBoard() are all done in
-           doubles. */
-        return moveIdx;
+        /*
+         * Generates every move with the boardArray generator.
+         */
+        private void generateAllMoves() {
+            movesArrayUsedLength = generatePossibleMoves(boardArray, movesArray, colorsTurnItIs);
+        }
     }
 }
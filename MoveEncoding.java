@@ -0,0 +1,326 @@
+package org.kmfahey.jchessgame;
+
+/**
+ * Contains the utility methods that pack a move into a single int and unpack
+ * it again. A packed move holds everything the int[7] move arrays used by the
+ * GUI code hold, so it can be made and unmade on a boardArray without
+ * consulting anything else, but an array of packed moves is one contiguous
+ * block of memory that can be filled and sorted in place.
+ *
+ * A move is packed as follows, counting from the least significant bit:
+ *
+ *     bits  0-5   the square moved from, as xIdx * 8 + yIdx
+ *     bits  6-11  the square moved to, as xIdx * 8 + yIdx
+ *     bits 12-16  the code of the piece moved
+ *     bits 17-21  the code of the piece captured, or 0
+ *     bits 22-26  the code of the piece a pawn is promoted to, or 0
+ *     bit  27     the capture flag
+ *     bit  28     the promotion flag
+ *     bit  29     the castling flag
+ *
+ * A piece code is a 5-bit number that identifies a piece int exactly,
+ * including a knight's chirality, so a captured or promoted piece can be put
+ * back on the board just as it was. Castling moves are encoded the way the
+ * move generators describe them, as the king moving to its rook's square and
+ * "capturing" it; they have the castling flag set rather than the capture
+ * flag. Since every move has a piece moved, no packed move is 0, so 0 can be
+ * used to mean no move.
+ *
+ * @see BoardArrays#generatePossibleMoves
+ * @see MinimaxRunner
+ */
+public final class MoveEncoding {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+    private static final int RIGHT = BoardArrays.RIGHT;
+    private static final int LEFT = BoardArrays.LEFT;
+
+    /** Flag set on a move that captures an opposing piece. */
+    public static final int CAPTURE_FLAG = 1 << 27;
+
+    /** Flag set on a move that promotes a pawn. */
+    public static final int PROMOTION_FLAG = 1 << 28;
+
+    /** Flag set on a castling move. */
+    public static final int CASTLING_FLAG = 1 << 29;
+
+    /* The positions and widths of the fields of a packed move. */
+    private static final int TO_SQUARE_SHIFT = 6;
+    private static final int MOVED_PIECE_SHIFT = 12;
+    private static final int CAPTURED_PIECE_SHIFT = 17;
+    private static final int PROMOTED_PIECE_SHIFT = 22;
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int PIECE_CODE_MASK = 0x1F;
+
+    /* A piece code is the piece's type number (1 to 6, in the order of
+       PIECE_TYPES) in its low 3 bits, plus a bit for black and a bit for a
+       right-facing knight. */
+    private static final int[] PIECE_TYPES = new int[] {0, KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN};
+    private static final int BLACK_CODE_BIT = 0b01000;
+    private static final int RIGHT_CODE_BIT = 0b10000;
+
+    /* Map piece ints to piece codes and back again. */
+    private static final int[] PIECE_CODES = new int[BLACK << 1];
+    private static final int[] PIECE_INTS = new int[PIECE_CODE_MASK + 1];
+
+    static {
+        for (int typeNumber = 1; typeNumber < PIECE_TYPES.length; typeNumber++) {
+            for (int color : new int[] {WHITE, BLACK}) {
+                int colorCodeBit = color == BLACK ? BLACK_CODE_BIT : 0;
+                if (PIECE_TYPES[typeNumber] == KNIGHT) {
+                    registerPieceCode(color | KNIGHT | LEFT, typeNumber | colorCodeBit);
+                    registerPieceCode(color | KNIGHT | RIGHT, typeNumber | colorCodeBit | RIGHT_CODE_BIT);
+                } else {
+                    registerPieceCode(color | PIECE_TYPES[typeNumber], typeNumber | colorCodeBit);
+                }
+            }
+        }
+    }
+
+    private MoveEncoding() { }
+
+    /*
+     * Records the piece code for a piece int in both lookup tables.
+     */
+    private static void registerPieceCode(final int pieceInt, final int pieceCode) {
+        PIECE_CODES[pieceInt] = pieceCode;
+        PIECE_INTS[pieceCode] = pieceInt;
+    }
+
+    /**
+     * Packs a move into an int.
+     *
+     * @param movedPieceInt      The int value of the piece moving.
+     * @param fromXIdx           The x index of the square moved from.
+     * @param fromYIdx           The y index of the square moved from.
+     * @param toXIdx             The x index of the square moved to.
+     * @param toYIdx             The y index of the square moved to.
+     * @param capturedPieceInt   The int value of the piece at the square moved
+     *                           to, or 0 if it's empty. For a castling move,
+     *                           the rook being castled with.
+     * @param promotedToPieceInt The int value of the piece a pawn is promoted
+     *                           to, or 0 if the move isn't a promotion.
+     * @return                   The packed move.
+     */
+    public static int encode(final int movedPieceInt, final int fromXIdx, final int fromYIdx, final int toXIdx,
+                             final int toYIdx, final int capturedPieceInt, final int promotedToPieceInt) {
+        int move = (fromXIdx * 8 + fromYIdx)
+                   | ((toXIdx * 8 + toYIdx) << TO_SQUARE_SHIFT)
+                   | (PIECE_CODES[movedPieceInt] << MOVED_PIECE_SHIFT)
+                   | (PIECE_CODES[capturedPieceInt] << CAPTURED_PIECE_SHIFT)
+                   | (PIECE_CODES[promotedToPieceInt] << PROMOTED_PIECE_SHIFT);
+
+        /* A king "capturing" a rook of its own color is a castling move. */
+        if (capturedPieceInt != 0) {
+            boolean sameColor = (movedPieceInt & WHITE) == (capturedPieceInt & WHITE);
+            if (sameColor && (movedPieceInt & KING) != 0 && (capturedPieceInt & ROOK) != 0) {
+                move |= CASTLING_FLAG;
+            } else {
+                move |= CAPTURE_FLAG;
+            }
+        }
+        if (promotedToPieceInt != 0) {
+            move |= PROMOTION_FLAG;
+        }
+
+        return move;
+    }
+
+    /**
+     * Packs a move given as an int[7] move array.
+     *
+     * @param moveArray An int[7] array holding the moved piece, from x and y
+     *                  indexes, to x and y indexes, captured piece and
+     *                  promoted-to piece.
+     * @return          The packed move.
+     */
+    public static int encode(final int[] moveArray) {
+        return encode(moveArray[0], moveArray[1], moveArray[2], moveArray[3], moveArray[4], moveArray[5],
+                      moveArray[6]);
+    }
+
+    /**
+     * Packs a move given as a Chessboard.Move object. A castling move is
+     * packed as the king moving to its rook's square.
+     *
+     * @param moveObj The Chessboard.Move object to pack.
+     * @return        The packed move.
+     */
+    public static int encode(final Chessboard.Move moveObj) {
+        int movedPieceInt = moveObj.movingPiece().pieceInt();
+
+        if (moveObj.isCastlingKingside() || moveObj.isCastlingQueenside()) {
+            int rookXIdx = moveObj.isCastlingKingside() ? 7 : 0;
+            int rookInt = (movedPieceInt & (WHITE | BLACK)) | ROOK;
+            return encode(movedPieceInt, moveObj.fromXCoord(), moveObj.fromYCoord(), rookXIdx, moveObj.fromYCoord(),
+                          rookInt, 0);
+        }
+
+        return encode(movedPieceInt, moveObj.fromXCoord(), moveObj.fromYCoord(), moveObj.toXCoord(),
+                      moveObj.toYCoord(), moveObj.capturedPieceInt(), moveObj.promotedToPieceInt());
+    }
+
+    /**
+     * Unpacks a move into an int[7] move array.
+     *
+     * @param move      The packed move.
+     * @param moveArray The int[7] array to save the move's values to.
+     * @return          The moveArray argument.
+     */
+    public static int[] decode(final int move, final int[] moveArray) {
+        moveArray[0] = movedPieceInt(move);
+        moveArray[1] = fromXIdx(move);
+        moveArray[2] = fromYIdx(move);
+        moveArray[3] = toXIdx(move);
+        moveArray[4] = toYIdx(move);
+        moveArray[5] = capturedPieceInt(move);
+        moveArray[6] = promotedToPieceInt(move);
+        return moveArray;
+    }
+
+    /**
+     * Unpacks a move into a Chessboard.Move object, as used by the GUI code.
+     *
+     * @param move       The packed move.
+     * @param chessboard The Chessboard object that the move is to be made on,
+     *                   which holds the Piece object for the piece moving.
+     * @return           A Chessboard.Move object describing the move.
+     */
+    public static Chessboard.Move toChessboardMove(final int move, final Chessboard chessboard) {
+        boolean isCastling = isCastling(move);
+
+        return new Chessboard.Move(chessboard.getPieceAtCoords(fromXIdx(move), fromYIdx(move)),
+                                   fromXIdx(move), fromYIdx(move), toXIdx(move), toYIdx(move),
+                                   capturedPieceInt(move), isCastling && toXIdx(move) == 7,
+                                   isCastling && toXIdx(move) == 0, promotedToPieceInt(move));
+    }
+
+    /**
+     * Returns the square moved from.
+     *
+     * @param move The packed move.
+     * @return     The square, as xIdx * 8 + yIdx.
+     */
+    public static int fromSquare(final int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /**
+     * Returns the square moved to.
+     *
+     * @param move The packed move.
+     * @return     The square, as xIdx * 8 + yIdx.
+     */
+    public static int toSquare(final int move) {
+        return (move >>> TO_SQUARE_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Returns the x index of the square moved from.
+     *
+     * @param move The packed move.
+     * @return     The x index.
+     */
+    public static int fromXIdx(final int move) {
+        return fromSquare(move) >>> 3;
+    }
+
+    /**
+     * Returns the y index of the square moved from.
+     *
+     * @param move The packed move.
+     * @return     The y index.
+     */
+    public static int fromYIdx(final int move) {
+        return move & 0x7;
+    }
+
+    /**
+     * Returns the x index of the square moved to.
+     *
+     * @param move The packed move.
+     * @return     The x index.
+     */
+    public static int toXIdx(final int move) {
+        return toSquare(move) >>> 3;
+    }
+
+    /**
+     * Returns the y index of the square moved to.
+     *
+     * @param move The packed move.
+     * @return     The y index.
+     */
+    public static int toYIdx(final int move) {
+        return (move >>> TO_SQUARE_SHIFT) & 0x7;
+    }
+
+    /**
+     * Returns the int value of the piece moved.
+     *
+     * @param move The packed move.
+     * @return     The piece int.
+     */
+    public static int movedPieceInt(final int move) {
+        return PIECE_INTS[(move >>> MOVED_PIECE_SHIFT) & PIECE_CODE_MASK];
+    }
+
+    /**
+     * Returns the int value of the piece captured. For a castling move, this
+     * is the rook being castled with.
+     *
+     * @param move The packed move.
+     * @return     The piece int, or 0 if no piece is captured.
+     */
+    public static int capturedPieceInt(final int move) {
+        return PIECE_INTS[(move >>> CAPTURED_PIECE_SHIFT) & PIECE_CODE_MASK];
+    }
+
+    /**
+     * Returns the int value of the piece a pawn is promoted to.
+     *
+     * @param move The packed move.
+     * @return     The piece int, or 0 if the move isn't a promotion.
+     */
+    public static int promotedToPieceInt(final int move) {
+        return PIECE_INTS[(move >>> PROMOTED_PIECE_SHIFT) & PIECE_CODE_MASK];
+    }
+
+    /**
+     * Tests whether the move captures an opposing piece.
+     *
+     * @param move The packed move.
+     * @return     True if the move is a capture, false otherwise.
+     */
+    public static boolean isCapture(final int move) {
+        return (move & CAPTURE_FLAG) != 0;
+    }
+
+    /**
+     * Tests whether the move promotes a pawn.
+     *
+     * @param move The packed move.
+     * @return     True if the move is a promotion, false otherwise.
+     */
+    public static boolean isPromotion(final int move) {
+        return (move & PROMOTION_FLAG) != 0;
+    }
+
+    /**
+     * Tests whether the move is castling.
+     *
+     * @param move The packed move.
+     * @return     True if the move is castling, false otherwise.
+     */
+    public static boolean isCastling(final int move) {
+        return (move & CASTLING_FLAG) != 0;
+    }
+}
@@ -0,0 +1,243 @@
+package org.kmfahey.jchessgame;
+
+/**
+ * A command-line tool that measures what rejecting illegal moves with
+ * exceptions cost the search, compared with the status codes returned by
+ * BoardArrays.checkMoveLegality(). For each of a few positions in which
+ * the side to move is in check, or has pinned pieces, it times two ways of
+ * testing the same moves, and reports the nanoseconds each took per move.
+ *
+ * The first way calls checkMoveLegality() and compares the status code it
+ * returns, as the search does. The second is the way the search used to do
+ * it: the method that tests the move throws a KingIsInCheckException, with
+ * the message algorithmCallExecutor() used to build, if the move would
+ * leave the king in check, and its caller catches it. Both make the same
+ * test, so the difference between them is what the exceptions cost.
+ *
+ * The moves tested in each position are every move of a piece of the side
+ * to move to a square that doesn't hold one of its own pieces or the
+ * opposing king, whether or not the piece could actually move there, so
+ * that the same moves are tested however the move generators change. In
+ * these positions most of them would leave the king in check.
+ *
+ * Usage: java org.kmfahey.jchessgame.MoveLegalityBenchmark [repetitions]
+ *
+ * The number of times each position's moves are tested defaults to 2000.
+ *
+ * @see BoardArrays#checkMoveLegality
+ */
+public final class MoveLegalityBenchmark {
+
+    /* The number of times each position's moves are tested if none is given
+       on the command line. */
+    private static final int DEFAULT_REPETITIONS = 2000;
+
+    /* The positions timed, as the piece placement and side to move fields
+       of FEN strings: White checkmated, White in check from a bishop, Black
+       in check from a bishop, and two positions with pieces pinned to
+       their kings. */
+    private static final String[][] POSITIONS = {
+        {"rnb1kbnr/pppp1ppp/8/4p3/5PPq/8/PPPPP2P/RNBQKBNR", "w"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1", "w"},
+        {"rnbqkbnr/ppp2ppp/8/1B1pp3/4P3/8/PPPP1PPP/RNBQK1NR", "b"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8", "w"},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R", "w"}
+    };
+
+    /* Summed from the test results, so the JIT compiler can't discard the
+       tests as unused. */
+    private static long resultsSum;
+
+    private MoveLegalityBenchmark() { }
+
+    /**
+     * Runs the benchmark and prints one line of results per position.
+     *
+     * @param args The number of times to test each position's moves,
+     *             optional.
+     */
+    public static void main(final String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+        int[][][] boardArrays = new int[POSITIONS.length][][];
+        int[][] movesArrays = new int[POSITIONS.length][];
+        int[] movesCounts = new int[POSITIONS.length];
+
+        for (int positionIdx = 0; positionIdx < POSITIONS.length; positionIdx++) {
+            boardArrays[positionIdx] = placementToBoardArray(POSITIONS[positionIdx][0]);
+            movesArrays[positionIdx] = new int[16 * 64];
+            movesCounts[positionIdx] = generateCandidateMoves(boardArrays[positionIdx], movesArrays[positionIdx],
+                                                              POSITIONS[positionIdx][1].equals("w")
+                                                              ? BoardArrays.WHITE : BoardArrays.BLACK);
+        }
+
+        System.out.println("position,moves,illegal_moves,status_code_ns_per_move,exception_ns_per_move,ratio");
+
+        /* The first pass is a warm-up, so neither way's timing is inflated by
+           the JIT compiler's work, and its results aren't printed. */
+        for (int passIdx = 0; passIdx < 2; passIdx++) {
+            for (int positionIdx = 0; positionIdx < POSITIONS.length; positionIdx++) {
+                int[][] boardArray = boardArrays[positionIdx];
+                int[] movesArray = movesArrays[positionIdx];
+                int movesCount = movesCounts[positionIdx];
+                int illegalMovesCount = 0;
+
+                long startNanos = System.nanoTime();
+                for (int repetitionIdx = 0; repetitionIdx < repetitions; repetitionIdx++) {
+                    illegalMovesCount = testWithStatusCodes(boardArray, movesArray, movesCount);
+                }
+                double statusCodeNanos = (double) (System.nanoTime() - startNanos) / repetitions / movesCount;
+                resultsSum += illegalMovesCount;
+
+                startNanos = System.nanoTime();
+                for (int repetitionIdx = 0; repetitionIdx < repetitions; repetitionIdx++) {
+                    illegalMovesCount = testWithExceptions(boardArray, movesArray, movesCount);
+                }
+                double exceptionNanos = (double) (System.nanoTime() - startNanos) / repetitions / movesCount;
+                resultsSum += illegalMovesCount;
+
+                if (passIdx == 1) {
+                    System.out.printf("%d,%d,%d,%.1f,%.1f,%.1f%n", positionIdx + 1, movesCount, illegalMovesCount,
+                                      statusCodeNanos, exceptionNanos, exceptionNanos / statusCodeNanos);
+                }
+            }
+        }
+    }
+
+    /*
+     * Tests each move with checkMoveLegality(), as the search does.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @param movesArray The packed moves to test.
+     * @param movesCount The number of moves in movesArray.
+     * @return           The number of moves that would leave the king in
+     *                   check.
+     */
+    private static int testWithStatusCodes(final int[][] boardArray, final int[] movesArray, final int movesCount) {
+        int illegalMovesCount = 0;
+
+        for (int moveIdx = 0; moveIdx < movesCount; moveIdx++) {
+            if (BoardArrays.checkMoveLegality(boardArray, movesArray[moveIdx], 0, BoardArrays.BLACK)
+                != BoardArrays.MOVE_IS_LEGAL) {
+                illegalMovesCount++;
+            }
+        }
+
+        return illegalMovesCount;
+    }
+
+    /*
+     * Tests each move with throwIfKingLeftInCheck(), catching the exception
+     * it throws for an illegal move, as the search used to.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @param movesArray The packed moves to test.
+     * @param movesCount The number of moves in movesArray.
+     * @return           The number of moves that would leave the king in
+     *                   check.
+     */
+    private static int testWithExceptions(final int[][] boardArray, final int[] movesArray, final int movesCount) {
+        int illegalMovesCount = 0;
+
+        for (int moveIdx = 0; moveIdx < movesCount; moveIdx++) {
+            try {
+                throwIfKingLeftInCheck(boardArray, movesArray[moveIdx]);
+            } catch (KingIsInCheckException exception) {
+                illegalMovesCount++;
+            }
+        }
+
+        return illegalMovesCount;
+    }
+
+    /*
+     * Tests a move as algorithmCallExecutor() used to, throwing an exception
+     * if it would leave the king in check.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @param move       The packed move to test.
+     * @throws KingIsInCheckException If the move would leave the moving
+     *                                side's king in check.
+     */
+    private static void throwIfKingLeftInCheck(final int[][] boardArray, final int move)
+            throws KingIsInCheckException {
+        String thisColorStr = (MoveEncoding.movedPieceInt(move) & BoardArrays.WHITE) != 0 ? "white" : "black";
+
+        if (BoardArrays.checkMoveLegality(boardArray, move, 0, BoardArrays.BLACK) != BoardArrays.MOVE_IS_LEGAL) {
+            throw new KingIsInCheckException("Move would place " + thisColorStr + "'s king in check or "
+                                             + thisColorStr + "'s King is in check and this move doesn't fix that. "
+                                             + "Move can't be made.");
+        }
+    }
+
+    /*
+     * Packs every move of a piece of the given color to a square that
+     * doesn't hold one of its own pieces or the opposing king into
+     * movesArray.
+     *
+     * @param boardArray     The int[8][8] array that represents the
+     *                       chessboard.
+     * @param movesArray     The int[] array to fill packed moves into.
+     * @param colorsTurnItIs The color whose moves are packed.
+     * @return               The number of moves packed.
+     */
+    private static int generateCandidateMoves(final int[][] boardArray, final int[] movesArray,
+                                              final int colorsTurnItIs) {
+        int movesCount = 0;
+
+        for (int fromSquare = 0; fromSquare < 64; fromSquare++) {
+            int pieceInt = boardArray[fromSquare >>> 3][fromSquare & 7];
+            if ((pieceInt & colorsTurnItIs) == 0) {
+                continue;
+            }
+            for (int toSquare = 0; toSquare < 64; toSquare++) {
+                int capturedPieceInt = boardArray[toSquare >>> 3][toSquare & 7];
+                if (toSquare == fromSquare || (capturedPieceInt & colorsTurnItIs) != 0
+                    || (capturedPieceInt & BoardArrays.KING) != 0) {
+                    continue;
+                }
+                movesArray[movesCount++] = MoveEncoding.encode(pieceInt, fromSquare >>> 3, fromSquare & 7,
+                                                               toSquare >>> 3, toSquare & 7, capturedPieceInt, 0);
+            }
+        }
+
+        return movesCount;
+    }
+
+    /*
+     * Builds a boardArray from the piece placement field of a FEN string,
+     * with White playing from the bottom of the board. Knights on the
+     * queenside half of the board face left and the rest right, as in the
+     * starting position.
+     *
+     * @param placement The piece placement field.
+     * @return          The int[8][8] array that represents the chessboard.
+     */
+    private static int[][] placementToBoardArray(final String placement) {
+        int[][] boardArray = new int[8][8];
+        String[] ranks = placement.split("/");
+
+        /* The ranks are listed from the 8th to the 1st, which with White
+           playing from the bottom is from yIdx 0 to yIdx 7. */
+        for (int yIdx = 0; yIdx < 8; yIdx++) {
+            int xIdx = 0;
+            for (char placementChar : ranks[yIdx].toCharArray()) {
+                if (Character.isDigit(placementChar)) {
+                    xIdx += placementChar - '0';
+                    continue;
+                }
+                int color = Character.isUpperCase(placementChar) ? BoardArrays.WHITE : BoardArrays.BLACK;
+                boardArray[xIdx][yIdx] = color | switch (Character.toLowerCase(placementChar)) {
+                    case 'k' -> BoardArrays.KING;
+                    case 'q' -> BoardArrays.QUEEN;
+                    case 'r' -> BoardArrays.ROOK;
+                    case 'b' -> BoardArrays.BISHOP;
+                    case 'n' -> BoardArrays.KNIGHT | (xIdx < 4 ? BoardArrays.LEFT : BoardArrays.RIGHT);
+                    default -> BoardArrays.PAWN;
+                };
+                xIdx++;
+            }
+        }
+
+        return boardArray;
+    }
+}
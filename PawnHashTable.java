@@ -0,0 +1,156 @@
+package org.kmfahey.jchessgame;
+
+import java.util.Arrays;
+
+/**
+ * Implements a fixed-size hash table of pawn structure scores for the
+ * evaluation, keyed on a position's pawn key: the Zobrist hash of its pawns
+ * alone, which PositionState keeps alongside the full hash. Pawns move far
+ * less often than the other pieces, so most positions the search evaluates
+ * share their pawns with a position it has already evaluated, and the table
+ * lets evaluateBoard() look up the pawn terms that depend only on the pawns
+ * instead of recounting them.
+ *
+ * Each MinimaxRunner has a table of its own, so unlike TranspositionTable it
+ * isn't written by more than one thread and its entries are stored plainly:
+ * a key and an int of data, in two arrays. Every slot is always replaced.
+ * The table counts its probes and hits, so its hit rate can be reported.
+ *
+ * @see PositionState#getPawnKey
+ * @see MinimaxRunner
+ */
+public class PawnHashTable {
+
+    /** The default size of a pawn hash table, in megabytes. */
+    public static final int DEFAULT_MEGABYTES = 1;
+
+    /* Each entry is a long key and an int of data. */
+    private static final int BYTES_PER_ENTRY = 12;
+
+    /* Set on the data of every stored entry, so an empty slot is never taken
+       for the entry of a position with no pawns, whose key is 0. */
+    private static final int OCCUPIED_FLAG = 1 << 30;
+
+    /* The two halves of every entry. */
+    private final long[] entryKeys;
+    private final int[] entryData;
+
+    /* The number of slots less one, used to mask a key down to a slot
+       index. */
+    private final int slotMask;
+
+    /* The number of calls to probe() since the counters were last reset,
+       and the number of those that found an entry. */
+    private long probesCount;
+    private long hitsCount;
+
+    /**
+     * Initializes the PawnHashTable object, allocating the largest
+     * power-of-two number of entries that fits in the given budget.
+     *
+     * @param megabytes The memory budget for the table, in megabytes.
+     * @throws IllegalArgumentException If megabytes is less than 1.
+     */
+    public PawnHashTable(final int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("PawnHashTable() called with a memory budget of less than 1MB");
+        }
+
+        long budgetEntries = (long) megabytes * 1024L * 1024L / BYTES_PER_ENTRY;
+        int entriesCount = (int) Long.highestOneBit(Math.min(budgetEntries, 1L << 30));
+
+        entryKeys = new long[entriesCount];
+        entryData = new int[entriesCount];
+        slotMask = entriesCount - 1;
+    }
+
+    /**
+     * Looks up the data stored for a pawn key.
+     *
+     * @param pawnKey The pawn key of the position.
+     * @return        The data stored, or -1 if there's no entry for the key.
+     */
+    public int probe(final long pawnKey) {
+        int slotIdx = (int) (pawnKey ^ (pawnKey >>> 32)) & slotMask;
+
+        probesCount++;
+        if (entryData[slotIdx] != 0 && entryKeys[slotIdx] == pawnKey) {
+            hitsCount++;
+            return entryData[slotIdx] & ~OCCUPIED_FLAG;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores data for a pawn key, replacing whatever was in its slot.
+     *
+     * @param pawnKey The pawn key of the position.
+     * @param data    The data to store. It must be between 0 and
+     *                2<sup>30</sup> - 1.
+     */
+    public void store(final long pawnKey, final int data) {
+        int slotIdx = (int) (pawnKey ^ (pawnKey >>> 32)) & slotMask;
+
+        entryKeys[slotIdx] = pawnKey;
+        entryData[slotIdx] = data | OCCUPIED_FLAG;
+    }
+
+    /**
+     * Empties the table. It's needed when the data stored for a key would
+     * no longer be computed the same way, as when the color playing from the
+     * top of the board changes.
+     */
+    public void clear() {
+        Arrays.fill(entryData, 0);
+    }
+
+    /**
+     * Accessor for the number of calls to probe() since the counters were
+     * last reset.
+     *
+     * @return The number of probes.
+     */
+    public long getProbesCount() {
+        return probesCount;
+    }
+
+    /**
+     * Accessor for the number of calls to probe() since the counters were
+     * last reset that found an entry.
+     *
+     * @return The number of hits.
+     */
+    public long getHitsCount() {
+        return hitsCount;
+    }
+
+    /**
+     * Returns the fraction of calls to probe() since the counters were last
+     * reset that found an entry.
+     *
+     * @return The hit rate, or 0 if there were no probes.
+     */
+    public double getHitRate() {
+        return probesCount == 0 ? 0D : (double) hitsCount / probesCount;
+    }
+
+    /**
+     * Adds another table's counters to this table's, so the hit rate of
+     * several tables used by one search can be reported as one.
+     *
+     * @param otherTable The table whose counters to add.
+     */
+    public void addCounters(final PawnHashTable otherTable) {
+        probesCount += otherTable.probesCount;
+        hitsCount += otherTable.hitsCount;
+    }
+
+    /**
+     * Sets the probe and hit counters back to 0.
+     */
+    public void resetCounters() {
+        probesCount = 0;
+        hitsCount = 0;
+    }
+}
@@ -0,0 +1,560 @@
+package org.kmfahey.jchessgame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A command-line tool that counts the leaf nodes of the tree of legal moves
+ * from a position to a fixed depth (a "perft" count), for verifying the move
+ * generator against published counts and measuring how fast it runs. Moves
+ * are generated with BoardArrays.generatePossibleMoves() (or with
+ * Bitboards.generateLegalMoves(), if --bitboards is given) and made and taken
+ * back on a PositionState, the same way the minimax search does.
+ *
+ * Usage: java org.kmfahey.jchessgame.Perft [--divide] [--bitboards]
+ * [--threads n] [--hash megabytes] depth [position]
+ *
+ * Usage: java org.kmfahey.jchessgame.Perft [--bitboards] [--threads n]
+ * [--hash megabytes] --suite suiteFile [maxDepth]
+ *
+ * The position is either the path to a boardArray file or a FEN string, and
+ * defaults to the starting position. A boardArray file is taken to have White
+ * playing from the bottom and to move, with castling rights for every king and
+ * rook still on its starting square. With --divide, the count under each root
+ * move is printed as well as the total. With --suite, each line of the suite
+ * file is a FEN string followed by the expected counts, in the usual
+ * "fen ;D1 20 ;D2 400" format, and each count up to maxDepth (default 4) is
+ * checked.
+ *
+ * With --threads, the subtrees two plies below the root are counted in
+ * parallel as ForkJoinPool tasks, each on its own copy of the board. With
+ * --hash, the counts of subtrees are saved to a PerftHashTable of the given
+ * size, shared by every thread, and a subtree that's reached again is looked
+ * up instead of counted. Together they make counts to depth 6 or 7 practical.
+ *
+ * This engine doesn't implement en passant capture, so published counts
+ * that include en passant captures won't be matched.
+ *
+ * @see BoardArrays#generatePossibleMoves
+ * @see Bitboards#generateLegalMoves
+ */
+public final class Perft {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+    private static final int RIGHT = BoardArrays.RIGHT;
+    private static final int LEFT = BoardArrays.LEFT;
+
+    /** The FEN string of the starting position. */
+    public static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /* The depth the suite mode checks counts to if none is given on the
+       command line. */
+    private static final int DEFAULT_SUITE_DEPTH = 4;
+
+    /* Long enough to hold the moves of any legal position. */
+    private static final int MOVES_ARRAY_LENGTH = 256;
+
+    /* The number of plies below the root that a parallel count expands on
+       the calling thread, before counting the subtrees below them as
+       separate tasks. From a typical position two plies give several hundred
+       tasks, enough to keep the threads evenly loaded. */
+    private static final int SPLIT_PLIES = 2;
+
+    /* The position counted from, and the colors and the generator used. A FEN
+       position always has White playing from the bottom. */
+    private final PositionState position = new PositionState();
+    private final int colorOnTop;
+    private final boolean useBitboards;
+
+    /* One moves array per remaining depth, so a level's moves aren't
+       overwritten by the levels below it. It grows as deeper counts are
+       asked for. */
+    private int[][] movesArrays = new int[0][];
+
+    /* The pool parallel counts are run on, or null if counts are run on the
+       calling thread; and the table of subtree counts, or null if none is
+       used. Both can be shared between Perft objects. */
+    private ForkJoinPool taskPool;
+    private PerftHashTable hashTable;
+
+    /**
+     * Initializes the Perft object with a position. The boardArray is
+     * modified while counting, and restored afterward.
+     *
+     * @param boardArray      The int[8][8] array that represents the
+     *                        chessboard.
+     * @param colorToMove     The color whose turn it is.
+     * @param castlingRights  The castling rights flags in effect.
+     * @param colorOnTopVal   The color playing from the top of the board.
+     * @param useBitboardsVal Whether to generate moves with Bitboards rather
+     *                        than BoardArrays.
+     * @throws IllegalArgumentException If either color has no king, or more
+     *                                  than PositionState.MAXIMUM_PIECES
+     *                                  pieces.
+     */
+    public Perft(final int[][] boardArray, final int colorToMove, final int castlingRights, final int colorOnTopVal,
+                 final boolean useBitboardsVal) throws IllegalArgumentException {
+        if (BoardArrays.findKingSquare(boardArray, WHITE) == -1
+            || BoardArrays.findKingSquare(boardArray, BLACK) == -1) {
+            throw new IllegalArgumentException("Perft() called with a boardArray that's missing a king");
+        }
+        colorOnTop = colorOnTopVal;
+        useBitboards = useBitboardsVal;
+        if (useBitboards) {
+            position.setBitboardPosition(new BitboardPosition());
+        }
+        position.setPosition(boardArray, colorToMove, castlingRights, colorOnTop);
+    }
+
+    /**
+     * Instances a Perft object with the position described by a FEN string.
+     * The en passant square and the move counters are ignored.
+     *
+     * @param fen             The FEN string.
+     * @param useBitboardsVal Whether to generate moves with Bitboards rather
+     *                        than BoardArrays.
+     * @return                The Perft object.
+     * @throws IllegalArgumentException If the FEN string can't be parsed, or
+     *                                  describes a position without both
+     *                                  kings.
+     */
+    public static Perft fromFen(final String fen, final boolean useBitboardsVal) throws IllegalArgumentException {
+        String[] fields = fen.trim().split("\\s+");
+        String[] ranks = fields[0].split("/");
+        if (fields.length < 2 || ranks.length != 8) {
+            throw new IllegalArgumentException("FEN string \"" + fen + "\" doesn't have 8 ranks and a side to move");
+        }
+
+        /* The ranks are listed from the 8th to the 1st, which with White
+           playing from the bottom is from yIdx 0 to yIdx 7. */
+        int[][] boardArray = new int[8][8];
+        for (int yIdx = 0; yIdx < 8; yIdx++) {
+            int xIdx = 0;
+            for (char fenChar : ranks[yIdx].toCharArray()) {
+                if (Character.isDigit(fenChar)) {
+                    xIdx += fenChar - '0';
+                    continue;
+                }
+                if (xIdx > 7) {
+                    break;
+                }
+                boardArray[xIdx][yIdx] = fenCharToPieceInt(fenChar, xIdx, fen);
+                xIdx++;
+            }
+            if (xIdx != 8) {
+                throw new IllegalArgumentException("FEN string \"" + fen + "\" has a rank that isn't 8 squares wide");
+            }
+        }
+
+        int colorToMove = switch (fields[1]) {
+            case "w" -> WHITE;
+            case "b" -> BLACK;
+            default -> throw new IllegalArgumentException("FEN string \"" + fen + "\" has an invalid side to move");
+        };
+
+        int castlingRights = 0;
+        if (fields.length > 2) {
+            for (char fenChar : fields[2].toCharArray()) {
+                castlingRights |= switch (fenChar) {
+                    case 'K' -> BoardArrays.WHITE_KINGSIDE_CASTLING;
+                    case 'Q' -> BoardArrays.WHITE_QUEENSIDE_CASTLING;
+                    case 'k' -> BoardArrays.BLACK_KINGSIDE_CASTLING;
+                    case 'q' -> BoardArrays.BLACK_QUEENSIDE_CASTLING;
+                    default -> 0;
+                };
+            }
+        }
+
+        return new Perft(boardArray, colorToMove, castlingRights, BLACK, useBitboardsVal);
+    }
+
+    /*
+     * Translates a FEN piece letter to a piece int. Knights on the queenside
+     * half of the board are given LEFT chirality and the rest RIGHT, as the
+     * starting position has them.
+     */
+    private static int fenCharToPieceInt(final char fenChar, final int xIdx, final String fen)
+            throws IllegalArgumentException {
+        int color = Character.isUpperCase(fenChar) ? WHITE : BLACK;
+        int pieceInt = switch (Character.toLowerCase(fenChar)) {
+            case 'k' -> KING;
+            case 'q' -> QUEEN;
+            case 'r' -> ROOK;
+            case 'b' -> BISHOP;
+            case 'n' -> KNIGHT | (xIdx < 4 ? LEFT : RIGHT);
+            case 'p' -> PAWN;
+            default -> throw new IllegalArgumentException("FEN string \"" + fen + "\" has an invalid piece letter '"
+                                                          + fenChar + "'");
+        };
+        return color | pieceInt;
+    }
+
+    /**
+     * Mutator method for the ForkJoinPool that counts are run on. When one is
+     * set, the subtrees SPLIT_PLIES plies below the root are counted in
+     * parallel as tasks in the pool, each on its own copy of the board.
+     *
+     * @param taskPoolVal The ForkJoinPool, or null to count on the calling
+     *                    thread.
+     */
+    public void setTaskPool(final ForkJoinPool taskPoolVal) {
+        taskPool = taskPoolVal;
+    }
+
+    /**
+     * Mutator method for the table of subtree counts. When one is set, the
+     * count of every subtree at least two plies deep is saved to it, and a
+     * subtree found in it isn't counted again. It's safe to share between
+     * the tasks of a parallel count, and between Perft objects.
+     *
+     * @param hashTableVal The PerftHashTable, or null to use none.
+     */
+    public void setHashTable(final PerftHashTable hashTableVal) {
+        hashTable = hashTableVal;
+    }
+
+    /**
+     * Counts the leaf nodes of the tree of legal moves to the given depth.
+     *
+     * @param depth The depth to count to.
+     * @return      The number of leaf nodes.
+     * @throws IllegalStateException If a parallel count is interrupted or
+     *                               one of its tasks fails.
+     */
+    public long countLeafNodes(final int depth) throws IllegalStateException {
+        ensureMovesArrays(depth);
+        if (taskPool != null && depth > SPLIT_PLIES) {
+            return countLeafNodesParallel(depth);
+        }
+        return countLeafNodesRecursive(depth);
+    }
+
+    /**
+     * Counts the leaf nodes under each legal move of the position, to the
+     * given depth, and prints one line per move followed by the total. The
+     * counts under the moves add up to countLeafNodes(depth).
+     *
+     * @param depth The depth to count to, counting the root moves as the
+     *              first ply. It must be at least 1.
+     * @return      The total number of leaf nodes.
+     */
+    public long divide(final int depth) {
+        ensureMovesArrays(depth);
+        int[] movesArray = movesArrays[depth];
+        int movesCount = generateMoves(movesArray, position.getColorToMove());
+        long totalNodes = 0L;
+
+        for (int moveIdx = 0; moveIdx < movesCount; moveIdx++) {
+            int move = movesArray[moveIdx];
+            if (!isLegal(move)) {
+                continue;
+            }
+            position.makeMove(move);
+            long nodes = taskPool != null && depth - 1 > SPLIT_PLIES ? countLeafNodesParallel(depth - 1)
+                                                                      : countLeafNodesRecursive(depth - 1);
+            position.unmakeMove();
+            totalNodes += nodes;
+            System.out.println(moveToString(move) + ": " + nodes);
+        }
+        System.out.println();
+        System.out.println("Nodes searched: " + totalNodes);
+
+        return totalNodes;
+    }
+
+    /*
+     * The recursive step of countLeafNodes(). At the last ply the legal moves
+     * are counted without being made, since making them wouldn't change the
+     * count.
+     */
+    private long countLeafNodesRecursive(final int depth) {
+        if (depth == 0) {
+            return 1L;
+        }
+
+        /* The counts of subtrees one ply deep aren't worth saving, since
+           generating the moves costs about as much as looking them up. */
+        long positionKey = position.getPositionKey();
+        if (hashTable != null && depth > 1) {
+            long savedNodes = hashTable.probe(positionKey, depth);
+            if (savedNodes >= 0L) {
+                return savedNodes;
+            }
+        }
+
+        int[] movesArray = movesArrays[depth];
+        int movesCount = generateMoves(movesArray, position.getColorToMove());
+        long nodes = 0L;
+
+        for (int moveIdx = 0; moveIdx < movesCount; moveIdx++) {
+            int move = movesArray[moveIdx];
+            if (!isLegal(move)) {
+                continue;
+            }
+            if (depth == 1) {
+                nodes++;
+                continue;
+            }
+            position.makeMove(move);
+            nodes += countLeafNodesRecursive(depth - 1);
+            position.unmakeMove();
+        }
+
+        if (hashTable != null && depth > 1) {
+            hashTable.store(positionKey, depth, nodes);
+        }
+        return nodes;
+    }
+
+    /*
+     * Counts the leaf nodes to the given depth by expanding the first
+     * SPLIT_PLIES plies on this thread, and counting the subtree under each
+     * position reached as a task in the pool. The results are added up once
+     * every task has finished.
+     */
+    private long countLeafNodesParallel(final int depth) throws IllegalStateException {
+        List<Callable<Long>> subtreeTasks = new ArrayList<>();
+        collectSubtreeTasks(SPLIT_PLIES, depth, subtreeTasks);
+
+        long nodes = 0L;
+        try {
+            for (Future<Long> subtreeFuture : taskPool.invokeAll(subtreeTasks)) {
+                nodes += subtreeFuture.get();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("parallel perft count interrupted", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("perft subtree task failed", exception.getCause());
+        }
+
+        return nodes;
+    }
+
+    /*
+     * Walks the legal moves plies deep, and adds a task for each position
+     * reached that counts its subtree to the remaining depth. Each task
+     * counts on its own Perft object, set up from a copy of the board, and
+     * shares this object's hash table.
+     */
+    private void collectSubtreeTasks(final int plies, final int depth, final List<Callable<Long>> subtreeTasks) {
+        if (plies == 0) {
+            int[][] taskBoardArray = BoardArrays.copyBoardArray(position.getBoardArray());
+            int taskColorToMove = position.getColorToMove();
+            int taskCastlingRights = position.getCastlingRights();
+            subtreeTasks.add(() -> {
+                Perft taskPerft = new Perft(taskBoardArray, taskColorToMove, taskCastlingRights, colorOnTop,
+                                            useBitboards);
+                taskPerft.setHashTable(hashTable);
+                return taskPerft.countLeafNodes(depth);
+            });
+            return;
+        }
+
+        int[] movesArray = movesArrays[depth];
+        int movesCount = generateMoves(movesArray, position.getColorToMove());
+        for (int moveIdx = 0; moveIdx < movesCount; moveIdx++) {
+            int move = movesArray[moveIdx];
+            if (!isLegal(move)) {
+                continue;
+            }
+            position.makeMove(move);
+            collectSubtreeTasks(plies - 1, depth - 1, subtreeTasks);
+            position.unmakeMove();
+        }
+    }
+
+    /*
+     * Generates the moves of the given color with the chosen generator.
+     */
+    private int generateMoves(final int[] movesArray, final int color) {
+        if (useBitboards) {
+            return Bitboards.generateLegalMoves(position.getBitboardPosition(), movesArray, color, colorOnTop,
+                                                position.getCastlingRights());
+        }
+        return BoardArrays.generatePossibleMoves(position.getBoardArray(), movesArray, color, colorOnTop,
+                                                 position.getPieceSquares(color), position.getPiecesCount(color),
+                                                 position.getKingSquare(color));
+    }
+
+    /*
+     * Tests whether a generated move is legal. Both generators only emit
+     * moves that don't leave the king in check, and the bitboard generator
+     * checks castling rights too, so only the boardArray generator's castling
+     * moves need to be tested.
+     */
+    private boolean isLegal(final int move) {
+        if (useBitboards || !MoveEncoding.isCastling(move)) {
+            return true;
+        }
+        int legality = BoardArrays.checkMoveLegality(position.getBoardArray(), move, position.getCastlingRights(),
+                                                     position.getKingSquare(position.getColorToMove()), colorOnTop);
+        return legality == BoardArrays.MOVE_IS_LEGAL;
+    }
+
+    /*
+     * Allocates a moves array for each ply up to the given depth.
+     */
+    private void ensureMovesArrays(final int depth) {
+        if (movesArrays.length > depth) {
+            return;
+        }
+        movesArrays = new int[depth + 1][MOVES_ARRAY_LENGTH];
+    }
+
+    /**
+     * Renders a packed move in the from-square, to-square form perft tools
+     * conventionally print, such as "e2e4" or "a7a8q". A castling move is
+     * rendered as the king's move, such as "e1g1".
+     *
+     * @param move The packed move.
+     * @return     The move as a String.
+     */
+    public static String moveToString(final int move) {
+        int toSquare = MoveEncoding.isCastling(move)
+                       ? BitboardPosition.castlingKingToSquare(MoveEncoding.fromSquare(move),
+                                                               MoveEncoding.toSquare(move))
+                       : MoveEncoding.toSquare(move);
+        String moveStr = BoardArrays.coordsToAlgNotn(MoveEncoding.fromXIdx(move), MoveEncoding.fromYIdx(move))
+                         + BoardArrays.coordsToAlgNotn(toSquare >>> 3, toSquare & 7);
+        if (MoveEncoding.isPromotion(move)) {
+            int promotedToPieceInt = MoveEncoding.promotedToPieceInt(move) & ~(WHITE | BLACK);
+            moveStr += BoardArrays.PIECES_ABBRS.get(promotedToPieceInt).toLowerCase();
+        }
+        return moveStr;
+    }
+
+    /*
+     * Infers the castling rights of a position loaded from a boardArray file:
+     * a right is given for every king and rook still on their starting
+     * squares.
+     */
+    private static int inferCastlingRights(final int[][] boardArray, final int colorOnTop) {
+        int castlingRights = 0;
+        for (int color : new int[] {WHITE, BLACK}) {
+            int yIdx = color == colorOnTop ? 0 : 7;
+            if (boardArray[4][yIdx] != (color | KING)) {
+                continue;
+            }
+            if (boardArray[7][yIdx] == (color | ROOK)) {
+                castlingRights |= color == WHITE ? BoardArrays.WHITE_KINGSIDE_CASTLING
+                                                 : BoardArrays.BLACK_KINGSIDE_CASTLING;
+            }
+            if (boardArray[0][yIdx] == (color | ROOK)) {
+                castlingRights |= color == WHITE ? BoardArrays.WHITE_QUEENSIDE_CASTLING
+                                                 : BoardArrays.BLACK_QUEENSIDE_CASTLING;
+            }
+        }
+        return castlingRights;
+    }
+
+    /**
+     * Runs the tool; see the class comment for its arguments.
+     *
+     * @param args The command-line arguments.
+     * @throws BoardArrayFileParsingException If a boardArray file can't be
+     *                                        parsed.
+     * @throws IOException                    If a boardArray or suite file
+     *                                        can't be read.
+     */
+    public static void main(final String[] args) throws BoardArrayFileParsingException, IOException {
+        boolean isDivide = false;
+        boolean useBitboards = false;
+        String suiteFile = null;
+        int threadCount = 1;
+        int hashMegabytes = 0;
+        int argIdx = 0;
+
+        for (; argIdx < args.length && args[argIdx].startsWith("--"); argIdx++) {
+            switch (args[argIdx]) {
+                case "--divide" -> isDivide = true;
+                case "--bitboards" -> useBitboards = true;
+                case "--suite" -> suiteFile = args[++argIdx];
+                case "--threads" -> threadCount = Integer.parseInt(args[++argIdx]);
+                case "--hash" -> hashMegabytes = Integer.parseInt(args[++argIdx]);
+                default -> throw new IllegalArgumentException("Unrecognized option " + args[argIdx]);
+            }
+        }
+        ForkJoinPool taskPool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        PerftHashTable hashTable = hashMegabytes > 0 ? new PerftHashTable(hashMegabytes) : null;
+
+        if (suiteFile != null) {
+            int maxDepth = argIdx < args.length ? Integer.parseInt(args[argIdx]) : DEFAULT_SUITE_DEPTH;
+            System.exit(runSuite(suiteFile, maxDepth, useBitboards, taskPool, hashTable) ? 0 : 1);
+        }
+
+        int depth = Integer.parseInt(args[argIdx++]);
+        String positionArg = argIdx < args.length ? args[argIdx] : STARTING_FEN;
+        Perft perft;
+        if (new File(positionArg).isFile()) {
+            int[][] boardArray = BoardArrays.loadBoardArrayFromFile(positionArg);
+            perft = new Perft(boardArray, WHITE, inferCastlingRights(boardArray, BLACK), BLACK, useBitboards);
+        } else {
+            perft = fromFen(positionArg, useBitboards);
+        }
+        perft.setTaskPool(taskPool);
+        perft.setHashTable(hashTable);
+
+        long startNanos = System.nanoTime();
+        long nodes = isDivide ? perft.divide(depth) : perft.countLeafNodes(depth);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("depth %d: %d nodes in %.3fs, %.0f nodes/sec%n", depth, nodes, seconds, nodes / seconds);
+    }
+
+    /*
+     * Checks the counts in a suite file, printing one line per position and
+     * depth. Returns true if every count matched.
+     */
+    private static boolean runSuite(final String suiteFile, final int maxDepth, final boolean useBitboards,
+                                    final ForkJoinPool taskPool, final PerftHashTable hashTable) throws IOException {
+        boolean allMatched = true;
+        long totalNodes = 0L;
+        long startNanos = System.nanoTime();
+
+        try (BufferedReader suiteReader = new BufferedReader(new FileReader(suiteFile))) {
+            String line;
+            while ((line = suiteReader.readLine()) != null) {
+                String[] fields = line.split(";");
+                if (fields[0].isBlank()) {
+                    continue;
+                }
+                for (int fieldIdx = 1; fieldIdx < fields.length; fieldIdx++) {
+                    String[] depthAndCount = fields[fieldIdx].trim().split("\\s+");
+                    int depth = Integer.parseInt(depthAndCount[0].substring(1));
+                    if (depth > maxDepth) {
+                        continue;
+                    }
+                    long expected = Long.parseLong(depthAndCount[1]);
+                    Perft perft = fromFen(fields[0], useBitboards);
+                    perft.setTaskPool(taskPool);
+                    perft.setHashTable(hashTable);
+                    long nodes = perft.countLeafNodes(depth);
+                    totalNodes += nodes;
+                    allMatched &= nodes == expected;
+                    System.out.printf("%s depth %d: %d (expected %d)%s%n", fields[0].trim(), depth, nodes, expected,
+                                      nodes == expected ? "" : " MISMATCH");
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%d nodes in %.3fs, %.0f nodes/sec%n", totalNodes, seconds, totalNodes / seconds);
+        return allMatched;
+    }
+}
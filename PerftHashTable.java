@@ -0,0 +1,104 @@
+package org.kmfahey.jchessgame;
+
+/**
+ * Implements a fixed-size hash table of perft counts, keyed on a position's
+ * Zobrist hash and the depth it was counted to. The same position is reached
+ * by many orderings of the same moves, and the table lets Perft reuse the
+ * count of a subtree it has already counted instead of counting it again.
+ *
+ * The table is shared by every thread of a parallel count without any
+ * locking. As in TranspositionTable, each entry is stored as two longs: the
+ * entry's packed data, and the position's key XORed with that data. An entry
+ * is only accepted by probe() if XORing those two longs back together
+ * reproduces the key being probed for, so an entry torn by two threads
+ * writing it at once is rejected rather than misread. Every slot is always
+ * replaced, since a perft count is equally valid however it was reached.
+ *
+ * @see Perft
+ * @see TranspositionTable
+ */
+public class PerftHashTable {
+
+    /* Each entry is two longs. */
+    private static final int BYTES_PER_ENTRY = 16;
+
+    /* An entry's depth occupies the low 8 bits of its data, and its count the
+       56 bits above them. */
+    private static final int COUNT_SHIFT = 8;
+    private static final long DEPTH_MASK = 0xFFL;
+
+    /* Mixed into the key when choosing a slot, so the counts of one position
+       to different depths don't all compete for the same slot. */
+    private static final long DEPTH_SLOT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /* The two halves of every entry. */
+    private final long[] entryKeys;
+    private final long[] entryData;
+
+    /* The number of slots less one, used to mask a key down to a slot
+       index. */
+    private final int slotMask;
+
+    /**
+     * Initializes the PerftHashTable object, allocating the largest
+     * power-of-two number of entries that fits in the given budget.
+     *
+     * @param megabytes The memory budget for the table, in megabytes.
+     * @throws IllegalArgumentException If megabytes is less than 1.
+     */
+    public PerftHashTable(final int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("PerftHashTable() called with a memory budget of less than 1MB");
+        }
+
+        long budgetEntries = (long) megabytes * 1024L * 1024L / BYTES_PER_ENTRY;
+        int entriesCount = (int) Long.highestOneBit(Math.min(budgetEntries, 1L << 30));
+
+        entryKeys = new long[entriesCount];
+        entryData = new long[entriesCount];
+        slotMask = entriesCount - 1;
+    }
+
+    /**
+     * Looks up the count of the position with the given key to the given
+     * depth.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @param depth       The depth counted to. It must be between 1 and 255.
+     * @return            The count if it was found, or -1 if it wasn't.
+     */
+    public long probe(final long positionKey, final int depth) {
+        int slotIdx = slotIndex(positionKey, depth);
+        long data = entryData[slotIdx];
+
+        if (data != 0L && (entryKeys[slotIdx] ^ data) == positionKey && (data & DEPTH_MASK) == depth) {
+            return data >>> COUNT_SHIFT;
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Stores the count of a position to a depth, replacing whatever was in
+     * its slot.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @param depth       The depth counted to. It must be between 1 and 255.
+     * @param count       The number of leaf nodes counted.
+     */
+    public void store(final long positionKey, final int depth, final long count) {
+        int slotIdx = slotIndex(positionKey, depth);
+        long data = (count << COUNT_SHIFT) | (depth & DEPTH_MASK);
+
+        entryData[slotIdx] = data;
+        entryKeys[slotIdx] = positionKey ^ data;
+    }
+
+    /*
+     * Maps a position's key and a depth to the index of a slot.
+     */
+    private int slotIndex(final long positionKey, final int depth) {
+        long mixedKey = positionKey ^ (depth * DEPTH_SLOT_MULTIPLIER);
+        return (int) (mixedKey ^ (mixedKey >>> 32)) & slotMask;
+    }
+}
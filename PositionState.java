@@ -0,0 +1,507 @@
+package org.kmfahey.jchessgame;
+
+/**
+ * Holds the position the minimax algorithm is searching: the boardArray, the
+ * color to move, the castling rights, and the Zobrist hash of all three. Moves
+ * are made with makeMove() and taken back with unmakeMove(), which restores
+ * everything makeMove() changed from a primitive undo stack. Nothing is
+ * allocated by either method, and neither touches the Chessboard object, so
+ * searching a position doesn't alter the state of the game being played.
+ *
+ * A packed move carries the pieces moved, captured and promoted to, so the
+ * undo stack only needs to save the move itself and the castling rights and
+ * hashes that were in effect before it was made. A null move, which passes the
+ * turn without moving a piece, is saved as the move 0.
+ *
+ * Alongside the boardArray, a list of the squares each color's pieces occupy
+ * and the square of each color's king are kept up to date by makeMove() and
+ * unmakeMove(), so move generation, check detection and evaluation can visit
+ * just the occupied squares instead of scanning all 64. A square is given as
+ * xIdx * 8 + yIdx, as in MoveEncoding.
+ *
+ * The pawn key, the Zobrist hash of the pawns alone, is kept alongside the
+ * position's hash for the evaluation's pawn hash table. Each color's
+ * material is also kept as a running total, in centipawns, so
+ * evaluation can read the material balance without counting pieces. It's
+ * changed only by captures and promotions.
+ *
+ * A BitboardPosition can be attached with setBitboardPosition(), in which
+ * case it's set up by setPosition() and passed every move made and taken
+ * back, so the bitboard move generator in Bitboards can run on it.
+ *
+ * @see MoveEncoding
+ * @see MinimaxRunner
+ */
+public class PositionState {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+
+    /** The deepest the undo stack can go, in plies. */
+    public static final int MAXIMUM_PLY = 128;
+
+    /** The most pieces a color's piece list can hold. */
+    public static final int MAXIMUM_PIECES = 16;
+
+    /* The undo stack. Entry n holds the move made at ply n, and the castling
+       rights, the hash and the pawn key in effect before it was made. */
+    private final int[] undoMoves = new int[MAXIMUM_PLY];
+    private final int[] undoCastlingRights = new int[MAXIMUM_PLY];
+    private final long[] undoPositionKeys = new long[MAXIMUM_PLY];
+    private final long[] undoPawnKeys = new long[MAXIMUM_PLY];
+    private final int[] undoCapturedIndexes = new int[MAXIMUM_PLY];
+    private int ply;
+
+    /* The piece lists, indexed by colorIndex(): the squares occupied by each
+       color's pieces, in no particular order, and how many there are. The
+       king's square is also kept separately. squareIndexes maps an occupied
+       square to its index in its color's list, so a captured piece can be
+       removed from the middle of a list without searching it. */
+    private final int[][] pieceSquares = new int[2][MAXIMUM_PIECES];
+    private final int[] piecesCounts = new int[2];
+    private final int[] kingSquares = new int[2];
+    private final int[] squareIndexes = new int[64];
+
+    /* The material of each color in centipawns, indexed by colorIndex(). */
+    private final int[] materialScores = new int[2];
+
+    /* The position. The boardArray is the one passed to setPosition(), which
+       is modified in place. */
+    private int[][] boardArray;
+    private int colorToMove;
+    private int castlingRights;
+    private int colorOnTop;
+    private long positionKey;
+    private long pawnKey;
+
+    /* The bitboard copy of the position, or null if none is attached. */
+    private BitboardPosition bitboardPosition;
+
+    /**
+     * Sets the position to be searched, computing its hash, pawn key, piece
+     * lists and material from scratch and emptying the undo stack.
+     *
+     * @param boardArrayVal     The int[8][8] array that represents the
+     *                          chessboard. It's modified in place by
+     *                          makeMove() and unmakeMove().
+     * @param colorToMoveVal    The color whose turn it is.
+     * @param castlingRightsVal The castling rights flags in effect.
+     * @param colorOnTopVal     The color playing from the top of the board.
+     * @throws IllegalArgumentException If a color has more than
+     *                                  MAXIMUM_PIECES pieces.
+     */
+    public void setPosition(final int[][] boardArrayVal, final int colorToMoveVal, final int castlingRightsVal,
+                            final int colorOnTopVal) throws IllegalArgumentException {
+        boardArray = boardArrayVal;
+        colorToMove = colorToMoveVal;
+        castlingRights = castlingRightsVal;
+        colorOnTop = colorOnTopVal;
+        positionKey = ZobristHashing.hashPosition(boardArray, colorToMove, castlingRights);
+        pawnKey = ZobristHashing.hashPawns(boardArray);
+        ply = 0;
+
+        /* The lists are filled in the order the board is scanned in, so a
+           freshly set position generates its moves in the same order as
+           BoardArrays.generatePossibleMoves() does. A missing king is given
+           the square -1. */
+        piecesCounts[0] = 0;
+        piecesCounts[1] = 0;
+        materialScores[0] = 0;
+        materialScores[1] = 0;
+        kingSquares[0] = -1;
+        kingSquares[1] = -1;
+        for (int square = 0; square < 64; square++) {
+            int pieceInt = boardArray[square >>> 3][square & 7];
+            if (pieceInt == 0) {
+                continue;
+            }
+            int colorIdx = colorIndex(pieceInt);
+            if (piecesCounts[colorIdx] == MAXIMUM_PIECES) {
+                throw new IllegalArgumentException("setPosition() called with a boardArray that has more than "
+                                                   + MAXIMUM_PIECES + " pieces of one color");
+            }
+            squareIndexes[square] = piecesCounts[colorIdx];
+            pieceSquares[colorIdx][piecesCounts[colorIdx]++] = square;
+            materialScores[colorIdx] += materialValue(pieceInt);
+            if ((pieceInt & KING) != 0) {
+                kingSquares[colorIdx] = square;
+            }
+        }
+
+        if (bitboardPosition != null) {
+            bitboardPosition.setPosition(boardArray);
+        }
+    }
+
+    /**
+     * Attaches a BitboardPosition to be kept in step with this position. It's
+     * set up from the boardArray the next time setPosition() is called.
+     *
+     * @param bitboardPositionVal The BitboardPosition, or null to detach the
+     *                            one attached.
+     */
+    public void setBitboardPosition(final BitboardPosition bitboardPositionVal) {
+        bitboardPosition = bitboardPositionVal;
+    }
+
+    /**
+     * Accessor for the attached BitboardPosition.
+     *
+     * @return The BitboardPosition, or null if none is attached.
+     */
+    public BitboardPosition getBitboardPosition() {
+        return bitboardPosition;
+    }
+
+    /**
+     * Returns the index that the piece lists use for a color: 0 for white
+     * and 1 for black.
+     *
+     * @param color The color, or a piece int of that color.
+     * @return      The color's index.
+     */
+    public static int colorIndex(final int color) {
+        return (color & WHITE) != 0 ? 0 : 1;
+    }
+
+    /**
+     * Accessor for the boardArray.
+     *
+     * @return The int[8][8] array that represents the chessboard.
+     */
+    public int[][] getBoardArray() {
+        return boardArray;
+    }
+
+    /**
+     * Accessor for the color whose turn it is.
+     *
+     * @return One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     */
+    public int getColorToMove() {
+        return colorToMove;
+    }
+
+    /**
+     * Accessor for the castling rights in effect.
+     *
+     * @return The castling rights flags, as defined in BoardArrays.
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Accessor for the Zobrist hash of the position.
+     *
+     * @return The position's key.
+     */
+    public long getPositionKey() {
+        return positionKey;
+    }
+
+    /**
+     * Accessor for the pawn key of the position: the Zobrist hash of its
+     * pawns alone.
+     *
+     * @return The position's pawn key.
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * Accessor for the list of squares occupied by a color's pieces. The
+     * array is the list itself, not a copy, and only its first
+     * getPiecesCount() elements are in use; it changes as moves are made
+     * and unmade.
+     *
+     * @param color One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @return      The color's piece list.
+     */
+    public int[] getPieceSquares(final int color) {
+        return pieceSquares[colorIndex(color)];
+    }
+
+    /**
+     * Accessor for the number of pieces a color has on the board.
+     *
+     * @param color One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @return      The number of squares in use in the color's piece list.
+     */
+    public int getPiecesCount(final int color) {
+        return piecesCounts[colorIndex(color)];
+    }
+
+    /**
+     * Accessor for the square of a color's king.
+     *
+     * @param color One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @return      The king's square, as xIdx * 8 + yIdx, or -1 if the color
+     *              has no king.
+     */
+    public int getKingSquare(final int color) {
+        return kingSquares[colorIndex(color)];
+    }
+
+    /**
+     * Accessor for a color's material: the sum of the materialValue() of
+     * each of its pieces on the board.
+     *
+     * @param color One of either BoardArrays.WHITE or BoardArrays.BLACK.
+     * @return      The color's material, in centipawns.
+     */
+    public int getMaterialScore(final int color) {
+        return materialScores[colorIndex(color)];
+    }
+
+    /**
+     * Returns the material value of a piece, as the evaluation weighs it: 9
+     * pawns for a queen, 5 for a rook, 3 for a bishop or a knight, 1 for a
+     * pawn, and nothing for the king, which is never captured.
+     *
+     * @param pieceInt The piece's int value.
+     * @return         The piece's value, in centipawns.
+     */
+    public static int materialValue(final int pieceInt) {
+        if ((pieceInt & QUEEN) != 0) {
+            return 900;
+        } else if ((pieceInt & ROOK) != 0) {
+            return 500;
+        } else if ((pieceInt & (BISHOP | KNIGHT)) != 0) {
+            return 300;
+        } else if ((pieceInt & PAWN) != 0) {
+            return 100;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Accessor for the number of moves made since setPosition() that haven't
+     * been unmade.
+     *
+     * @return The ply.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Makes a move, saving what's needed to take it back on the undo stack.
+     * The move isn't checked for legality; see BoardArrays.checkMoveLegality().
+     * A castling move is made as the king moving two squares toward the rook
+     * and the rook moving to the square the king crossed.
+     *
+     * @param move The packed move to make.
+     * @throws IllegalStateException If the undo stack is full.
+     */
+    public void makeMove(final int move) throws IllegalStateException {
+        if (ply == MAXIMUM_PLY) {
+            throw new IllegalStateException("makeMove() called with the undo stack full");
+        }
+
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int fromXIdx = MoveEncoding.fromXIdx(move);
+        int fromYIdx = MoveEncoding.fromYIdx(move);
+        int toXIdx = MoveEncoding.toXIdx(move);
+        int toYIdx = MoveEncoding.toYIdx(move);
+        int capturedPieceInt = MoveEncoding.capturedPieceInt(move);
+        int fromSquare = MoveEncoding.fromSquare(move);
+        int toSquare = MoveEncoding.toSquare(move);
+        int colorIdx = colorIndex(movedPieceInt);
+        int savedCastlingRights = castlingRights;
+
+        undoMoves[ply] = move;
+        undoCastlingRights[ply] = castlingRights;
+        undoPositionKeys[ply] = positionKey;
+        undoPawnKeys[ply] = pawnKey;
+        ply++;
+
+        if (bitboardPosition != null) {
+            bitboardPosition.makeMove(move);
+        }
+
+        /* Every move passes the turn to the other color, and may clear some
+           castling rights, so those parts of the hash are updated first. */
+        castlingRights = BoardArrays.castlingRightsAfterMove(castlingRights, fromXIdx, fromYIdx, toXIdx, toYIdx,
+                                                             colorOnTop);
+        colorToMove = colorToMove == WHITE ? BLACK : WHITE;
+        positionKey ^= ZobristHashing.BLACK_TO_MOVE_KEY
+                       ^ ZobristHashing.castlingRightsKey(savedCastlingRights)
+                       ^ ZobristHashing.castlingRightsKey(castlingRights);
+
+        if (MoveEncoding.isCastling(move)) {
+            int kingToXIdx = toXIdx == 7 ? 6 : 2;
+            int rookToXIdx = toXIdx == 7 ? 5 : 3;
+            boardArray[fromXIdx][fromYIdx] = 0;
+            boardArray[toXIdx][toYIdx] = 0;
+            boardArray[kingToXIdx][fromYIdx] = movedPieceInt;
+            boardArray[rookToXIdx][toYIdx] = capturedPieceInt;
+            positionKey ^= ZobristHashing.pieceSquareKey(movedPieceInt, fromXIdx, fromYIdx)
+                           ^ ZobristHashing.pieceSquareKey(movedPieceInt, kingToXIdx, fromYIdx)
+                           ^ ZobristHashing.pieceSquareKey(capturedPieceInt, toXIdx, toYIdx)
+                           ^ ZobristHashing.pieceSquareKey(capturedPieceInt, rookToXIdx, toYIdx);
+            movePieceSquare(colorIdx, fromSquare, kingToXIdx * 8 + fromYIdx);
+            movePieceSquare(colorIdx, toSquare, rookToXIdx * 8 + toYIdx);
+            kingSquares[colorIdx] = kingToXIdx * 8 + fromYIdx;
+        } else {
+            /* A promoted pawn arrives as the piece it's promoted to, and its
+               color's material changes by the difference. */
+            int arrivingPieceInt = MoveEncoding.isPromotion(move) ? MoveEncoding.promotedToPieceInt(move)
+                                                                  : movedPieceInt;
+            materialScores[colorIdx] += materialValue(arrivingPieceInt) - materialValue(movedPieceInt);
+            boardArray[fromXIdx][fromYIdx] = 0;
+            boardArray[toXIdx][toYIdx] = arrivingPieceInt;
+            positionKey ^= ZobristHashing.pieceSquareKey(movedPieceInt, fromXIdx, fromYIdx)
+                           ^ ZobristHashing.pieceSquareKey(capturedPieceInt, toXIdx, toYIdx)
+                           ^ ZobristHashing.pieceSquareKey(arrivingPieceInt, toXIdx, toYIdx);
+            pawnKey ^= ZobristHashing.pawnSquareKey(movedPieceInt, fromXIdx, fromYIdx)
+                       ^ ZobristHashing.pawnSquareKey(capturedPieceInt, toXIdx, toYIdx)
+                       ^ ZobristHashing.pawnSquareKey(arrivingPieceInt, toXIdx, toYIdx);
+
+            /* A captured piece is removed from its list by moving the last
+               piece in the list into its place. The index it had is saved so
+               unmakeMove() can put both back where they were. */
+            if (capturedPieceInt != 0) {
+                int capturedColorIdx = 1 - colorIdx;
+                int capturedIdx = squareIndexes[toSquare];
+                int lastSquare = pieceSquares[capturedColorIdx][--piecesCounts[capturedColorIdx]];
+                pieceSquares[capturedColorIdx][capturedIdx] = lastSquare;
+                squareIndexes[lastSquare] = capturedIdx;
+                undoCapturedIndexes[ply - 1] = capturedIdx;
+                materialScores[capturedColorIdx] -= materialValue(capturedPieceInt);
+            }
+            movePieceSquare(colorIdx, fromSquare, toSquare);
+            if ((movedPieceInt & KING) != 0) {
+                kingSquares[colorIdx] = toSquare;
+            }
+        }
+    }
+
+    /*
+     * Updates a color's piece list for a piece that's moved from one square
+     * to another.
+     *
+     * @param colorIdx   The color's index.
+     * @param fromSquare The square the piece moved from.
+     * @param toSquare   The square the piece moved to.
+     */
+    private void movePieceSquare(final int colorIdx, final int fromSquare, final int toSquare) {
+        int pieceIdx = squareIndexes[fromSquare];
+        pieceSquares[colorIdx][pieceIdx] = toSquare;
+        squareIndexes[toSquare] = pieceIdx;
+    }
+
+    /**
+     * Makes a null move: the turn passes to the other color without a piece
+     * being moved. It's taken back with unmakeMove() like any other move.
+     *
+     * @throws IllegalStateException If the undo stack is full.
+     */
+    public void makeNullMove() throws IllegalStateException {
+        if (ply == MAXIMUM_PLY) {
+            throw new IllegalStateException("makeNullMove() called with the undo stack full");
+        }
+
+        undoMoves[ply] = 0;
+        undoCastlingRights[ply] = castlingRights;
+        undoPositionKeys[ply] = positionKey;
+        undoPawnKeys[ply] = pawnKey;
+        ply++;
+
+        colorToMove = colorToMove == WHITE ? BLACK : WHITE;
+        positionKey ^= ZobristHashing.BLACK_TO_MOVE_KEY;
+    }
+
+    /**
+     * Tests whether the last move made was a null move.
+     *
+     * @return True if the last move made was a null move, false if it wasn't
+     *         or no move has been made since setPosition().
+     */
+    public boolean isLastMoveNull() {
+        return ply > 0 && undoMoves[ply - 1] == 0;
+    }
+
+    /**
+     * Takes back the last move made by makeMove() or makeNullMove(),
+     * restoring the boardArray, the piece lists, the material, the color to
+     * move, the castling rights, the hash and the pawn key.
+     *
+     * @throws IllegalStateException If no move has been made since
+     *                               setPosition().
+     */
+    public void unmakeMove() throws IllegalStateException {
+        if (ply == 0) {
+            throw new IllegalStateException("unmakeMove() called with the undo stack empty");
+        }
+
+        ply--;
+        int move = undoMoves[ply];
+
+        colorToMove = colorToMove == WHITE ? BLACK : WHITE;
+        castlingRights = undoCastlingRights[ply];
+        positionKey = undoPositionKeys[ply];
+        pawnKey = undoPawnKeys[ply];
+
+        if (move == 0) {
+            return;
+        }
+        if (bitboardPosition != null) {
+            bitboardPosition.unmakeMove(move);
+        }
+
+        int fromXIdx = MoveEncoding.fromXIdx(move);
+        int fromYIdx = MoveEncoding.fromYIdx(move);
+        int toXIdx = MoveEncoding.toXIdx(move);
+        int toYIdx = MoveEncoding.toYIdx(move);
+        int fromSquare = MoveEncoding.fromSquare(move);
+        int toSquare = MoveEncoding.toSquare(move);
+        int movedPieceInt = MoveEncoding.movedPieceInt(move);
+        int capturedPieceInt = MoveEncoding.capturedPieceInt(move);
+        int colorIdx = colorIndex(movedPieceInt);
+
+        if (MoveEncoding.isCastling(move)) {
+            int kingToXIdx = toXIdx == 7 ? 6 : 2;
+            int rookToXIdx = toXIdx == 7 ? 5 : 3;
+            boardArray[kingToXIdx][fromYIdx] = 0;
+            boardArray[rookToXIdx][toYIdx] = 0;
+            movePieceSquare(colorIdx, kingToXIdx * 8 + fromYIdx, fromSquare);
+            movePieceSquare(colorIdx, rookToXIdx * 8 + toYIdx, toSquare);
+        } else {
+            movePieceSquare(colorIdx, toSquare, fromSquare);
+            if (MoveEncoding.isPromotion(move)) {
+                materialScores[colorIdx] -= materialValue(MoveEncoding.promotedToPieceInt(move))
+                                            - materialValue(movedPieceInt);
+            }
+
+            /* The captured piece goes back to the index it was removed from,
+               and the piece that was moved into that index goes back to the
+               end of the list. */
+            if (capturedPieceInt != 0) {
+                int capturedColorIdx = 1 - colorIdx;
+                int capturedIdx = undoCapturedIndexes[ply];
+                int lastIdx = piecesCounts[capturedColorIdx]++;
+                int lastSquare = pieceSquares[capturedColorIdx][capturedIdx];
+                pieceSquares[capturedColorIdx][lastIdx] = lastSquare;
+                squareIndexes[lastSquare] = lastIdx;
+                pieceSquares[capturedColorIdx][capturedIdx] = toSquare;
+                squareIndexes[toSquare] = capturedIdx;
+                materialScores[capturedColorIdx] += materialValue(capturedPieceInt);
+            }
+        }
+        if ((movedPieceInt & KING) != 0) {
+            kingSquares[colorIdx] = fromSquare;
+        }
+        boardArray[fromXIdx][fromYIdx] = movedPieceInt;
+        boardArray[toXIdx][toYIdx] = capturedPieceInt;
+    }
+}
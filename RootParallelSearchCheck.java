@@ -0,0 +1,173 @@
+package org.kmfahey.jchessgame;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.StringJoiner;
+
+/**
+ * A command-line tool that compares the scores found by the root move
+ * parallel search with the sequential search's. A game is played from the
+ * starting position (or a position loaded from a boardArray file) by two
+ * sequential MinimaxRunners. At each of the positions it reaches, the side
+ * to move searches the position to each depth from MINIMUM_DEPTH to
+ * MAXIMUM_DEPTH, with a fresh MinimaxRunner for each search: sequentially
+ * and with root move parallelism, first with null move pruning and late
+ * move reductions switched off in both searches and then with both on, as
+ * they are by default.
+ *
+ * With null move pruning and late move reductions switched off, the two
+ * searches must find the same score. If they differ for any position and
+ * depth, the tool exits with an IllegalStateException. With both on, the
+ * scores can differ (see MinimaxRunner.setRootMoveParallelism()), so the
+ * tool only reports how many of them did and by how much at most.
+ *
+ * Usage: java org.kmfahey.jchessgame.RootParallelSearchCheck [parallelism
+ * [boardFile]]
+ *
+ * The parallelism defaults to 4.
+ *
+ * @see MinimaxRunner#setRootMoveParallelism
+ */
+public final class RootParallelSearchCheck {
+
+    /* The number of threads the root moves are searched on if none is given
+       on the command line. */
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /* The depths each position is searched to. */
+    private static final int MINIMUM_DEPTH = 2;
+    private static final int MAXIMUM_DEPTH = 5;
+
+    /* The depth the game between the positions checked is played at, and
+       the number of positions checked. */
+    private static final int GAME_DEPTH = 3;
+    private static final int POSITIONS_COUNT = 8;
+
+    /* The memory budget for each runner's transposition table, in
+       megabytes. Every search uses a fresh runner, so it's kept small. */
+    private static final int TRANSPOSITION_MEGABYTES = 16;
+
+    /* The square size passed to the ImagesManager. The check never draws the
+       board, but a Chessboard can't be built without one. */
+    private static final int SQUARE_SIZE = 60;
+
+    private RootParallelSearchCheck() { }
+
+    /**
+     * Runs the check and prints one line of results per position and depth.
+     *
+     * @param args The parallelism and the path to a boardArray file, both
+     *             optional.
+     * @throws BoardArrayFileParsingException If the boardArray file can't be
+     *                                        parsed.
+     * @throws IOException                    If the boardArray file can't be
+     *                                        read.
+     * @throws IllegalStateException          If the scores differ for any
+     *                                        position and depth with null
+     *                                        move pruning and late move
+     *                                        reductions switched off.
+     */
+    public static void main(final String[] args) throws BoardArrayFileParsingException, IOException,
+                                                        IllegalStateException {
+        int parallelism = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PARALLELISM;
+        int[][] boardArray = args.length > 1 ? BoardArrays.loadBoardArrayFromFile(args[1]) : null;
+        ImagesManager imagesManager = new ImagesManager("./images/", new Dimension(SQUARE_SIZE, SQUARE_SIZE));
+        Chessboard chessboard = boardArray == null
+                                ? new Chessboard(imagesManager, BoardArrays.WHITE, BoardArrays.BLACK)
+                                : new Chessboard(boardArray, imagesManager, BoardArrays.WHITE, BoardArrays.BLACK);
+        MinimaxRunner[] gameRunners = {new MinimaxRunner(chessboard, BoardArrays.WHITE),
+                                       new MinimaxRunner(chessboard, BoardArrays.BLACK)};
+        StringJoiner mismatches = new StringJoiner(", ");
+        int pruningSearchesCount = 0;
+        int pruningMismatchesCount = 0;
+        int pruningLargestDifference = 0;
+
+        for (MinimaxRunner gameRunner : gameRunners) {
+            gameRunner.setSearchBudget(0L, 0L, GAME_DEPTH);
+        }
+
+        System.out.println("position,color,depth,pruning,sequential_score,parallel_score,same_move,"
+                           + "sequential_seconds,parallel_seconds");
+
+        for (int positionIdx = 1; positionIdx <= POSITIONS_COUNT; positionIdx++) {
+            int runnerIdx = (positionIdx - 1) % 2;
+            int color = runnerIdx == 0 ? BoardArrays.WHITE : BoardArrays.BLACK;
+            boolean isGameOver = false;
+
+            for (int depth = MINIMUM_DEPTH; depth <= MAXIMUM_DEPTH && !isGameOver; depth++) {
+                for (boolean isPruning : new boolean[] {false, true}) {
+                    MinimaxRunner sequentialRunner = new MinimaxRunner(chessboard, color, TRANSPOSITION_MEGABYTES);
+                    sequentialRunner.setSearchBudget(0L, 0L, depth);
+                    sequentialRunner.setNullMovePruning(isPruning);
+                    sequentialRunner.setLateMoveReductions(isPruning);
+
+                    MinimaxRunner parallelRunner = new MinimaxRunner(chessboard, color, TRANSPOSITION_MEGABYTES);
+                    parallelRunner.setSearchBudget(0L, 0L, depth);
+                    parallelRunner.setNullMovePruning(isPruning);
+                    parallelRunner.setLateMoveReductions(isPruning);
+                    parallelRunner.setRootMoveParallelism(parallelism);
+
+                    /* The turn count is given as 1, so the root moves aren't
+                       shuffled and both searches see them in the same
+                       order. */
+                    long startNanos = System.nanoTime();
+                    Chessboard.Move sequentialMove = sequentialRunner.algorithmTopLevel(1);
+                    double sequentialSeconds = (System.nanoTime() - startNanos) / 1e9;
+                    startNanos = System.nanoTime();
+                    Chessboard.Move parallelMove = parallelRunner.algorithmTopLevel(1);
+                    double parallelSeconds = (System.nanoTime() - startNanos) / 1e9;
+                    parallelRunner.setRootMoveParallelism(1);
+
+                    /* A null moving piece means the side to move has no
+                       moves, and the game is over. */
+                    if (sequentialMove.movingPiece() == null) {
+                        isGameOver = true;
+                        break;
+                    }
+
+                    int sequentialScore = sequentialRunner.getLastRootScore();
+                    int parallelScore = parallelRunner.getLastRootScore();
+                    boolean isSameMove = sequentialMove.equals(parallelMove);
+                    System.out.printf("%d,%s,%d,%b,%d,%d,%b,%.3f,%.3f%n", positionIdx,
+                                      runnerIdx == 0 ? "white" : "black", depth, isPruning, sequentialScore,
+                                      parallelScore, isSameMove, sequentialSeconds, parallelSeconds);
+                    if (!isPruning) {
+                        if (sequentialScore != parallelScore) {
+                            mismatches.add("position " + positionIdx + " at depth " + depth);
+                        }
+                    } else {
+                        pruningSearchesCount++;
+                        if (sequentialScore != parallelScore) {
+                            pruningMismatchesCount++;
+                            pruningLargestDifference = Math.max(Math.abs(sequentialScore - parallelScore),
+                                                                pruningLargestDifference);
+                        }
+                    }
+                }
+            }
+
+            Chessboard.Move gameMove = gameRunners[runnerIdx].algorithmTopLevel(1);
+            if (gameMove.movingPiece() == null) {
+                break;
+            }
+            try {
+                chessboard.movePiece(gameMove);
+            } catch (KingIsInCheckException | CastlingNotPossibleException exception) {
+                throw new IllegalStateException("the search chose a move that can't be made", exception);
+            }
+            if (gameMove.promotedToPieceInt() != 0) {
+                chessboard.promotePawn(gameMove.toXCoord(), gameMove.toYCoord(), gameMove.promotedToPieceInt());
+            }
+        }
+
+        System.out.printf("With null move pruning and late move reductions, the scores differed at %d of %d "
+                          + "positions and depths, by at most %d centipawns.%n", pruningMismatchesCount,
+                          pruningSearchesCount, pruningLargestDifference);
+
+        if (mismatches.length() != 0) {
+            throw new IllegalStateException("the root move parallel search's score differed from the sequential "
+                                            + "search's with null move pruning and late move reductions "
+                                            + "switched off at " + mismatches);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.kmfahey.jchessgame;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.StringJoiner;
+
+/**
+ * A command-line tool that checks that the minimax search allocates nothing
+ * once it's warmed up. Two MinimaxRunners, one for each color, play a game
+ * from the starting position (or a position loaded from a boardArray file),
+ * each searching every one of its moves to a fixed depth on a single thread.
+ * A game is played at each depth from MINIMUM_DEPTH to MAXIMUM_DEPTH, or at
+ * the one depth given, once with boardArray move generation and once with
+ * bitboard move generation. The first few moves of each runner warm it up,
+ * and the bytes the thread allocates during each search after that are
+ * measured with the JVM's ThreadMXBean.
+ *
+ * The only object algorithmTopLevel() should allocate after warm-up is the
+ * Chessboard.Move it returns. The bytes that costs are measured separately
+ * and subtracted. If any search at any depth allocates more than that, the
+ * tool exits with an IllegalStateException.
+ *
+ * Before any game is measured, JIT_WARM_UP_GAMES unmeasured games are
+ * played at JIT_WARM_UP_DEPTH with each move generator. When HotSpot queues
+ * a method for compilation, it resolves the string literals of the method's
+ * class on the thread that queued it, and the ThreadMXBean counts those
+ * Strings against that thread. A method that first got hot enough in the
+ * middle of a measured search would make it look like the search
+ * allocated. The warm-up games make every method the search uses hot
+ * first, including the ones called only once per iteration of a search.
+ *
+ * Usage: java org.kmfahey.jchessgame.SearchAllocationCheck [depth
+ * [boardFile]]
+ *
+ * The check needs a JVM whose ThreadMXBean supports allocation measurement,
+ * as HotSpot's does.
+ *
+ * @see MinimaxRunner#algorithmTopLevel
+ */
+public final class SearchAllocationCheck {
+
+    /* The depths searched if none is given on the command line. */
+    private static final int MINIMUM_DEPTH = 3;
+    private static final int MAXIMUM_DEPTH = 4;
+
+    /* The number and depth of the unmeasured games played to warm up the JIT
+       compiler. */
+    private static final int JIT_WARM_UP_GAMES = 4;
+    private static final int JIT_WARM_UP_DEPTH = 4;
+
+    /* The number of moves each runner makes to warm up, and the number it
+       makes with its searches measured after that. */
+    private static final int WARM_UP_MOVES = 3;
+    private static final int MEASURED_MOVES = 5;
+
+    /* The square size passed to the ImagesManager. The check never draws the
+       board, but a Chessboard can't be built without one. */
+    private static final int SQUARE_SIZE = 60;
+
+    /* Holds the Chessboard.Move built while measuring its cost, so the JIT
+       compiler can't optimize its allocation away. */
+    private static Chessboard.Move measuredMove;
+
+    private SearchAllocationCheck() { }
+
+    /**
+     * Runs the check and prints one line of results per measured search.
+     *
+     * @param args The search depth and the path to a boardArray file, both
+     *             optional.
+     * @throws BoardArrayFileParsingException If the boardArray file can't be
+     *                                        parsed.
+     * @throws IOException                    If the boardArray file can't be
+     *                                        read.
+     * @throws IllegalStateException          If a search allocated, or the
+     *                                        JVM can't measure allocation.
+     */
+    public static void main(final String[] args) throws BoardArrayFileParsingException, IOException,
+                                                        IllegalStateException {
+        int minimumDepth = args.length > 0 ? Integer.parseInt(args[0]) : MINIMUM_DEPTH;
+        int maximumDepth = args.length > 0 ? minimumDepth : MAXIMUM_DEPTH;
+        int[][] boardArray = args.length > 1 ? BoardArrays.loadBoardArrayFromFile(args[1]) : null;
+        ImagesManager imagesManager = new ImagesManager("./images/", new Dimension(SQUARE_SIZE, SQUARE_SIZE));
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)
+                                                       ManagementFactory.getThreadMXBean();
+        StringJoiner failedRuns = new StringJoiner(", ");
+
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("this JVM can't measure the memory a thread allocates");
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int gameIdx = 0; gameIdx < JIT_WARM_UP_GAMES; gameIdx++) {
+            for (boolean useBitboards : new boolean[] {false, true}) {
+                playGame(boardArray, imagesManager, threadMXBean, JIT_WARM_UP_DEPTH, useBitboards, false);
+            }
+        }
+
+        System.out.println("depth,bitboards,color,move,nodes,allocated_bytes,result_bytes,excess_bytes");
+
+        for (int depth = minimumDepth; depth <= maximumDepth; depth++) {
+            for (boolean useBitboards : new boolean[] {false, true}) {
+                long excessBytes = playGame(boardArray, imagesManager, threadMXBean, depth, useBitboards, true);
+                if (excessBytes != 0L) {
+                    failedRuns.add(excessBytes + " bytes at depth " + depth + (useBitboards ? " with" : " without")
+                                   + " bitboards");
+                }
+            }
+        }
+
+        if (failedRuns.length() != 0) {
+            throw new IllegalStateException("the search allocated after warm-up, beyond the moves it returned: "
+                                            + failedRuns);
+        }
+    }
+
+    /*
+     * Plays a game between two MinimaxRunners searching to the given depth,
+     * and measures the bytes allocated by each search after the warm-up
+     * moves, printing a line of results for each.
+     *
+     * @param boardArray    The position to start from, or null for the
+     *                      starting position.
+     * @param imagesManager The ImagesManager to build the Chessboard with.
+     * @param threadMXBean  The ThreadMXBean to measure allocation with.
+     * @param depth         The depth each move is searched to.
+     * @param useBitboards  Whether the runners generate moves with
+     *                      bitboards.
+     * @param isMeasured    Whether to measure and print the searches, or
+     *                      only play the game.
+     * @return              The total bytes allocated by the measured
+     *                      searches beyond the moves they returned.
+     * @throws IllegalStateException If the search chose a move that can't be
+     *                               made.
+     */
+    private static long playGame(final int[][] boardArray, final ImagesManager imagesManager,
+                                 final com.sun.management.ThreadMXBean threadMXBean, final int depth,
+                                 final boolean useBitboards, final boolean isMeasured) throws IllegalStateException {
+        long threadId = Thread.currentThread().getId();
+        long excessBytesTotal = 0L;
+        Chessboard chessboard = boardArray == null
+                                ? new Chessboard(imagesManager, BoardArrays.WHITE, BoardArrays.BLACK)
+                                : new Chessboard(BoardArrays.copyBoardArray(boardArray), imagesManager,
+                                                 BoardArrays.WHITE, BoardArrays.BLACK);
+        MinimaxRunner[] minimaxRunners = {new MinimaxRunner(chessboard, BoardArrays.WHITE),
+                                          new MinimaxRunner(chessboard, BoardArrays.BLACK)};
+        for (MinimaxRunner minimaxRunner : minimaxRunners) {
+            minimaxRunner.setSearchBudget(0L, 0L, depth);
+            minimaxRunner.setBitboardMoveGeneration(useBitboards);
+        }
+
+        boolean isGameOver = false;
+        for (int moveIdx = 1; moveIdx <= WARM_UP_MOVES + MEASURED_MOVES && !isGameOver; moveIdx++) {
+            for (int runnerIdx = 0; runnerIdx < 2 && !isGameOver; runnerIdx++) {
+                MinimaxRunner minimaxRunner = minimaxRunners[runnerIdx];
+
+                /* The turn count is given as 1, so the root moves aren't
+                   shuffled and every run plays the same game. */
+                long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+                Chessboard.Move bestMove = minimaxRunner.algorithmTopLevel(1);
+                long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+                /* A null moving piece means the side to move has no moves,
+                   and the game is over. */
+                if (bestMove.movingPiece() == null) {
+                    isGameOver = true;
+                    continue;
+                }
+
+                /* The returned move is built by
+                   MoveEncoding.toChessboardMove(), so building it again
+                   measures what it cost. */
+                int packedMove = MoveEncoding.encode(bestMove);
+                startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+                measuredMove = MoveEncoding.toChessboardMove(packedMove, chessboard);
+                long resultBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+                if (isMeasured && moveIdx > WARM_UP_MOVES) {
+                    long excessBytes = Math.max(allocatedBytes - resultBytes, 0L);
+                    excessBytesTotal += excessBytes;
+                    System.out.printf("%d,%b,%s,%d,%d,%d,%d,%d%n", depth, useBitboards,
+                                      runnerIdx == 0 ? "white" : "black", moveIdx,
+                                      minimaxRunner.getNodesSearched(), allocatedBytes, resultBytes, excessBytes);
+                }
+
+                try {
+                    chessboard.movePiece(bestMove);
+                } catch (KingIsInCheckException | CastlingNotPossibleException exception) {
+                    throw new IllegalStateException("the search chose a move that can't be made", exception);
+                }
+                if (bestMove.promotedToPieceInt() != 0) {
+                    chessboard.promotePawn(bestMove.toXCoord(), bestMove.toYCoord(), bestMove.promotedToPieceInt());
+                }
+            }
+        }
+
+        return excessBytesTotal;
+    }
+}
@@ -0,0 +1,98 @@
+package org.kmfahey.jchessgame;
+
+import java.awt.Dimension;
+import java.io.IOException;
+
+/**
+ * A command-line tool that measures how the minimax search scales with the
+ * number of threads it runs on. For each thread count from 1 up to the
+ * maximum, it searches the starting position (or a position loaded from a
+ * boardArray file) to a fixed depth with a fresh MinimaxRunner, and reports
+ * the time it took to complete that depth and the number of positions
+ * searched per second.
+ *
+ * By default the threads run a Lazy SMP search. With --root-parallel, they
+ * search the root moves in parallel instead, and the single-threaded search
+ * is the sequential search. The score found is printed so it can be
+ * compared across thread counts.
+ *
+ * Usage: java org.kmfahey.jchessgame.SearchBenchmark [--root-parallel]
+ * [maxThreads [depth [boardFile]]]
+ *
+ * The maximum thread count defaults to the number of available processors,
+ * and the depth defaults to 5.
+ *
+ * @see MinimaxRunner#setSearchThreads
+ * @see MinimaxRunner#setRootMoveParallelism
+ */
+public final class SearchBenchmark {
+
+    /* The depth searched if none is given on the command line. */
+    private static final int DEFAULT_DEPTH = 5;
+
+    /* The square size passed to the ImagesManager. The benchmark never draws
+       the board, but a Chessboard can't be built without one. */
+    private static final int SQUARE_SIZE = 60;
+
+    private SearchBenchmark() { }
+
+    /**
+     * Runs the benchmark and prints one line of results per thread count.
+     *
+     * @param args The --root-parallel flag, the maximum thread count, the
+     *             search depth, and the path to a boardArray file, all
+     *             optional.
+     * @throws BoardArrayFileParsingException If the boardArray file can't be
+     *                                        parsed.
+     * @throws IOException                    If the boardArray file can't be
+     *                                        read.
+     */
+    public static void main(final String[] args) throws BoardArrayFileParsingException, IOException {
+        boolean isRootParallel = args.length > 0 && args[0].equals("--root-parallel");
+        int argIdx = isRootParallel ? 1 : 0;
+        int maxThreads = args.length > argIdx ? Integer.parseInt(args[argIdx])
+                                              : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > argIdx + 1 ? Integer.parseInt(args[argIdx + 1]) : DEFAULT_DEPTH;
+        int[][] boardArray = args.length > argIdx + 2 ? BoardArrays.loadBoardArrayFromFile(args[argIdx + 2]) : null;
+        ImagesManager imagesManager = new ImagesManager("./images/", new Dimension(SQUARE_SIZE, SQUARE_SIZE));
+        double singleThreadSeconds = 0D;
+
+        System.out.println("threads,depth,score,seconds,nodes,nodes_per_second,speedup");
+
+        /* The first pass is a warm-up, so the single-threaded timing isn't
+           inflated by the JIT compiler's work, and its results aren't
+           printed. */
+        for (int threadCount = 0; threadCount <= maxThreads; threadCount++) {
+            Chessboard chessboard = boardArray == null
+                                    ? new Chessboard(imagesManager, BoardArrays.WHITE, BoardArrays.BLACK)
+                                    : new Chessboard(BoardArrays.copyBoardArray(boardArray), imagesManager,
+                                                     BoardArrays.WHITE, BoardArrays.BLACK);
+            MinimaxRunner minimaxRunner = new MinimaxRunner(chessboard, BoardArrays.WHITE);
+            minimaxRunner.setSearchBudget(0L, 0L, depth);
+            if (isRootParallel) {
+                minimaxRunner.setRootMoveParallelism(Math.max(threadCount, 1));
+            } else {
+                minimaxRunner.setSearchThreads(Math.max(threadCount, 1));
+            }
+
+            /* The turn count is given as 1, so the root moves aren't shuffled
+               and every run searches them in the same order. */
+            long startNanos = System.nanoTime();
+            minimaxRunner.algorithmTopLevel(1);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            minimaxRunner.setSearchThreads(1);
+            minimaxRunner.setRootMoveParallelism(1);
+
+            if (threadCount == 0) {
+                continue;
+            } else if (threadCount == 1) {
+                singleThreadSeconds = seconds;
+            }
+
+            long nodes = minimaxRunner.getNodesSearched();
+            System.out.printf("%d,%d,%d,%.3f,%d,%.0f,%.2f%n", threadCount, minimaxRunner.getLastCompletedDepth(),
+                              minimaxRunner.getLastRootScore(), seconds, nodes, nodes / seconds,
+                              singleThreadSeconds / seconds);
+        }
+    }
+}
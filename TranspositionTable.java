@@ -0,0 +1,228 @@
+package org.kmfahey.jchessgame;
+
+import java.util.Arrays;
+
+/**
+ * Implements a fixed-size transposition table for the minimax algorithm. The
+ * same position is often reached by more than one ordering of the same moves,
+ * and the table lets the algorithm reuse the result of searching a position
+ * the first time instead of searching it again every time it recurs.
+ *
+ * The table is allocated once, at a size in megabytes chosen when it's
+ * instanced, and is never resized. It's organized as a power-of-two number of
+ * buckets, each holding two entries: the first is depth-preferred (it's only
+ * overwritten by a search at least as deep, or by an entry left over from an
+ * earlier search), and the second is always replaced. Each entry is stored as
+ * two longs: the entry's packed data, and the position's key XORed with that
+ * data. An entry is only accepted by probe() if XORing those two longs back
+ * together reproduces the key being probed for, so an entry torn by two
+ * threads writing it at once is rejected rather than misread.
+ *
+ * @see MinimaxRunner
+ */
+public class TranspositionTable {
+
+    /** Bound type flag, the entry's score is the position's exact score. */
+    public static final int EXACT = 1;
+
+    /** Bound type flag, the entry's score is a lower bound on the position's
+        score (the search of it failed high). */
+    public static final int LOWER_BOUND = 2;
+
+    /** Bound type flag, the entry's score is an upper bound on the position's
+        score (the search of it failed low). */
+    public static final int UPPER_BOUND = 3;
+
+    /** The default size of a transposition table, in megabytes. */
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    /* Each entry is two longs. */
+    private static final int BYTES_PER_ENTRY = 16;
+
+    /* These constants describe how an entry's data is packed into a long. The
+       score occupies the low 16 bits as a signed short, then come 16 bits of
+       best move, 8 bits of depth, 2 bits of bound type, and 6 bits of search
+       generation. The top 16 bits are unused. */
+    private static final int MOVE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int GENERATION_SHIFT = 42;
+    private static final long SCORE_MASK = 0xFFFFL;
+    private static final long MOVE_MASK = 0xFFFFL;
+    private static final long DEPTH_MASK = 0xFFL;
+    private static final long BOUND_MASK = 0x3L;
+    private static final long GENERATION_MASK = 0x3FL;
+
+    /* The two halves of every entry. A bucket's depth-preferred slot is at
+       index 2 * bucket, and its always-replace slot is at index
+       2 * bucket + 1. */
+    private final long[] entryKeys;
+    private final long[] entryData;
+
+    /* The number of buckets less one, used to mask a key down to a bucket
+       index. */
+    private final int bucketMask;
+
+    /* The generation of the current search. Entries stored in an earlier
+       search are always replaceable, so the depth-preferred slots don't fill
+       up with stale deep entries over the course of a game. */
+    private int generation;
+
+    /**
+     * Initializes the TranspositionTable object, allocating the largest
+     * power-of-two number of entries that fits in the given budget.
+     *
+     * @param megabytes The memory budget for the table, in megabytes.
+     * @throws IllegalArgumentException If megabytes is less than 1.
+     */
+    public TranspositionTable(final int megabytes) throws IllegalArgumentException {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("TranspositionTable() called with a memory budget of less than 1MB");
+        }
+
+        long budgetEntries = (long) megabytes * 1024L * 1024L / BYTES_PER_ENTRY;
+        int entriesCount = (int) Long.highestOneBit(Math.min(budgetEntries, 1L << 30));
+
+        entryKeys = new long[entriesCount];
+        entryData = new long[entriesCount];
+        bucketMask = entriesCount / 2 - 1;
+        generation = 0;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from earlier searches are kept
+     * and can still be probed, but become replaceable by the new search's
+     * entries.
+     */
+    public void newSearch() {
+        generation = (int) ((generation + 1) & GENERATION_MASK);
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(entryKeys, 0L);
+        Arrays.fill(entryData, 0L);
+    }
+
+    /**
+     * Looks up the entry for the position with the given key.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @return            The entry's packed data if the position was found,
+     *                    or 0 if it wasn't. The data can be unpacked with
+     *                    scoreOf(), moveOf(), depthOf() and boundOf().
+     */
+    public long probe(final long positionKey) {
+        int slotIdx = bucketIndex(positionKey) * 2;
+
+        for (int slotOffset = 0; slotOffset < 2; slotOffset++) {
+            long data = entryData[slotIdx + slotOffset];
+            if (data != 0L && (entryKeys[slotIdx + slotOffset] ^ data) == positionKey) {
+                return data;
+            }
+        }
+
+        return 0L;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     *
+     * @param positionKey The Zobrist hash of the position.
+     * @param depth       The depth the position was searched to.
+     * @param score       The score the search returned, in centipawns. It
+     *                    must fit in a short.
+     * @param boundType   One of EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param bestMove    A 16-bit key identifying the best move found, or 0
+     *                    if none is known.
+     */
+    public void store(final long positionKey, final int depth, final int score, final int boundType,
+                      final int bestMove) {
+        int slotIdx = bucketIndex(positionKey) * 2;
+        long data = packData(depth, score, boundType, bestMove);
+        long preferredData = entryData[slotIdx];
+
+        /* The depth-preferred slot is used if it's empty, if it already holds
+           this position, if it's from an earlier search, or if this search
+           went at least as deep as the one it holds. Otherwise the
+           always-replace slot is used. */
+        if (preferredData == 0L
+            || (entryKeys[slotIdx] ^ preferredData) == positionKey
+            || generationOf(preferredData) != generation
+            || depthOf(preferredData) <= depth) {
+            entryData[slotIdx] = data;
+            entryKeys[slotIdx] = positionKey ^ data;
+        } else {
+            entryData[slotIdx + 1] = data;
+            entryKeys[slotIdx + 1] = positionKey ^ data;
+        }
+    }
+
+    /**
+     * Unpacks the score from an entry's data.
+     *
+     * @param data Entry data returned by probe().
+     * @return     The score stored in the entry.
+     */
+    public static int scoreOf(final long data) {
+        return (short) (data & SCORE_MASK);
+    }
+
+    /**
+     * Unpacks the best move key from an entry's data.
+     *
+     * @param data Entry data returned by probe().
+     * @return     The best move key stored in the entry, or 0 if none.
+     */
+    public static int moveOf(final long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK);
+    }
+
+    /**
+     * Unpacks the search depth from an entry's data.
+     *
+     * @param data Entry data returned by probe().
+     * @return     The depth stored in the entry.
+     */
+    public static int depthOf(final long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    /**
+     * Unpacks the bound type from an entry's data.
+     *
+     * @param data Entry data returned by probe().
+     * @return     One of EXACT, LOWER_BOUND or UPPER_BOUND.
+     */
+    public static int boundOf(final long data) {
+        return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK);
+    }
+
+    /*
+     * Unpacks the search generation from an entry's data.
+     */
+    private static int generationOf(final long data) {
+        return (int) ((data >>> GENERATION_SHIFT) & GENERATION_MASK);
+    }
+
+    /*
+     * Packs an entry's fields into a single long. The bound type is never 0,
+     * so neither is the packed data, and 0 can mean an empty slot.
+     */
+    private long packData(final int depth, final int score, final int boundType, final int bestMove) {
+        return (score & SCORE_MASK)
+               | ((bestMove & MOVE_MASK) << MOVE_SHIFT)
+               | ((Math.min(depth, (int) DEPTH_MASK) & DEPTH_MASK) << DEPTH_SHIFT)
+               | ((boundType & BOUND_MASK) << BOUND_SHIFT)
+               | ((generation & GENERATION_MASK) << GENERATION_SHIFT);
+    }
+
+    /*
+     * Maps a position's key to the index of its bucket.
+     */
+    private int bucketIndex(final long positionKey) {
+        return (int) (positionKey ^ (positionKey >>> 32)) & bucketMask;
+    }
+}
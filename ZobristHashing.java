@@ -0,0 +1,185 @@
+package org.kmfahey.jchessgame;
+
+import java.util.Random;
+
+/**
+ * Contains the random keys and the utility methods used to compute 64-bit
+ * Zobrist hashes of the positions modelled by an int[8][8] boardArray. A
+ * position's hash is the XOR of one key per occupied square (chosen by the
+ * piece and the square), a key for the color whose turn it is, and a key for
+ * the castling rights still available. Because XOR is its own inverse, the
+ * hash of a position can be updated incrementally as a move is made or
+ * unmade, by XORing out the keys for the pieces that left squares and XORing
+ * in the keys for the pieces that arrived.
+ *
+ * A position's pawn key is the XOR of the keys of its pawns alone, using the
+ * same keys, so positions with the same pawns on the same squares share a
+ * pawn key however the other pieces stand.
+ *
+ * @see MinimaxRunner
+ */
+public final class ZobristHashing {
+
+    /* These int flags are copied from BoardArrays for convenience. */
+    private static final int BLACK = BoardArrays.BLACK;
+    private static final int WHITE = BoardArrays.WHITE;
+    private static final int KING = BoardArrays.KING;
+    private static final int QUEEN = BoardArrays.QUEEN;
+    private static final int ROOK = BoardArrays.ROOK;
+    private static final int BISHOP = BoardArrays.BISHOP;
+    private static final int KNIGHT = BoardArrays.KNIGHT;
+    private static final int PAWN = BoardArrays.PAWN;
+    private static final int RIGHT = BoardArrays.RIGHT;
+    private static final int LEFT = BoardArrays.LEFT;
+
+    /* The index into PIECE_SQUARE_KEYS used for an empty square. Its row of
+       keys is all zeroes, so XORing in an empty square is a no-op and callers
+       don't need to test for 0 before calling pieceSquareKey(). */
+    private static final int EMPTY_SQUARE_INDEX = 12;
+
+    /* The seed is fixed so that the same position hashes to the same value
+       from one run of the program to the next. */
+    private static final long RNG_SEED = 0x4A43686573734CL;
+
+    /* Maps every piece int to its row in PIECE_SQUARE_KEYS. Left- and
+       right-facing knights share a row, since chirality is only a detail of
+       the icon set and doesn't make for a different position. */
+    private static final int[] PIECE_KEY_INDEXES = new int[BLACK << 1];
+
+    /* One key per piece (6 per color) per square, plus the all-zeroes row for
+       an empty square. Squares are indexed as xIdx * 8 + yIdx. */
+    private static final long[][] PIECE_SQUARE_KEYS = new long[13][64];
+
+    /* One key per combination of the four castling rights flags. */
+    private static final long[] CASTLING_RIGHTS_KEYS = new long[16];
+
+    /** The key that is XORed into a position's hash when it's Black's turn.
+        Since the turn changes with every move, it's toggled once per move. */
+    public static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        Random rng = new Random(RNG_SEED);
+        int[] pieceTypes = new int[] {KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN};
+
+        for (int pieceIndex = 0; pieceIndex < PIECE_KEY_INDEXES.length; pieceIndex++) {
+            PIECE_KEY_INDEXES[pieceIndex] = EMPTY_SQUARE_INDEX;
+        }
+        for (int typeIndex = 0; typeIndex < pieceTypes.length; typeIndex++) {
+            int pieceType = pieceTypes[typeIndex];
+            if (pieceType == KNIGHT) {
+                PIECE_KEY_INDEXES[WHITE | KNIGHT | LEFT] = typeIndex;
+                PIECE_KEY_INDEXES[WHITE | KNIGHT | RIGHT] = typeIndex;
+                PIECE_KEY_INDEXES[BLACK | KNIGHT | LEFT] = typeIndex + 6;
+                PIECE_KEY_INDEXES[BLACK | KNIGHT | RIGHT] = typeIndex + 6;
+            } else {
+                PIECE_KEY_INDEXES[WHITE | pieceType] = typeIndex;
+                PIECE_KEY_INDEXES[BLACK | pieceType] = typeIndex + 6;
+            }
+        }
+
+        for (int keyIndex = 0; keyIndex < EMPTY_SQUARE_INDEX; keyIndex++) {
+            for (int squareIdx = 0; squareIdx < 64; squareIdx++) {
+                PIECE_SQUARE_KEYS[keyIndex][squareIdx] = rng.nextLong();
+            }
+        }
+
+        /* The key for no castling rights at all is left 0, so a position
+           without castling rights hashes the same as it would if castling
+           weren't tracked. */
+        for (int rights = 1; rights < CASTLING_RIGHTS_KEYS.length; rights++) {
+            CASTLING_RIGHTS_KEYS[rights] = rng.nextLong();
+        }
+
+        BLACK_TO_MOVE_KEY = rng.nextLong();
+    }
+
+    private ZobristHashing() { }
+
+    /**
+     * Returns the key for the given piece standing on the given square. If
+     * pieceInt is 0 (an empty square) the key is 0.
+     *
+     * @param pieceInt The integer representing the piece.
+     * @param xIdx     The x index of the square.
+     * @param yIdx     The y index of the square.
+     * @return         A long, the key to XOR into the position's hash.
+     */
+    public static long pieceSquareKey(final int pieceInt, final int xIdx, final int yIdx) {
+        return PIECE_SQUARE_KEYS[PIECE_KEY_INDEXES[pieceInt]][xIdx * 8 + yIdx];
+    }
+
+    /**
+     * Returns the key for the given piece standing on the given square if
+     * it's a pawn, for the pawn key, or 0 if it's any other piece or pieceInt
+     * is 0.
+     *
+     * @param pieceInt The integer representing the piece.
+     * @param xIdx     The x index of the square.
+     * @param yIdx     The y index of the square.
+     * @return         A long, the key to XOR into the position's pawn key.
+     */
+    public static long pawnSquareKey(final int pieceInt, final int xIdx, final int yIdx) {
+        return (pieceInt & PAWN) != 0 ? PIECE_SQUARE_KEYS[PIECE_KEY_INDEXES[pieceInt]][xIdx * 8 + yIdx] : 0L;
+    }
+
+    /**
+     * Returns the key for the given combination of castling rights flags.
+     *
+     * @param castlingRights An int composed of zero or more of the castling
+     *                       rights flags defined in BoardArrays.
+     * @return               A long, the key to XOR into the position's hash.
+     * @see BoardArrays#ALL_CASTLING_RIGHTS
+     */
+    public static long castlingRightsKey(final int castlingRights) {
+        return CASTLING_RIGHTS_KEYS[castlingRights];
+    }
+
+    /**
+     * Computes the Zobrist hash of a position from scratch. This is done once
+     * at the top of the search; the algorithm then keeps the hash up to date
+     * incrementally as it makes and unmakes moves.
+     *
+     * @param boardArray     The int[8][8] array that represents the chessboard.
+     * @param colorsTurnItIs The color whose turn it is to move, either
+     *                       BoardArrays.WHITE or BoardArrays.BLACK.
+     * @param castlingRights An int composed of zero or more of the castling
+     *                       rights flags defined in BoardArrays.
+     * @return               A long, the hash of the position.
+     */
+    public static long hashPosition(final int[][] boardArray, final int colorsTurnItIs, final int castlingRights) {
+        long positionKey = 0L;
+
+        for (int xIdx = 0; xIdx < 8; xIdx++) {
+            for (int yIdx = 0; yIdx < 8; yIdx++) {
+                positionKey ^= pieceSquareKey(boardArray[xIdx][yIdx], xIdx, yIdx);
+            }
+        }
+
+        positionKey ^= castlingRightsKey(castlingRights);
+
+        if (colorsTurnItIs == BLACK) {
+            positionKey ^= BLACK_TO_MOVE_KEY;
+        }
+
+        return positionKey;
+    }
+
+    /**
+     * Computes the pawn key of a position from scratch: the XOR of the keys
+     * of its pawns.
+     *
+     * @param boardArray The int[8][8] array that represents the chessboard.
+     * @return           A long, the pawn key of the position.
+     */
+    public static long hashPawns(final int[][] boardArray) {
+        long pawnKey = 0L;
+
+        for (int xIdx = 0; xIdx < 8; xIdx++) {
+            for (int yIdx = 0; yIdx < 8; yIdx++) {
+                pawnKey ^= pawnSquareKey(boardArray[xIdx][yIdx], xIdx, yIdx);
+            }
+        }
+
+        return pawnKey;
+    }
+}